@@ -73,6 +73,7 @@ export class Extension {
         new vscode.EventEmitter<vscode.Terminal>();
     private readonly onDidTerminalOpen: vscode.Event<vscode.Terminal> = this._onDidTerminalOpen.event;
     private recentTerminal: vscode.Terminal | undefined;
+    private staleBuildsListener: vscode.Disposable | undefined;
 
     public constructor(private readonly context: vscode.ExtensionContext) {
         const loggingChannel = vscode.window.createOutputChannel("Gradle for Java");
@@ -334,6 +335,21 @@ export class Extension {
         return vscode.commands.executeCommand(COMMAND_REFRESH);
     }
 
+    /**
+     * Once the tasks of a stale build are loaded, loads them again from the server cache, where the server
+     * replies with the refreshed build as soon as it's configured.
+     */
+    private reloadRefreshedBuilds(): void {
+        if (this.staleBuildsListener) {
+            return;
+        }
+        this.staleBuildsListener = this.gradleTaskProvider.onDidLoadTasks(() => {
+            this.staleBuildsListener!.dispose();
+            this.staleBuildsListener = undefined;
+            void vscode.commands.executeCommand(COMMAND_REFRESH, true);
+        });
+    }
+
     private handleEditorEvents(): void {
         this.context.subscriptions.push(
             vscode.workspace.onDidChangeConfiguration(async (event: vscode.ConfigurationChangeEvent) => {
@@ -368,6 +384,7 @@ export class Extension {
                 this.taskTerminalsStore.removeTerminal(terminal);
             }),
             vscode.workspace.onDidChangeWorkspaceFolders(() => this.refresh()),
+            this.client.onDidGetStaleBuild(() => this.reloadRefreshedBuilds()),
             vscode.window.onDidOpenTerminal((terminal: vscode.Terminal) => {
                 this.recentTerminal = terminal;
                 this._onDidTerminalOpen.fire(terminal);
@@ -0,0 +1,106 @@
+import { CompactGradleTask, GradleBuild, GradleProject, GradleProjectPart, GradleTask } from "../proto/gradle_pb";
+
+interface ProjectNode {
+    part: GradleProjectPart;
+    tasks: GradleTask[];
+    children: ProjectNode[];
+}
+
+/**
+ * Assembles the build replied by a GetBuild call. The project tree is either
+ * sent whole, or streamed as project parts, and the tasks are either sent in
+ * full or compact, referring to their strings by index in a string table sent
+ * along with them. The tasks of the streamed parts may be decoded as they
+ * arrive, without assembling the tree.
+ */
+export class GradleBuildDecoder {
+    private readonly nodes: Map<string, ProjectNode> = new Map();
+    private rootNode: ProjectNode | undefined;
+    // the string table of the streamed compact tasks, index 0 is the empty string
+    private readonly strings: string[] = [];
+
+    /**
+     * @returns the tasks of the part, in full
+     */
+    public decodeProjectPart(part: GradleProjectPart): GradleTask[] {
+        this.strings.push(...part.getStringsList());
+        return part.getTasksList().concat(part.getCompactTasksList().map((task) => decodeTask(task, this.strings)));
+    }
+
+    public addProjectPart(part: GradleProjectPart): void {
+        const tasks = this.decodeProjectPart(part);
+        let node = this.nodes.get(part.getPath());
+        if (!node) {
+            node = { part, tasks: [], children: [] };
+            this.nodes.set(part.getPath(), node);
+            if (part.getIsRoot()) {
+                this.rootNode = node;
+            } else {
+                // parents are streamed before their children
+                this.nodes.get(part.getParentPath())?.children.push(node);
+            }
+        }
+        node.tasks.push(...tasks);
+    }
+
+    /**
+     * @returns the build of the streamed project parts, if any
+     */
+    public getStreamedBuild(): GradleBuild | undefined {
+        if (!this.rootNode) {
+            return undefined;
+        }
+        const build = new GradleBuild();
+        build.setProject(toProject(this.rootNode));
+        return build;
+    }
+
+    /**
+     * @returns the build with its compact tasks replaced by full ones
+     */
+    public static decodeBuild(build: GradleBuild): GradleBuild {
+        const strings = build.getStringsList();
+        if (!strings.length || !build.getProject()) {
+            return build;
+        }
+        const decodedBuild = new GradleBuild();
+        decodedBuild.setProject(decodeProject(build.getProject()!, strings));
+        return decodedBuild;
+    }
+}
+
+function toProject(node: ProjectNode): GradleProject {
+    const project = new GradleProject();
+    project.setPath(node.part.getPath());
+    project.setName(node.part.getName());
+    project.setIsRoot(node.part.getIsRoot());
+    project.setTasksList(node.tasks);
+    project.setProjectsList(node.children.map(toProject));
+    return project;
+}
+
+function decodeProject(project: GradleProject, strings: string[]): GradleProject {
+    const decodedProject = new GradleProject();
+    decodedProject.setPath(project.getPath());
+    decodedProject.setName(project.getName());
+    decodedProject.setIsRoot(project.getIsRoot());
+    decodedProject.setTasksList(
+        project.getTasksList().concat(project.getCompactTasksList().map((task) => decodeTask(task, strings)))
+    );
+    decodedProject.setProjectsList(
+        project.getProjectsList().map((childProject) => decodeProject(childProject, strings))
+    );
+    return decodedProject;
+}
+
+function decodeTask(compactTask: CompactGradleTask, strings: string[]): GradleTask {
+    const task = new GradleTask();
+    task.setName(strings[compactTask.getName()]);
+    task.setGroup(strings[compactTask.getGroup()]);
+    task.setPath(compactTask.getPath());
+    task.setProject(strings[compactTask.getProject()]);
+    task.setBuildfile(strings[compactTask.getBuildFile()]);
+    task.setRootproject(strings[compactTask.getRootProject()]);
+    task.setDescription(strings[compactTask.getDescription()]);
+    return task;
+}
@@ -26,6 +26,7 @@ import {
     CancelProjectsRequest,
     CancelProjectsReply,
     GetProjectsReply,
+    GradleTask,
 } from "../proto/gradle_pb";
 
 import { GradleClient as GrpcClient } from "../proto/gradle_grpc_pb";
@@ -36,6 +37,7 @@ import { removeCancellingTask, restartQueuedTask } from "../tasks/taskUtil";
 import { COMMAND_REFRESH_DAEMON_STATUS, COMMAND_SHOW_LOGS, COMMAND_CANCEL_BUILD } from "../commands";
 import { RootProject } from "../rootProject/RootProject";
 import { getBuildCancellationKey, getProjectsCancellationKey } from "./CancellationKeys";
+import { GradleBuildDecoder } from "./GradleBuildDecoder";
 import { EventWaiter } from "../util/EventWaiter";
 import { getGradleConfig, getConfigJavaDebug } from "../util/config";
 import { setDefault, unsetDefault } from "../views/defaultProject/DefaultProjectUtils";
@@ -56,6 +58,9 @@ export class GradleClient implements vscode.Disposable {
     private readonly _onDidConnectFail: vscode.EventEmitter<null> = new vscode.EventEmitter<null>();
     public readonly onDidConnect: vscode.Event<null> = this._onDidConnect.event;
     public readonly onDidConnectFail: vscode.Event<null> = this._onDidConnectFail.event;
+    // fired when a cached build is replied while the server refreshes it
+    private readonly _onDidGetStaleBuild: vscode.EventEmitter<RootProject> = new vscode.EventEmitter<RootProject>();
+    public readonly onDidGetStaleBuild: vscode.Event<RootProject> = this._onDidGetStaleBuild.event;
 
     private readonly waitForConnect = new EventWaiter(this.onDidConnect).wait;
 
@@ -124,7 +129,10 @@ export class GradleClient implements vscode.Disposable {
     public async getBuild(
         rootProject: RootProject,
         gradleConfig: GradleConfig,
-        showOutputColors = false
+        showOutputColors = false,
+        fetchProjectModel = false,
+        useCache = true,
+        onProjectTasks?: (tasks: GradleTask[]) => void
     ): Promise<GradleBuild | void> {
         await this.waitForConnect();
         this.statusBarItem.hide();
@@ -148,10 +156,15 @@ export class GradleClient implements vscode.Disposable {
                 request.setCancellationKey(cancellationKey);
                 request.setGradleConfig(gradleConfig);
                 request.setShowOutputColors(showOutputColors);
+                request.setFetchProjectModel(fetchProjectModel);
+                request.setUseCache(useCache);
+                request.setStreamProjects(true);
+                request.setCompactTasks(true);
                 const getBuildStream = this.grpcClient!.getBuild(request);
                 try {
                     return await new Promise((resolve, reject) => {
                         let build: GradleBuild | void = undefined;
+                        const buildDecoder = new GradleBuildDecoder();
                         getBuildStream
                             .on("data", async (getBuildReply: GetBuildReply) => {
                                 switch (getBuildReply.getKindCase()) {
@@ -176,9 +189,33 @@ export class GradleClient implements vscode.Disposable {
                                     case GetBuildReply.KindCase.CANCELLED:
                                         this.handleGetBuildCancelled(getBuildReply.getCancelled()!);
                                         break;
+                                    case GetBuildReply.KindCase.PROJECT_PART:
+                                        if (onProjectTasks) {
+                                            // the tasks are handed over as they arrive, the tree isn't assembled
+                                            onProjectTasks(
+                                                buildDecoder.decodeProjectPart(getBuildReply.getProjectPart()!)
+                                            );
+                                        } else {
+                                            buildDecoder.addProjectPart(getBuildReply.getProjectPart()!);
+                                        }
+                                        break;
                                     case GetBuildReply.KindCase.GET_BUILD_RESULT:
                                         void unsetDefault();
-                                        build = getBuildReply.getGetBuildResult()!.getBuild();
+                                        const result = getBuildReply.getGetBuildResult()!;
+                                        if (result.getStale()) {
+                                            logger.info(
+                                                "The build logic changed since the project was cached, refreshing it"
+                                            );
+                                            this._onDidGetStaleBuild.fire(rootProject);
+                                        }
+                                        // the streamed projects end with an empty result
+                                        if (result.hasBuild()) {
+                                            build = GradleBuildDecoder.decodeBuild(result.getBuild()!);
+                                        } else {
+                                            build = onProjectTasks
+                                                ? new GradleBuild()
+                                                : buildDecoder.getStreamedBuild();
+                                        }
                                         break;
                                     case GetBuildReply.KindCase.ENVIRONMENT:
                                         const environment = getBuildReply.getEnvironment()!;
@@ -555,5 +592,6 @@ export class GradleClient implements vscode.Disposable {
     public dispose(): void {
         this.close();
         this._onDidConnect.dispose();
+        this._onDidGetStaleBuild.dispose();
     }
 }
@@ -14,10 +14,14 @@ export class RefreshCommand extends Command {
     ) {
         super();
     }
-    async run(): Promise<void> {
+    /**
+     * @param useCache true to reload the builds from the server cache, e.g. once a stale build is refreshed,
+     * otherwise the builds are configured again
+     */
+    async run(useCache?: unknown): Promise<void> {
         this.gradleTaskProvider.clearTasksCache();
         this.gradleProjectContentProvider.refresh();
-        void this.gradleTaskProvider.loadTasks();
+        void this.gradleTaskProvider.loadTasks(useCache === true);
         this.gradleTasksTreeDataProvider.refresh();
         this.pinnedTasksTreeDataProvider.refresh();
         this.recentTasksTreeDataProvider.refresh();
@@ -9,15 +9,25 @@ import { LanguageClient, StreamInfo } from "vscode-languageclient/node";
 import { GradleProjectContentProvider } from "../projectContent/GradleProjectContentProvider";
 import { GetProjectsReply } from "../proto/gradle_pb";
 import {
+    getConfigCompileMemoryBudget,
+    getConfigCompileTimeBudget,
     getConfigGradleJavaHome,
     getConfigJavaImportGradleHome,
     getConfigJavaImportGradleUserHome,
     getConfigJavaImportGradleVersion,
     getConfigJavaImportGradleWrapperEnabled,
+    getConfigPrefetchMemoryBudget,
+    getConfigPrefetchRelatedFiles,
 } from "../util/config";
 const CHANNEL_NAME = "Gradle for Java (Language Server)";
 
+// how long (in milliseconds) project models are collected before being sent together
+const SYNC_BATCH_WINDOW = 50;
+
 export let isLanguageServerStarted = false;
+// <projectPath, model> of the projects waiting for the next gradle.setProjectModels command
+let pendingProjectModels: Map<string, unknown> = new Map();
+let pendingSync: Promise<void> | undefined;
 
 export async function startLanguageServer(
     context: vscode.ExtensionContext,
@@ -29,12 +39,18 @@ export async function startLanguageServer(
             progress.report({
                 message: "Initializing Gradle Language Server",
             });
+            const buildFileWatcher = vscode.workspace.createFileSystemWatcher("**/{build,settings}.gradle");
+            context.subscriptions.push(buildFileWatcher);
             const clientOptions: LanguageClientOptions = {
                 documentSelector: [{ scheme: "file", language: "gradle" }],
                 outputChannel: vscode.window.createOutputChannel(CHANNEL_NAME),
                 outputChannelName: CHANNEL_NAME,
                 initializationOptions: {
                     settings: getGradleSettings(),
+                    storagePath: context.globalStorageUri.fsPath,
+                },
+                synchronize: {
+                    fileEvents: buildFileWatcher,
                 },
             };
             let serverOptions;
@@ -85,7 +101,13 @@ export async function startLanguageServer(
             context.subscriptions.push(disposable);
             context.subscriptions.push(
                 vscode.workspace.onDidChangeConfiguration((e) => {
-                    if (e.affectsConfiguration("java.import.gradle")) {
+                    if (
+                        e.affectsConfiguration("java.import.gradle") ||
+                        e.affectsConfiguration("gradle.compileTimeBudget") ||
+                        e.affectsConfiguration("gradle.compileMemoryBudget") ||
+                        e.affectsConfiguration("gradle.prefetchRelatedFiles") ||
+                        e.affectsConfiguration("gradle.prefetchMemoryBudget")
+                    ) {
                         languageClient.sendNotification(DidChangeConfigurationNotification.type, {
                             settings: getGradleSettings(),
                         });
@@ -117,12 +139,15 @@ function getGradleSettings(): unknown {
         gradleVersion: getConfigJavaImportGradleVersion(),
         gradleWrapperEnabled: getConfigJavaImportGradleWrapperEnabled(),
         gradleUserHome: getConfigJavaImportGradleUserHome(),
+        compileTimeBudget: getConfigCompileTimeBudget(),
+        compileMemoryBudget: getConfigCompileMemoryBudget(),
+        prefetchRelatedFiles: getConfigPrefetchRelatedFiles(),
+        prefetchMemoryBudget: getConfigPrefetchMemoryBudget(),
     };
 }
 
 export async function syncLanguageServer(projectPath: string, projectContent: GetProjectsReply): Promise<void> {
     if (isLanguageServerStarted) {
-        await vscode.commands.executeCommand("gradle.setPlugins", projectPath, projectContent.getPluginsList());
         const closures = projectContent.getPluginclosuresList().map((value) => {
             const JSONMethod = value.getMethodsList().map((method) => {
                 return {
@@ -143,12 +168,23 @@ export async function syncLanguageServer(projectPath: string, projectContent: Ge
                 fields: JSONField,
             };
         });
-        await vscode.commands.executeCommand("gradle.setClosures", projectPath, closures);
-        await vscode.commands.executeCommand(
-            "gradle.setScriptClasspaths",
+        pendingProjectModels.set(projectPath, {
             projectPath,
-            projectContent.getScriptclasspathsList()
-        );
+            plugins: projectContent.getPluginsList(),
+            closures,
+            scriptClasspaths: projectContent.getScriptclasspathsList(),
+        });
+        if (!pendingSync) {
+            // plugins, closures and script classpaths of the projects synced within the
+            // window are applied in one step, so the open documents are only recompiled once
+            pendingSync = new Promise<void>((resolve) => setTimeout(resolve, SYNC_BATCH_WINDOW)).then(async () => {
+                const projectModels = Array.from(pendingProjectModels.values());
+                pendingProjectModels = new Map();
+                pendingSync = undefined;
+                await vscode.commands.executeCommand("gradle.setProjectModels", projectModels);
+            });
+        }
+        await pendingSync;
     }
 }
 
@@ -160,10 +196,13 @@ async function handleLanguageServerStart(contentProvider: GradleProjectContentPr
             const projectPath = folders[0].uri.fsPath;
             // when language server starts, it knows nothing about the project
             // here to asynchronously sync the project content (plugins, closures) with language server
-            const projectContent = await contentProvider.getProjectContent(projectPath, path.basename(projectPath));
-            if (projectContent) {
-                await syncLanguageServer(projectPath, projectContent);
-            }
+            await contentProvider.getProjectContent(projectPath, path.basename(projectPath));
+            // the projects fetched before the server started are sent along in the same command
+            await Promise.all(
+                Array.from(contentProvider.getCachedContents()).map(([cachedPath, cachedContent]) =>
+                    syncLanguageServer(cachedPath, cachedContent)
+                )
+            );
         }
     }
 }
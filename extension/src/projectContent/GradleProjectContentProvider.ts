@@ -21,6 +21,10 @@ export class GradleProjectContentProvider {
         return projectContent;
     }
 
+    public getCachedContents(): Map<string, GetProjectsReply> {
+        return this.cachedContent;
+    }
+
     public refresh(): void {
         this.cachedContent.clear();
     }
@@ -9,6 +9,8 @@ import { Logger } from "../logger/index";
 
 const SERVER_LOGLEVEL_REGEX = /^\[([A-Z]+)\](.*)$/;
 const DOWNLOAD_PROGRESS_CHAR = ".";
+// ms, the default of the server, which reads its arguments by position
+const CONNECTION_IDLE_TIMEOUT = 3 * 60 * 1000;
 
 export interface ServerOptions {
     host: string;
@@ -40,7 +42,9 @@ export class GradleServer implements vscode.Disposable {
             const cwd = this.context.asAbsolutePath("lib");
             const cmd = path.join(cwd, getGradleServerCommand());
             const env = getGradleServerEnv();
-            const args = [String(this.port)];
+            // the cached projects are kept per user, the spawned shell needs the folder quoted
+            const modelCacheDir = path.join(this.context.globalStorageUri.fsPath, "models");
+            const args = [String(this.port), String(CONNECTION_IDLE_TIMEOUT), `"${modelCacheDir}"`];
 
             this.logger.debug("Starting server");
             this.logger.debug(`Gradle Server cmd: ${cmd} ${args.join(" ")}`);
@@ -9,13 +9,19 @@ import { EventWaiter } from "../util/EventWaiter";
 
 export class GradleTaskProvider implements vscode.TaskProvider, vscode.Disposable {
     private cachedTasks: vscode.Task[] = [];
+    // the tasks of the projects streamed so far while the tasks are loading
+    private partialTasks: vscode.Task[] = [];
     private readonly _onDidLoadTasks: vscode.EventEmitter<vscode.Task[]> = new vscode.EventEmitter<vscode.Task[]>();
+    private readonly _onDidLoadPartialTasks: vscode.EventEmitter<vscode.Task[]> = new vscode.EventEmitter<
+        vscode.Task[]
+    >();
     private readonly _onDidStartRefresh: vscode.EventEmitter<null> = new vscode.EventEmitter<null>();
     private readonly _onDidStopRefresh: vscode.EventEmitter<null> = new vscode.EventEmitter<null>();
 
     constructor(private readonly rootProjectsStore: RootProjectsStore, private readonly client: GradleClient) {}
 
     public readonly onDidLoadTasks: vscode.Event<vscode.Task[]> = this._onDidLoadTasks.event;
+    public readonly onDidLoadPartialTasks: vscode.Event<vscode.Task[]> = this._onDidLoadPartialTasks.event;
     public readonly onDidStartRefresh: vscode.Event<null> = this._onDidStartRefresh.event;
     public readonly onDidStopRefresh: vscode.Event<null> = this._onDidStopRefresh.event;
     private loadTasksPromise?: Promise<vscode.Task[]>;
@@ -41,7 +47,10 @@ export class GradleTaskProvider implements vscode.TaskProvider, vscode.Disposabl
         return resolveTaskFromDefinition(gradleTaskDefinition, workspaceFolder, this.client);
     }
 
-    public async loadTasks(): Promise<vscode.Task[]> {
+    /**
+     * @param useCache whether the builds may be replied from the server cache, false to configure them again
+     */
+    public async loadTasks(useCache = true): Promise<vscode.Task[]> {
         if (this.loadTasksPromise) {
             return this.loadTasksPromise;
         }
@@ -56,7 +65,11 @@ export class GradleTaskProvider implements vscode.TaskProvider, vscode.Disposabl
             return Promise.resolve(this.cachedTasks);
         }
 
-        this.loadTasksPromise = loadTasksForProjectRoots(this.client, folders)
+        this.partialTasks = [];
+        this.loadTasksPromise = loadTasksForProjectRoots(this.client, folders, useCache, (tasks) => {
+            this.partialTasks = tasks;
+            this._onDidLoadPartialTasks.fire(tasks);
+        })
             .then(
                 (tasks) => {
                     this.cachedTasks = tasks;
@@ -70,9 +83,11 @@ export class GradleTaskProvider implements vscode.TaskProvider, vscode.Disposabl
             .then(() => this.cachedTasks);
 
         return this.loadTasksPromise.finally(() => {
+            // cleared first, so the listeners may load the tasks again
+            this.loadTasksPromise = undefined;
+            this.partialTasks = [];
             this._onDidLoadTasks.fire(this.cachedTasks);
             this._onDidStopRefresh.fire(null);
-            this.loadTasksPromise = undefined;
         });
     }
 
@@ -80,6 +95,13 @@ export class GradleTaskProvider implements vscode.TaskProvider, vscode.Disposabl
         return this.cachedTasks;
     }
 
+    /**
+     * @returns the tasks streamed so far if the tasks are loading, else undefined
+     */
+    public getPartialTasks(): vscode.Task[] | undefined {
+        return this.loadTasksPromise ? this.partialTasks : undefined;
+    }
+
     public findByTaskId(taskId: TaskId): vscode.Task | void {
         return this.getTasks().find((task: vscode.Task) => {
             return task.definition.id === taskId;
@@ -93,6 +115,7 @@ export class GradleTaskProvider implements vscode.TaskProvider, vscode.Disposabl
 
     public dispose(): void {
         this._onDidLoadTasks.dispose();
+        this._onDidLoadPartialTasks.dispose();
         this._onDidStartRefresh.dispose();
         this._onDidStopRefresh.dispose();
     }
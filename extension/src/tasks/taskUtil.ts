@@ -18,6 +18,7 @@ import { RootProject } from "../rootProject/RootProject";
 import { getRunTaskCommandCancellationKey } from "../client/CancellationKeys";
 import { GradleClient } from "../client";
 import { RootProjectsStore } from "../stores";
+import { isLanguageServerStarted } from "../languageServer/languageServer";
 import {
     getGradleConfig,
     getConfigIsAutoDetectionEnabled,
@@ -267,22 +268,41 @@ export function getVSCodeTasksFromGradleProject(
     return vsCodeTasks;
 }
 
-async function getGradleBuild(client: GradleClient, rootProject: RootProject): Promise<GradleBuild | void> {
-    return client.getBuild(rootProject, getGradleConfig());
+async function getGradleBuild(
+    client: GradleClient,
+    rootProject: RootProject,
+    useCache: boolean,
+    onProjectTasks: (tasks: GradleTask[]) => void
+): Promise<GradleBuild | void> {
+    // the language server syncs the project content, which reuses the IDE model of the sync
+    return client.getBuild(rootProject, getGradleConfig(), false, isLanguageServerStarted, useCache, onProjectTasks);
 }
 
 export async function loadTasksForProjectRoots(
     client: GradleClient,
-    rootProjects: ReadonlyArray<RootProject>
+    rootProjects: ReadonlyArray<RootProject>,
+    useCache = true,
+    onDidLoadPartialTasks?: (tasks: vscode.Task[]) => void
 ): Promise<vscode.Task[]> {
     let allTasks: vscode.Task[] = [];
     for (const rootProject of rootProjects) {
         if (getConfigIsAutoDetectionEnabled(rootProject)) {
-            const gradleBuild = await getGradleBuild(client, rootProject);
+            // the tasks of the streamed projects, as they arrive
+            let streamedTasks: vscode.Task[] = [];
+            const gradleBuild = await getGradleBuild(client, rootProject, useCache, (gradleTasks) => {
+                streamedTasks = streamedTasks.concat(
+                    gradleTasks.map((gradleTask) => createVSCodeTaskFromGradleTask(gradleTask, rootProject, client))
+                );
+                if (onDidLoadPartialTasks) {
+                    onDidLoadPartialTasks(allTasks.concat(streamedTasks));
+                }
+            });
             const gradleProject = gradleBuild && gradleBuild.getProject();
             if (gradleProject) {
                 const vsCodeTasks = getVSCodeTasksFromGradleProject(rootProject, gradleProject, client);
                 allTasks = allTasks.concat(vsCodeTasks);
+            } else if (gradleBuild) {
+                allTasks = allTasks.concat(streamedTasks);
             }
         }
     }
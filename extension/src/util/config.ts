@@ -96,6 +96,22 @@ export function getAllowParallelRun(): boolean {
     return vscode.workspace.getConfiguration("gradle").get<boolean>("allowParallelRun", false);
 }
 
+export function getConfigCompileTimeBudget(): number {
+    return vscode.workspace.getConfiguration("gradle").get<number>("compileTimeBudget", 2000);
+}
+
+export function getConfigCompileMemoryBudget(): number {
+    return vscode.workspace.getConfiguration("gradle").get<number>("compileMemoryBudget", 256);
+}
+
+export function getConfigPrefetchRelatedFiles(): boolean {
+    return vscode.workspace.getConfiguration("gradle").get<boolean>("prefetchRelatedFiles", false);
+}
+
+export function getConfigPrefetchMemoryBudget(): number {
+    return vscode.workspace.getConfiguration("gradle").get<number>("prefetchMemoryBudget", 64);
+}
+
 export function getGradleConfig(): GradleConfig {
     const gradleConfig = new GradleConfig();
     const gradleHome = getConfigJavaImportGradleHome();
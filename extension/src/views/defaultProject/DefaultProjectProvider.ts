@@ -25,6 +25,9 @@ export class DefaultProjectProvider {
 
     private defaultTasks: vscode.Task[];
     private defaultDependencies: Map<string, vscode.TreeItem[]>;
+    private buildFileUris: string[] = [];
+    // <buildFileUri, dependencies> fetched in a batch, each result serves a single expansion
+    private pendingDependencies: Map<string, Promise<DefaultDependencyItem[] | undefined>> = new Map();
 
     public refresh(): void {
         this.defaultTasks = [];
@@ -35,6 +38,9 @@ export class DefaultProjectProvider {
             return this.defaultTasks;
         }
         const tasks = [];
+        this.buildFileUris = rootProjects.map((rootProject) =>
+            vscode.Uri.file(path.join(rootProject.getProjectUri().fsPath, "build.gradle")).toString()
+        );
         for (const rootProject of rootProjects) {
             for (const defaultTaskDefinition of DefaultProjectProvider.defaultTaskDefinitions) {
                 tasks.push(
@@ -90,10 +96,7 @@ export class DefaultProjectProvider {
         if (!isLanguageServerStarted) {
             return [new HintItem("No dependencies")];
         }
-        const dependencyItems = await vscode.commands.executeCommand<DefaultDependencyItem[]>(
-            "gradle.getDependencies",
-            buildFileUri.toString()
-        );
+        const dependencyItems = await this.getDependencies(buildFileUri.toString());
         if (!dependencyItems) {
             return [new HintItem("No dependencies")];
         }
@@ -131,4 +134,27 @@ export class DefaultProjectProvider {
         this.defaultDependencies.set(buildFileUri.toString(), Array.from(configurationMap.values()));
         return this.defaultDependencies.get(buildFileUri.toString()) || [];
     }
+
+    private getDependencies(buildFileUri: string): Promise<DefaultDependencyItem[] | undefined> {
+        let dependencies = this.pendingDependencies.get(buildFileUri);
+        if (!dependencies) {
+            // the dependencies of all the default projects are read in a single request
+            const uris = [
+                buildFileUri,
+                ...this.buildFileUris.filter((uri) => uri !== buildFileUri && !this.pendingDependencies.has(uri)),
+            ];
+            const batch = Promise.resolve(
+                vscode.commands.executeCommand<{ [uri: string]: DefaultDependencyItem[] }>(
+                    "gradle.getDependenciesBatch",
+                    uris
+                )
+            ).catch(() => undefined);
+            for (const uri of uris) {
+                this.pendingDependencies.set(uri, batch.then((result) => (result ? result[uri] : undefined)));
+            }
+            dependencies = batch.then((result) => (result ? result[buildFileUri] : undefined));
+        }
+        this.pendingDependencies.delete(buildFileUri);
+        return dependencies;
+    }
 }
@@ -33,6 +33,9 @@ export function getProjectTreeItemMap(): Map<string, ProjectTreeItem> {
     return projectTreeItemMap;
 }
 
+// how often the tree is refreshed with the streamed tasks while the tasks are loading
+const PARTIAL_TASKS_REFRESH_INTERVAL_MS = 500;
+
 function resetCachedTreeItems(): void {
     gradleTaskTreeItemMap.clear();
     gradleProjectTreeItemMap.clear();
@@ -42,6 +45,8 @@ function resetCachedTreeItems(): void {
 
 export class GradleTasksTreeDataProvider implements vscode.TreeDataProvider<vscode.TreeItem> {
     private collapsed = true;
+    private showsPartialTasks = false;
+    private partialTasksRefresh?: NodeJS.Timeout;
     private readonly _onDidChangeTreeData: vscode.EventEmitter<vscode.TreeItem | null> =
         new vscode.EventEmitter<vscode.TreeItem | null>();
     public readonly onDidChangeTreeData: vscode.Event<vscode.TreeItem | null> = this._onDidChangeTreeData.event;
@@ -56,6 +61,19 @@ export class GradleTasksTreeDataProvider implements vscode.TreeDataProvider<vsco
         const collapsed = this.context.workspaceState.get("gradleTasksCollapsed", false);
         // eslint-disable-next-line @typescript-eslint/no-floating-promises
         this.setCollapsed(collapsed);
+        this.gradleTaskProvider.onDidLoadPartialTasks(() => {
+            if (!this.partialTasksRefresh) {
+                this.partialTasksRefresh = setTimeout(() => {
+                    this.partialTasksRefresh = undefined;
+                    this.refresh();
+                }, PARTIAL_TASKS_REFRESH_INTERVAL_MS);
+            }
+        });
+        this.gradleTaskProvider.onDidLoadTasks(() => {
+            if (this.showsPartialTasks) {
+                this.refresh();
+            }
+        });
     }
 
     public async setCollapsed(collapsed: boolean): Promise<void> {
@@ -69,7 +87,10 @@ export class GradleTasksTreeDataProvider implements vscode.TreeDataProvider<vsco
         resetCachedTreeItems();
         // using vscode.tasks.fetchTasks({ type: 'gradle' }) is *incredibly slow* which
         // is why we get them directly from the task provider
-        const tasks = await this.gradleTaskProvider.loadTasks();
+        const partialTasks = this.gradleTaskProvider.getPartialTasks();
+        // the tasks streamed so far are shown until all the tasks are loaded
+        this.showsPartialTasks = !!partialTasks && partialTasks.length > 0;
+        const tasks = this.showsPartialTasks ? partialTasks! : await this.gradleTaskProvider.loadTasks();
         return tasks.length === 0
             ? [new NoGradleTasksTreeItem()]
             : GradleTasksTreeDataProvider.buildItemsTreeFromTasks(
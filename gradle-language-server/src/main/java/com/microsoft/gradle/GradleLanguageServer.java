@@ -5,17 +5,26 @@ package com.microsoft.gradle;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.microsoft.gradle.diagnostics.DiagnosticClientCapabilities;
+import com.microsoft.gradle.diagnostics.DiagnosticServerCapabilities;
+import com.microsoft.gradle.diagnostics.DiagnosticServerCapabilities.DiagnosticOptions;
+import com.microsoft.gradle.manager.SnapshotCache;
 import com.microsoft.gradle.semantictokens.TokenModifier;
 import com.microsoft.gradle.semantictokens.TokenType;
+import com.microsoft.gradle.utils.Utils;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import org.eclipse.lsp4j.ClientCapabilities;
 import org.eclipse.lsp4j.CompletionOptions;
 import org.eclipse.lsp4j.DocumentFilter;
 import org.eclipse.lsp4j.ExecuteCommandOptions;
@@ -30,10 +39,10 @@ import org.eclipse.lsp4j.TextDocumentSyncKind;
 import org.eclipse.lsp4j.TextDocumentSyncOptions;
 import org.eclipse.lsp4j.WorkspaceFolder;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.services.JsonDelegate;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageClientAware;
 import org.eclipse.lsp4j.services.LanguageServer;
-import org.eclipse.lsp4j.services.TextDocumentService;
 import org.eclipse.lsp4j.services.WorkspaceService;
 
 public class GradleLanguageServer implements LanguageServer, LanguageClientAware {
@@ -47,12 +56,11 @@ public class GradleLanguageServer implements LanguageServer, LanguageClientAware
 			String port = System.getenv("VSCODE_GRADLE_PORT");
 			if (port == null) {
 				// Launch Mode
-				launcher = Launcher.createLauncher(server, LanguageClient.class, System.in, System.out);
+				launcher = createLauncher(server, System.in, System.out);
 			} else {
 				// Debug Mode
 				Socket socket = new Socket("localhost", Integer.parseInt(port));
-				launcher = Launcher.createLauncher(server, LanguageClient.class, socket.getInputStream(),
-						socket.getOutputStream());
+				launcher = createLauncher(server, socket.getInputStream(), socket.getOutputStream());
 			}
 			server.connect(launcher.getRemoteProxy());
 			launcher.startListening();
@@ -62,6 +70,12 @@ public class GradleLanguageServer implements LanguageServer, LanguageClientAware
 
 	}
 
+	private static Launcher<LanguageClient> createLauncher(GradleLanguageServer server, InputStream in,
+			OutputStream out) {
+		return new Launcher.Builder<LanguageClient>().setLocalService(server).setRemoteInterface(LanguageClient.class)
+				.setInput(in).setOutput(out).configureGson(DiagnosticClientCapabilities::configureGson).create();
+	}
+
 	public GradleLanguageServer() {
 		this.gradleServices = new GradleServices();
 	}
@@ -76,9 +90,33 @@ public class GradleLanguageServer implements LanguageServer, LanguageClientAware
 			this.gradleServices.getLibraryResolver().setWorkspacePath(Paths.get(uri));
 			break;
 		}
+		List<Path> folderPaths = workspaceFolders.stream().map(folder -> Paths.get(URI.create(folder.getUri())))
+				.collect(Collectors.toList());
+		Object storagePath = initOptions.get("storagePath");
+		if (storagePath instanceof String) {
+			this.gradleServices.setSnapshotCache(new SnapshotCache(Paths.get((String) storagePath, "snapshots")));
+			String indexName = "index-" + Utils.getContentHash(folderPaths.toString()) + ".json";
+			this.gradleServices.getWorkspaceIndex().load(Paths.get((String) storagePath, indexName));
+		}
+		this.gradleServices.getWorkspaceIndex().indexWorkspace(folderPaths);
+		this.gradleServices.getPrefetcher().setWorkspaceFolders(folderPaths);
+		ClientCapabilities capabilities = params.getCapabilities();
+		this.gradleServices.setSemanticTokensRefreshSupport(capabilities != null && capabilities.getWorkspace() != null
+				&& capabilities.getWorkspace().getSemanticTokens() != null
+				&& Boolean.TRUE.equals(capabilities.getWorkspace().getSemanticTokens().getRefreshSupport()));
+		// a client which can't pull diagnostics would otherwise never get any
+		this.gradleServices.setPullDiagnostics(
+				capabilities != null && DiagnosticClientCapabilities.isPullSupported(capabilities.getTextDocument()));
 		Object settings = initOptions.get("settings");
 		this.gradleServices.applySetting(settings);
-		ServerCapabilities serverCapabilities = new ServerCapabilities();
+		ServerCapabilities serverCapabilities;
+		if (this.gradleServices.isPullDiagnostics()) {
+			DiagnosticServerCapabilities diagnosticCapabilities = new DiagnosticServerCapabilities();
+			diagnosticCapabilities.setDiagnosticProvider(new DiagnosticOptions("gradle"));
+			serverCapabilities = diagnosticCapabilities;
+		} else {
+			serverCapabilities = new ServerCapabilities();
+		}
 		SemanticTokensWithRegistrationOptions semanticOptions = new SemanticTokensWithRegistrationOptions();
 		semanticOptions.setFull(new SemanticTokensServerFull(false));
 		semanticOptions.setRange(false);
@@ -88,6 +126,7 @@ public class GradleLanguageServer implements LanguageServer, LanguageClientAware
 				Arrays.stream(TokenModifier.values()).map(TokenModifier::toString).collect(Collectors.toList())));
 		serverCapabilities.setSemanticTokensProvider(semanticOptions);
 		serverCapabilities.setDocumentSymbolProvider(true);
+		serverCapabilities.setWorkspaceSymbolProvider(true);
 		TextDocumentSyncOptions textDocumentSyncOptions = new TextDocumentSyncOptions();
 		textDocumentSyncOptions.setOpenClose(Boolean.TRUE);
 		textDocumentSyncOptions.setSave(new SaveOptions(Boolean.TRUE));
@@ -102,6 +141,7 @@ public class GradleLanguageServer implements LanguageServer, LanguageClientAware
 
 	@Override
 	public CompletableFuture<Object> shutdown() {
+		this.gradleServices.shutdown();
 		return CompletableFuture.completedFuture(new Object());
 	}
 
@@ -111,7 +151,8 @@ public class GradleLanguageServer implements LanguageServer, LanguageClientAware
 	}
 
 	@Override
-	public TextDocumentService getTextDocumentService() {
+	@JsonDelegate
+	public GradleTextDocumentService getTextDocumentService() {
 		return this.gradleServices;
 	}
 
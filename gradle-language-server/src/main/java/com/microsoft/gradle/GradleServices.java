@@ -3,40 +3,55 @@
 
 package com.microsoft.gradle;
 
-import com.google.common.base.Charsets;
-import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.microsoft.gradle.compile.CompileWatchdog;
 import com.microsoft.gradle.compile.CompletionVisitor;
 import com.microsoft.gradle.compile.CompletionVisitor.DependencyItem;
+import com.microsoft.gradle.compile.CompletionVisitor.PluginItem;
 import com.microsoft.gradle.compile.DocumentSymbolVisitor;
 import com.microsoft.gradle.compile.GradleCompilationUnit;
 import com.microsoft.gradle.compile.SemanticTokenVisitor;
+import com.microsoft.gradle.diagnostics.DocumentDiagnosticParams;
+import com.microsoft.gradle.diagnostics.DocumentDiagnosticReport;
 import com.microsoft.gradle.handlers.CompletionHandler;
 import com.microsoft.gradle.handlers.DefaultDependenciesHandler;
 import com.microsoft.gradle.handlers.DefaultDependenciesHandler.DefaultDependencyItem;
 import com.microsoft.gradle.handlers.MavenCentralCompletionHandler;
 import com.microsoft.gradle.handlers.MavenIndexCompletionHandler;
 import com.microsoft.gradle.handlers.MavenLocalCompletionHandler;
+import com.microsoft.gradle.handlers.PluginCompletionHandler;
+import com.microsoft.gradle.handlers.WorkspaceSymbolHandler;
+import com.microsoft.gradle.manager.AnalysisSnapshot;
+import com.microsoft.gradle.manager.BuildFilePrefetcher;
 import com.microsoft.gradle.manager.GradleFilesManager;
+import com.microsoft.gradle.manager.RequestScheduler;
+import com.microsoft.gradle.manager.RequestScheduler.Priority;
+import com.microsoft.gradle.manager.SnapshotCache;
+import com.microsoft.gradle.manager.WorkspaceIndex;
+import com.microsoft.gradle.manager.WorkspaceIndex.FileSummary;
 import com.microsoft.gradle.resolver.GradleClosure;
 import com.microsoft.gradle.resolver.GradleLibraryResolver;
+import com.microsoft.gradle.resolver.ProjectModel;
 import com.microsoft.gradle.semantictokens.SemanticToken;
+import com.microsoft.gradle.semantictokens.SemanticTokenLexer;
 import com.microsoft.gradle.utils.LSPUtils;
 import com.microsoft.gradle.utils.Utils;
-import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import org.codehaus.groovy.ast.expr.Expression;
 import org.codehaus.groovy.ast.expr.MethodCallExpression;
@@ -61,6 +76,8 @@ import org.eclipse.lsp4j.DidSaveTextDocumentParams;
 import org.eclipse.lsp4j.DocumentSymbol;
 import org.eclipse.lsp4j.DocumentSymbolParams;
 import org.eclipse.lsp4j.ExecuteCommandParams;
+import org.eclipse.lsp4j.FileChangeType;
+import org.eclipse.lsp4j.FileEvent;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.PublishDiagnosticsParams;
 import org.eclipse.lsp4j.Range;
@@ -68,19 +85,18 @@ import org.eclipse.lsp4j.SemanticTokens;
 import org.eclipse.lsp4j.SemanticTokensParams;
 import org.eclipse.lsp4j.SymbolInformation;
 import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
-import org.eclipse.lsp4j.TextDocumentIdentifier;
-import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.WorkspaceSymbolParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageClientAware;
-import org.eclipse.lsp4j.services.TextDocumentService;
 import org.eclipse.lsp4j.services.WorkspaceService;
 import org.eclipse.lsp4j.util.Ranges;
 
-public class GradleServices implements TextDocumentService, WorkspaceService, LanguageClientAware {
+public class GradleServices implements GradleTextDocumentService, WorkspaceService, LanguageClientAware {
 
 	public static final List<String> supportedCommands = Arrays.asList("gradle.getDependencies",
-			"gradle.distributionChanged", "gradle.setPlugins", "gradle.setClosures", "gradle.setScriptClasspaths");
+			"gradle.getDependenciesBatch", "gradle.distributionChanged", "gradle.setPlugins", "gradle.setClosures",
+			"gradle.setScriptClasspaths", "gradle.setProjectModels", "gradle.getSchedulerMetrics");
 
 	private LanguageClient client;
 	private GradleFilesManager gradleFilesManager;
@@ -92,9 +108,34 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 	private MavenCentralCompletionHandler mavenCentralCompletionHandler;
 	private MavenLocalCompletionHandler mavenLocalCompletionHandler;
 	private MavenIndexCompletionHandler mavenIndexCompletionHandler;
+	private PluginCompletionHandler pluginCompletionHandler;
+	private WorkspaceSymbolHandler workspaceSymbolHandler;
+	private RequestScheduler scheduler;
+	private Executor analysisExecutor;
+	private Executor backgroundExecutor;
+	private CompileWatchdog compileWatchdog = new CompileWatchdog();
+	private SnapshotCache snapshotCache;
+	private WorkspaceIndex workspaceIndex;
+	private BuildFilePrefetcher prefetcher;
+	private boolean prefetchRelatedFiles;
+	// the snapshots served until the open documents are compiled
+	private Map<URI, AnalysisSnapshot> snapshots = new ConcurrentHashMap<>();
+	private boolean pullDiagnostics;
+	private boolean semanticTokensRefreshSupport;
+	// <uri, unit> of the documents opened but not compiled yet, which are
+	// highlighted from their token stream until then
+	private Map<URI, GradleCompilationUnit> pendingCompilations = new ConcurrentHashMap<>();
+	// <uri, resultId> of the diagnostics last pushed to the client
+	private Map<URI, String> publishedResultIds = new ConcurrentHashMap<>();
 
 	public GradleServices() {
 		this.gradleFilesManager = new GradleFilesManager();
+		int compileThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		this.scheduler = new RequestScheduler(compileThreads, "gradle-compile");
+		this.analysisExecutor = this.scheduler.executor(Priority.ANALYSIS);
+		this.backgroundExecutor = this.scheduler.executor(Priority.BACKGROUND);
+		this.workspaceIndex = new WorkspaceIndex(this.scheduler::yieldToInteractive);
+		this.prefetcher = new BuildFilePrefetcher();
 		this.semanticTokenVisitor = new SemanticTokenVisitor();
 		this.documentSymbolVisitor = new DocumentSymbolVisitor();
 		this.completionVisitor = new CompletionVisitor();
@@ -103,12 +144,53 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 		this.mavenCentralCompletionHandler = new MavenCentralCompletionHandler();
 		this.mavenLocalCompletionHandler = new MavenLocalCompletionHandler();
 		this.mavenIndexCompletionHandler = new MavenIndexCompletionHandler();
+		this.pluginCompletionHandler = new PluginCompletionHandler();
+		this.workspaceSymbolHandler = new WorkspaceSymbolHandler();
+	}
+
+	public GradleFilesManager getGradleFilesManager() {
+		return this.gradleFilesManager;
 	}
 
 	public GradleLibraryResolver getLibraryResolver() {
 		return this.libraryResolver;
 	}
 
+	public WorkspaceIndex getWorkspaceIndex() {
+		return this.workspaceIndex;
+	}
+
+	public RequestScheduler getScheduler() {
+		return this.scheduler;
+	}
+
+	public BuildFilePrefetcher getPrefetcher() {
+		return this.prefetcher;
+	}
+
+	/**
+	 * Stops the compile workers, the services can't be used afterwards.
+	 */
+	public void shutdown() {
+		this.scheduler.close();
+	}
+
+	public boolean isPullDiagnostics() {
+		return this.pullDiagnostics;
+	}
+
+	/**
+	 * Sets whether the client pulls the diagnostics, in which case they aren't
+	 * published.
+	 */
+	public void setPullDiagnostics(boolean pullDiagnostics) {
+		this.pullDiagnostics = pullDiagnostics;
+	}
+
+	public void setSnapshotCache(SnapshotCache snapshotCache) {
+		this.snapshotCache = snapshotCache;
+	}
+
 	@Override
 	public void connect(LanguageClient client) {
 		this.client = client;
@@ -117,16 +199,61 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 	@Override
 	public void didOpen(DidOpenTextDocumentParams params) {
 		URI uri = URI.create(params.getTextDocument().getUri());
-		gradleFilesManager.didOpen(uri, params.getTextDocument().getText());
-		GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri,
-				params.getTextDocument().getVersion(), /** forceRecompile */
+		String content = params.getTextDocument().getText();
+		Integer version = params.getTextDocument().getVersion();
+		gradleFilesManager.didOpen(uri, content);
+		// the related scripts are compiled at a low priority, so opening them next is
+		// warm
+		prefetchRelatedFiles(uri);
+		AnalysisSnapshot snapshot = getSnapshot(content);
+		if (snapshot != null) {
+			// serve the snapshot right away and compile in the background
+			this.snapshots.put(uri, snapshot);
+			CompletableFuture.runAsync(() -> {
+				if (this.snapshots.get(uri) != snapshot) {
+					// changed or closed meanwhile, which compiles or disposes the document
+					return;
+				}
+				compile(uri, this.gradleFilesManager.getCompilationUnit(uri, version, /** forceRecompile */
+						false));
+				this.snapshots.remove(uri, snapshot);
+			}, this.analysisExecutor);
+			return;
+		}
+		GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri, version, /** forceRecompile */
 				false);
+		if (this.semanticTokensRefreshSupport && unit != null) {
+			// serve the lexical tokens right away, the client is asked to refresh them
+			// when the compilation finishes
+			this.pendingCompilations.put(uri, unit);
+			CompletableFuture.runAsync(() -> {
+				// compiled even in pull mode, so the refreshed tokens come from the AST
+				getDiagnostics(unit);
+				compile(uri, unit);
+				if (this.pendingCompilations.remove(uri, unit)) {
+					this.client.refreshSemanticTokens();
+				}
+			}, this.analysisExecutor);
+			saveSnapshot(uri, content, unit);
+			return;
+		}
 		compile(uri, unit);
+		saveSnapshot(uri, content, unit);
+	}
+
+	/**
+	 * Sets whether the client can be asked to refresh the semantic tokens, in which
+	 * case opened documents are compiled in the background.
+	 */
+	public void setSemanticTokensRefreshSupport(boolean semanticTokensRefreshSupport) {
+		this.semanticTokensRefreshSupport = semanticTokensRefreshSupport;
 	}
 
 	@Override
 	public void didChange(DidChangeTextDocumentParams params) {
 		URI uri = URI.create(params.getTextDocument().getUri());
+		this.snapshots.remove(uri);
+		this.pendingCompilations.remove(uri);
 		for (TextDocumentContentChangeEvent change : params.getContentChanges()) {
 			gradleFilesManager.didChange(uri, change);
 		}
@@ -139,17 +266,46 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 	@Override
 	public void didClose(DidCloseTextDocumentParams params) {
 		URI uri = URI.create(params.getTextDocument().getUri());
+		this.snapshots.remove(uri);
+		this.pendingCompilations.remove(uri);
+		this.publishedResultIds.remove(uri);
 		gradleFilesManager.didClose(uri);
 	}
 
 	@Override
 	public void didSave(DidSaveTextDocumentParams params) {
-		// TODO
+		URI uri = URI.create(params.getTextDocument().getUri());
+		String content = this.gradleFilesManager.getContents(uri);
+		GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri);
+		if (content != null && unit != null) {
+			saveSnapshot(uri, content, unit);
+		}
+	}
+
+	@Override
+	public CompletableFuture<List<? extends SymbolInformation>> symbol(WorkspaceSymbolParams params) {
+		return CompletableFuture.completedFuture(
+				this.workspaceSymbolHandler.getWorkspaceSymbols(this.workspaceIndex.getSummaries(), params.getQuery()));
 	}
 
 	@Override
 	public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
-		// TODO
+		List<Path> changed = new ArrayList<>();
+		List<Path> deleted = new ArrayList<>();
+		for (FileEvent event : params.getChanges()) {
+			Path path = Paths.get(URI.create(event.getUri()));
+			if (!WorkspaceIndex.isBuildFile(path)) {
+				continue;
+			}
+			if (event.getType() == FileChangeType.Deleted) {
+				deleted.add(path);
+			} else {
+				changed.add(path);
+			}
+		}
+		if (!changed.isEmpty() || !deleted.isEmpty()) {
+			this.workspaceIndex.update(changed, deleted);
+		}
 	}
 
 	@Override
@@ -165,40 +321,196 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 			this.getLibraryResolver()
 					.setGradleWrapperEnabled((Boolean) ((Map<?, ?>) settings).get("gradleWrapperEnabled"));
 			this.getLibraryResolver().setGradleUserHomePath((String) ((Map<?, ?>) settings).get("gradleUserHome"));
+			Object gracePeriod = ((Map<?, ?>) settings).get("projectContextGracePeriod");
+			if (gracePeriod instanceof Number) {
+				this.gradleFilesManager.setGracePeriod(((Number) gracePeriod).longValue());
+			}
+			Object timeBudget = ((Map<?, ?>) settings).get("compileTimeBudget");
+			if (timeBudget instanceof Number) {
+				this.compileWatchdog.setTimeBudget(((Number) timeBudget).longValue());
+			}
+			Object memoryBudget = ((Map<?, ?>) settings).get("compileMemoryBudget");
+			if (memoryBudget instanceof Number) {
+				this.compileWatchdog.setMemoryBudget(((Number) memoryBudget).longValue());
+			}
+			Object prefetchRelatedFiles = ((Map<?, ?>) settings).get("prefetchRelatedFiles");
+			this.prefetchRelatedFiles = Boolean.TRUE.equals(prefetchRelatedFiles);
+			Object prefetchBudget = ((Map<?, ?>) settings).get("prefetchMemoryBudget");
+			if (prefetchBudget instanceof Number) {
+				this.gradleFilesManager.setPrefetchBudget(((Number) prefetchBudget).longValue());
+			}
 			this.getLibraryResolver().resolveGradleAPI();
+			scanPluginCache();
 		}
 	}
 
+	private void scanPluginCache() {
+		Path gradleUserHome = this.libraryResolver.getGradleUserHomePath();
+		CompletableFuture.runAsync(() -> this.pluginCompletionHandler.scanGradleCache(gradleUserHome),
+				this.backgroundExecutor);
+	}
+
 	private void compile(URI uri, GradleCompilationUnit unit) {
-		if (unit == null) {
+		if (unit == null || this.pullDiagnostics) {
+			// in pull mode, units are compiled when their diagnostics or analysis results
+			// are requested
 			return;
 		}
-		Set<PublishDiagnosticsParams> diagnostics = new HashSet<>();
+		List<Diagnostic> diagnostics = getDiagnostics(unit);
+		if (this.gradleFilesManager.getCompilationUnit(uri) != unit) {
+			// a newer version has been compiled in the meantime
+			return;
+		}
+		String resultId = getResultId(diagnostics);
+		if (resultId.equals(this.publishedResultIds.put(uri, resultId))) {
+			// the client already has the same diagnostics
+			return;
+		}
+		// the unit may have been compiled for another document with the same content,
+		// so the diagnostics are always published for the requested document
+		client.publishDiagnostics(new PublishDiagnosticsParams(uri.toString(), diagnostics));
+	}
+
+	private List<Diagnostic> getDiagnostics(GradleCompilationUnit unit) {
+		List<Diagnostic> diagnostics;
 		try {
-			unit.compile(Phases.CANONICALIZATION);
-			// Send empty diagnostic if there is no error
-			diagnostics.add(new PublishDiagnosticsParams(uri.toString(), Collections.emptyList()));
+			unit.compileOnce(Phases.CANONICALIZATION, this.compileWatchdog);
+			diagnostics = new ArrayList<>();
 		} catch (CompilationFailedException e) {
 			diagnostics = generateDiagnostics(unit.getErrorCollector());
 		}
-		for (PublishDiagnosticsParams diagnostic : diagnostics) {
-			client.publishDiagnostics(diagnostic);
+		String exceededBudget = unit.getExceededBudget();
+		if (exceededBudget != null) {
+			// the results come from the phases completed within the budget, or from the
+			// token stream if the script wasn't even parsed
+			Diagnostic diagnostic = new Diagnostic();
+			diagnostic.setRange(new Range(new Position(0, 0), new Position(0, 0)));
+			diagnostic.setSeverity(DiagnosticSeverity.Information);
+			diagnostic.setMessage("The analysis of this script exceeded its " + exceededBudget
+					+ ", so completion, highlighting and symbols are based on a partial analysis.");
+			diagnostic.setSource("Gradle");
+			diagnostics.add(diagnostic);
+		}
+		return diagnostics;
+	}
+
+	private GradleCompilationUnit getCompiledUnit(URI uri) {
+		GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri);
+		if (unit != null) {
+			getDiagnostics(unit);
+		}
+		return unit;
+	}
+
+	private static String getResultId(List<Diagnostic> diagnostics) {
+		StringBuilder builder = new StringBuilder();
+		for (Diagnostic diagnostic : diagnostics) {
+			Range range = diagnostic.getRange();
+			builder.append(range.getStart().getLine()).append(':').append(range.getStart().getCharacter()).append('-')
+					.append(range.getEnd().getLine()).append(':').append(range.getEnd().getCharacter()).append('\0')
+					.append(diagnostic.getSeverity()).append('\0')
+					.append(diagnostic.getCode() == null ? "" : diagnostic.getCode().get()).append('\0')
+					.append(diagnostic.getMessage()).append('\n');
+		}
+		return Utils.getContentHash(builder.toString());
+	}
+
+	@Override
+	public CompletableFuture<DocumentDiagnosticReport> diagnostic(DocumentDiagnosticParams params) {
+		URI uri = URI.create(params.getTextDocument().getUri());
+		return CompletableFuture.supplyAsync(() -> {
+			GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri);
+			List<Diagnostic> diagnostics = (unit == null) ? Collections.emptyList() : getDiagnostics(unit);
+			String resultId = getResultId(diagnostics);
+			if (resultId.equals(params.getPreviousResultId())) {
+				return DocumentDiagnosticReport.unchanged(resultId);
+			}
+			return DocumentDiagnosticReport.full(resultId, diagnostics);
+		}, this.analysisExecutor);
+	}
+
+	private AnalysisSnapshot getSnapshot(String content) {
+		if (this.snapshotCache == null) {
+			return null;
+		}
+		return this.snapshotCache.get(SnapshotCache.getKey(content, this.libraryResolver.getGradleAPIVersion()));
+	}
+
+	private void saveSnapshot(URI uri, String content, GradleCompilationUnit unit) {
+		if (this.snapshotCache == null || unit == null) {
+			return;
+		}
+		String key = SnapshotCache.getKey(content, this.libraryResolver.getGradleAPIVersion());
+		CompletableFuture.runAsync(() -> {
+			// a partially parsed script still has useful results
+			getDiagnostics(unit);
+			if (unit.getExceededBudget() != null) {
+				// the results of a compilation stopped by its budget are incomplete, they
+				// are only kept until the script is compiled again
+				return;
+			}
+			this.snapshotCache.put(key, createSnapshot(uri, unit));
+		}, this.backgroundExecutor);
+	}
+
+	private static AnalysisSnapshot createSnapshot(URI uri, GradleCompilationUnit unit) {
+		// use separate visitors, the shared ones are only used by requests
+		SemanticTokenVisitor tokenVisitor = new SemanticTokenVisitor();
+		tokenVisitor.visitCompilationUnit(uri, unit);
+		DocumentSymbolVisitor symbolVisitor = new DocumentSymbolVisitor();
+		symbolVisitor.visitCompilationUnit(uri, unit);
+		CompletionVisitor pluginVisitor = new CompletionVisitor();
+		pluginVisitor.visitCompilationUnit(uri, unit);
+		List<SemanticToken> tokens = tokenVisitor.getSemanticTokens(uri);
+		Set<String> plugins = pluginVisitor.getPlugins(uri);
+		return new AnalysisSnapshot(tokens == null ? null : SemanticToken.encodedTokens(tokens),
+				symbolVisitor.getDocumentSymbols(uri), symbolVisitor.getDependencies(uri),
+				plugins == null ? null : new ArrayList<>(plugins));
+	}
+
+	private void prefetchRelatedFiles(URI uri) {
+		if (!this.prefetchRelatedFiles || !"file".equals(uri.getScheme())
+				|| !this.gradleFilesManager.isPrefetchEnabled()) {
+			return;
 		}
+		this.prefetcher.prefetchRelatedFiles(Paths.get(uri), (file, content) -> {
+			this.scheduler.yieldToInteractive();
+			URI fileUri = file.toUri();
+			if (this.gradleFilesManager.getContents(fileUri) != null) {
+				// already open
+				return;
+			}
+			GradleCompilationUnit unit = this.gradleFilesManager.prefetch(fileUri, content, this.compileWatchdog);
+			if (unit != null && this.snapshotCache != null && getSnapshot(content) == null) {
+				this.snapshotCache.put(SnapshotCache.getKey(content, this.libraryResolver.getGradleAPIVersion()),
+						createSnapshot(fileUri, unit));
+			}
+		});
 	}
 
-	private void recompileAll() {
-		for (Map.Entry<URI, GradleCompilationUnit> entry : this.gradleFilesManager.getUnitStorage().entrySet()) {
-			URI uri = entry.getKey();
-			GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri,
-					entry.getValue().getVersion(), /** forceRecompile */
-					true);
-			compile(uri, unit);
+	private CompletableFuture<Void> recompileProject(String projectPath) {
+		return recompileProjects(Collections.singleton(projectPath));
+	}
+
+	private CompletableFuture<Void> recompileProjects(Collection<String> projectPaths) {
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (String projectPath : projectPaths) {
+			for (URI uri : this.gradleFilesManager.getOpenDocuments(projectPath)) {
+				// a sync recompiles all the open documents, which must not delay the
+				// interactive requests
+				futures.add(CompletableFuture.runAsync(() -> compile(uri, this.gradleFilesManager.recompile(uri)),
+						this.backgroundExecutor));
+			}
 		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
 	}
 
-	private Set<PublishDiagnosticsParams> generateDiagnostics(ErrorCollector collector) {
-		// URI, List<Diagnostic>
-		Map<String, List<Diagnostic>> diagnosticsStorage = new HashMap<>();
+	private List<Diagnostic> generateDiagnostics(ErrorCollector collector) {
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		if (!collector.hasErrors()) {
+			// e.g. the compilation was stopped by its budget
+			return diagnostics;
+		}
 		for (Message error : collector.getErrors()) {
 			if (error instanceof SyntaxErrorMessage) {
 				SyntaxException exp = ((SyntaxErrorMessage) error).getCause();
@@ -208,47 +520,68 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 				diagnostic.setSeverity(DiagnosticSeverity.Error);
 				diagnostic.setMessage(exp.getMessage());
 				diagnostic.setSource("Gradle");
-				if (diagnosticsStorage.containsKey(exp.getSourceLocator())) {
-					diagnosticsStorage.get(exp.getSourceLocator()).add(diagnostic);
-				} else {
-					List<Diagnostic> diagnostics = new ArrayList<>();
-					diagnostics.add(diagnostic);
-					diagnosticsStorage.put(exp.getSourceLocator(), diagnostics);
-				}
+				diagnostics.add(diagnostic);
 			}
 		}
-		Set<PublishDiagnosticsParams> diagnosticsParams = new HashSet<>();
-		for (Map.Entry<String, List<Diagnostic>> entry : diagnosticsStorage.entrySet()) {
-			diagnosticsParams.add(new PublishDiagnosticsParams(entry.getKey(), entry.getValue()));
-		}
-		return diagnosticsParams;
+		return diagnostics;
 	}
 
 	@Override
 	public CompletableFuture<SemanticTokens> semanticTokensFull(SemanticTokensParams params) {
+		return this.scheduler.runInteractive(() -> getSemanticTokens(params));
+	}
+
+	private CompletableFuture<SemanticTokens> getSemanticTokens(SemanticTokensParams params) {
 		URI uri = URI.create(params.getTextDocument().getUri());
-		GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri);
+		AnalysisSnapshot snapshot = this.snapshots.get(uri);
+		if (snapshot != null) {
+			return CompletableFuture.completedFuture(new SemanticTokens(snapshot.getSemanticTokens()));
+		}
+		if (this.pendingCompilations.containsKey(uri)) {
+			return CompletableFuture.completedFuture(getLexicalTokens(uri));
+		}
+		GradleCompilationUnit unit = getCompiledUnit(uri);
 		if (unit == null) {
 			return CompletableFuture.completedFuture(new SemanticTokens(Collections.emptyList()));
 		}
 		this.semanticTokenVisitor.visitCompilationUnit(uri, unit);
 		List<SemanticToken> semanticTokens = this.semanticTokenVisitor.getSemanticTokens(uri);
 		if (semanticTokens == null) {
-			return CompletableFuture.completedFuture(new SemanticTokens(Collections.emptyList()));
+			// the script can't be parsed
+			return CompletableFuture.completedFuture(getLexicalTokens(uri));
 		}
 		return CompletableFuture.completedFuture(new SemanticTokens(SemanticToken.encodedTokens(semanticTokens)));
 	}
 
+	private SemanticTokens getLexicalTokens(URI uri) {
+		String content = this.gradleFilesManager.getContents(uri);
+		if (content == null) {
+			return new SemanticTokens(Collections.emptyList());
+		}
+		return new SemanticTokens(SemanticToken.encodedTokens(SemanticTokenLexer.getSemanticTokens(content)));
+	}
+
 	@Override
 	public CompletableFuture<List<Either<SymbolInformation, DocumentSymbol>>> documentSymbol(
 			DocumentSymbolParams params) {
+		return this.scheduler.runInteractive(() -> getDocumentSymbols(params));
+	}
+
+	private CompletableFuture<List<Either<SymbolInformation, DocumentSymbol>>> getDocumentSymbols(
+			DocumentSymbolParams params) {
 		URI uri = URI.create(params.getTextDocument().getUri());
-		GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri);
-		if (unit == null) {
-			return CompletableFuture.completedFuture(Collections.emptyList());
+		AnalysisSnapshot snapshot = this.snapshots.get(uri);
+		List<DocumentSymbol> documentSymbols;
+		if (snapshot != null) {
+			documentSymbols = snapshot.getDocumentSymbols();
+		} else {
+			GradleCompilationUnit unit = getCompiledUnit(uri);
+			if (unit == null) {
+				return CompletableFuture.completedFuture(Collections.emptyList());
+			}
+			this.documentSymbolVisitor.visitCompilationUnit(uri, unit);
+			documentSymbols = this.documentSymbolVisitor.getDocumentSymbols(uri);
 		}
-		this.documentSymbolVisitor.visitCompilationUnit(uri, unit);
-		List<DocumentSymbol> documentSymbols = this.documentSymbolVisitor.getDocumentSymbols(uri);
 		if (documentSymbols == null) {
 			return CompletableFuture.completedFuture(Collections.emptyList());
 		}
@@ -261,12 +594,26 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 
 	@Override
 	public CompletableFuture<Either<List<CompletionItem>, CompletionList>> completion(CompletionParams params) {
+		return this.scheduler.runInteractive(() -> getCompletionItems(params));
+	}
+
+	private CompletableFuture<Either<List<CompletionItem>, CompletionList>> getCompletionItems(
+			CompletionParams params) {
 		URI uri = URI.create(params.getTextDocument().getUri());
-		GradleCompilationUnit unit = this.gradleFilesManager.getCompilationUnit(uri);
+		GradleCompilationUnit unit = getCompiledUnit(uri);
 		if (unit == null) {
 			return CompletableFuture.completedFuture(Either.forLeft(Collections.emptyList()));
 		}
 		this.completionVisitor.visitCompilationUnit(uri, unit);
+		List<PluginItem> pluginItems = this.completionVisitor.getPluginItems(uri);
+		if (pluginItems != null) {
+			for (PluginItem plugin : pluginItems) {
+				if (Ranges.containsPosition(plugin.getRange(), params.getPosition())) {
+					return CompletableFuture.completedFuture(Either.forLeft(
+							this.pluginCompletionHandler.getPluginCompletionItems(plugin, params.getPosition())));
+				}
+			}
+		}
 		List<DependencyItem> dependencies = this.completionVisitor.getDependencies(uri);
 		if (dependencies == null) {
 			return CompletableFuture.completedFuture(Either.forLeft(Collections.emptyList()));
@@ -333,26 +680,25 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 			}
 			String uriString = new Gson().fromJson((JsonElement) arguments.get(0), String.class);
 			URI uri = URI.create(uriString);
-			if (this.gradleFilesManager.getCompilationUnit(uri) == null) {
-				try {
-					Path uriPath = Paths.get(uri);
-					String content = Files.asCharSource(uriPath.toFile(), Charsets.UTF_8).read();
-					DidOpenTextDocumentParams openDocumentParams = new DidOpenTextDocumentParams(
-							new TextDocumentItem(uriString, "gradle", 1, content));
-					this.didOpen(openDocumentParams);
-					DocumentSymbolParams documentSymbolParams = new DocumentSymbolParams(
-							new TextDocumentIdentifier(uriString));
-					this.documentSymbol(documentSymbolParams);
-				} catch (IOException e) {
-					return CompletableFuture.completedFuture(null);
-				}
+			List<DocumentSymbol> dependencies;
+			if (this.gradleFilesManager.getCompilationUnit(uri) == null && !this.snapshots.containsKey(uri)) {
+				// the document isn't open, read its dependencies from the workspace index
+				FileSummary summary = this.workspaceIndex.getSummary(Paths.get(uri));
+				dependencies = (summary == null) ? null : summary.getDependencies();
+			} else {
+				dependencies = getDependencySymbols(uri);
 			}
-			List<DocumentSymbol> dependencies = this.documentSymbolVisitor.getDependencies(uri);
 			if (dependencies == null) {
 				return CompletableFuture.completedFuture(null);
 			}
 			List<DefaultDependencyItem> result = defaultDependenciesHandler.getDefaultDependencies(dependencies);
 			return CompletableFuture.completedFuture(result);
+		} else if (command.equals("gradle.getDependenciesBatch")) {
+			if (arguments.isEmpty()) {
+				return CompletableFuture.completedFuture(null);
+			}
+			String[] uriStrings = new Gson().fromJson((JsonElement) arguments.get(0), String[].class);
+			return getDependenciesBatch(Arrays.asList(uriStrings)).thenApply(result -> result);
 		} else if (command.equals("gradle.distributionChanged")) {
 			this.libraryResolver.resolveGradleAPI();
 		} else if (command.equals("gradle.setPlugins")) {
@@ -362,6 +708,7 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 			String projectPath = new Gson().fromJson((JsonElement) arguments.get(0), String.class);
 			String[] plugins = new Gson().fromJson((JsonElement) arguments.get(1), String[].class);
 			this.libraryResolver.setProjectPlugins(projectPath, Arrays.asList(plugins));
+			this.pluginCompletionHandler.setProjectPlugins(this.libraryResolver.getProjectPlugins());
 		} else if (command.equals("gradle.setClosures")) {
 			if (arguments.isEmpty()) {
 				return CompletableFuture.completedFuture(null);
@@ -375,12 +722,96 @@ public class GradleServices implements TextDocumentService, WorkspaceService, La
 			}
 			String projectPath = new Gson().fromJson((JsonElement) arguments.get(0), String.class);
 			String[] scriptClasspaths = new Gson().fromJson((JsonElement) arguments.get(1), String[].class);
-			this.gradleFilesManager.setScriptClasspaths(projectPath, Arrays.asList(scriptClasspaths));
-			this.recompileAll();
+			if (this.gradleFilesManager.setScriptClasspaths(projectPath, Arrays.asList(scriptClasspaths))) {
+				return this.recompileProject(projectPath).thenApply(result -> null);
+			}
+		} else if (command.equals("gradle.setProjectModels")) {
+			if (arguments.isEmpty()) {
+				return CompletableFuture.completedFuture(null);
+			}
+			ProjectModel[] models = new Gson().fromJson((JsonElement) arguments.get(0), ProjectModel[].class);
+			return setProjectModels(Arrays.asList(models)).thenApply(result -> null);
+		} else if (command.equals("gradle.getSchedulerMetrics")) {
+			Map<String, String> result = new LinkedHashMap<>();
+			this.scheduler.getMetrics().forEach((priority, metrics) -> result.put(priority.name(), metrics.toString()));
+			return CompletableFuture.completedFuture(result);
 		}
 		return CompletableFuture.completedFuture(null);
 	}
 
+	/**
+	 * Applies the synced models of several projects in one step and recompiles the
+	 * open documents of the projects whose script classpath changed, once.
+	 */
+	private CompletableFuture<Void> setProjectModels(List<ProjectModel> models) {
+		Map<String, List<String>> plugins = new HashMap<>();
+		Map<String, List<GradleClosure>> closures = new HashMap<>();
+		Map<String, List<String>> scriptClasspaths = new HashMap<>();
+		for (ProjectModel model : models) {
+			if (model.projectPath == null) {
+				continue;
+			}
+			if (model.plugins != null) {
+				plugins.put(model.projectPath, Arrays.asList(model.plugins));
+			}
+			if (model.closures != null) {
+				closures.put(model.projectPath, Arrays.asList(model.closures));
+			}
+			if (model.scriptClasspaths != null) {
+				scriptClasspaths.put(model.projectPath, Arrays.asList(model.scriptClasspaths));
+			}
+		}
+		this.libraryResolver.setProjectModels(plugins, closures);
+		this.pluginCompletionHandler.setProjectPlugins(this.libraryResolver.getProjectPlugins());
+		// the sync may have resolved new plugins
+		scanPluginCache();
+		Set<String> changed = this.gradleFilesManager.setScriptClasspaths(scriptClasspaths);
+		if (changed.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return recompileProjects(changed);
+	}
+
+	private CompletableFuture<Map<String, List<DefaultDependencyItem>>> getDependenciesBatch(List<String> uriStrings) {
+		Map<String, List<DefaultDependencyItem>> result = new ConcurrentHashMap<>();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (String uriString : uriStrings) {
+			URI uri = URI.create(uriString);
+			if (this.gradleFilesManager.getCompilationUnit(uri) != null || this.snapshots.containsKey(uri)) {
+				// open documents share the visitors with the requests, so they are handled
+				// on the calling thread
+				List<DocumentSymbol> dependencies = getDependencySymbols(uri);
+				if (dependencies != null) {
+					result.put(uriString, this.defaultDependenciesHandler.getDefaultDependencies(dependencies));
+				}
+				continue;
+			}
+			// the others are only parsed, without being opened, in parallel
+			futures.add(CompletableFuture.runAsync(() -> {
+				FileSummary summary = this.workspaceIndex.getSummary(Paths.get(uri));
+				if (summary != null) {
+					result.put(uriString,
+							this.defaultDependenciesHandler.getDefaultDependencies(summary.getDependencies()));
+				}
+			}, this.analysisExecutor));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> result);
+	}
+
+	private List<DocumentSymbol> getDependencySymbols(URI uri) {
+		AnalysisSnapshot snapshot = this.snapshots.get(uri);
+		if (snapshot != null) {
+			return snapshot.getDependencies();
+		}
+		// waits for a compilation running in the background
+		GradleCompilationUnit unit = getCompiledUnit(uri);
+		if (unit == null) {
+			return null;
+		}
+		this.documentSymbolVisitor.visitCompilationUnit(uri, unit);
+		return this.documentSymbolVisitor.getDependencies(uri);
+	}
+
 	private boolean isGradleRoot(URI uri, Position position) {
 		List<Statement> statements = this.completionVisitor.getStatements(uri);
 		for (Statement statement : statements) {
@@ -0,0 +1,24 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle;
+
+import com.microsoft.gradle.diagnostics.DocumentDiagnosticParams;
+import com.microsoft.gradle.diagnostics.DocumentDiagnosticReport;
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.eclipse.lsp4j.jsonrpc.services.JsonSegment;
+import org.eclipse.lsp4j.services.TextDocumentService;
+
+/**
+ * The text document requests which are newer than the lsp4j version in use.
+ */
+@JsonSegment("textDocument")
+public interface GradleTextDocumentService extends TextDocumentService {
+
+	/**
+	 * The pull diagnostics request of LSP 3.17.
+	 */
+	@JsonRequest
+	CompletableFuture<DocumentDiagnosticReport> diagnostic(DocumentDiagnosticParams params);
+}
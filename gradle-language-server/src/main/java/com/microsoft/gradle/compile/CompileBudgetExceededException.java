@@ -0,0 +1,19 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.compile;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.ProcessingUnit;
+
+/**
+ * Stops a compilation which exceeded its budget, the phases completed so far
+ * are kept.
+ */
+public class CompileBudgetExceededException extends CompilationFailedException {
+	private static final long serialVersionUID = 1L;
+
+	public CompileBudgetExceededException(int phase, ProcessingUnit unit) {
+		super(phase, unit);
+	}
+}
@@ -0,0 +1,90 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.compile;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Enforces a time and memory budget on each compilation, so a huge or generated
+ * script can't keep the compiler busy for seconds.
+ *
+ * The groovy compiler can't be interrupted from outside, so the budget is
+ * checked by the compiling thread at its checkpoints: after each phase and
+ * whenever a class is resolved. Memory is measured as the bytes allocated by
+ * the compiling thread, when the JVM supports it.
+ *
+ * The budget is best-effort: a single long step between two checkpoints, e.g.
+ * parsing a huge script, runs to its end, so a compilation may overrun its
+ * budget by that step.
+ */
+public class CompileWatchdog {
+
+	public static final long DEFAULT_TIME_BUDGET = 2000;
+	public static final long DEFAULT_MEMORY_BUDGET = 256;
+
+	// in milliseconds, non-positive values disable the budget
+	private volatile long timeBudget = DEFAULT_TIME_BUDGET;
+	// in megabytes
+	private volatile long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+	public class Watch {
+		private final long start = System.nanoTime();
+		private final long threadId = Thread.currentThread().getId();
+		private final long startAllocatedBytes = getAllocatedBytes(this.threadId);
+
+		/**
+		 * @return a description of the exceeded budget, or null if the compilation is
+		 *         within its budget
+		 */
+		public String check() {
+			long timeBudget = CompileWatchdog.this.timeBudget;
+			if (timeBudget > 0 && System.nanoTime() - this.start > timeBudget * 1000000L) {
+				return "time budget (" + timeBudget + " ms)";
+			}
+			long memoryBudget = CompileWatchdog.this.memoryBudget;
+			if (memoryBudget > 0 && this.startAllocatedBytes >= 0) {
+				long allocatedBytes = getAllocatedBytes(this.threadId) - this.startAllocatedBytes;
+				if (allocatedBytes > memoryBudget * 1024 * 1024) {
+					return "memory budget (" + memoryBudget + " MB)";
+				}
+			}
+			return null;
+		}
+	}
+
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Starts watching a compilation on the current thread.
+	 */
+	public Watch watch() {
+		return new Watch();
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread, or -1 if the JVM
+	 *         doesn't measure them
+	 */
+	public static long getAllocatedBytes() {
+		return getAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long getAllocatedBytes(long threadId) {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+			if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+				return allocationBean.getThreadAllocatedBytes(threadId);
+			}
+		}
+		return -1;
+	}
+}
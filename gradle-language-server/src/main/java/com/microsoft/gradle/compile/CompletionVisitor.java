@@ -49,12 +49,49 @@ public class CompletionVisitor extends ClassCodeVisitorSupport {
 		}
 	}
 
+	public class PluginItem {
+		private String id;
+		private String text;
+		private Range range;
+		private boolean version;
+
+		public PluginItem(String id, String text, Range range, boolean version) {
+			this.id = id;
+			this.text = text;
+			this.range = range;
+			this.version = version;
+		}
+
+		/**
+		 * @return the ID of the declared plugin
+		 */
+		public String getId() {
+			return this.id;
+		}
+
+		/**
+		 * @return the text of the string, i.e. the ID or the version
+		 */
+		public String getText() {
+			return this.text;
+		}
+
+		public Range getRange() {
+			return this.range;
+		}
+
+		public boolean isVersion() {
+			return this.version;
+		}
+	}
+
 	private URI currentUri;
 	private Map<URI, List<DependencyItem>> dependencies = new HashMap<>();
 	private Map<URI, Set<MethodCallExpression>> methodCalls = new HashMap<>();
 	private Map<URI, List<Statement>> statements = new HashMap<>();
 	private Map<URI, List<Expression>> constants = new HashMap<>();
 	private Map<URI, Set<String>> plugins = new HashMap<>();
+	private Map<URI, List<PluginItem>> pluginItems = new HashMap<>();
 
 	public List<DependencyItem> getDependencies(URI uri) {
 		return this.dependencies.get(uri);
@@ -76,6 +113,13 @@ public class CompletionVisitor extends ClassCodeVisitorSupport {
 		return this.plugins.get(uri);
 	}
 
+	/**
+	 * @return the plugin IDs and versions declared in the plugins block
+	 */
+	public List<PluginItem> getPluginItems(URI uri) {
+		return this.pluginItems.get(uri);
+	}
+
 	public void visitCompilationUnit(URI uri, GradleCompilationUnit compilationUnit) {
 		this.currentUri = uri;
 		compilationUnit.iterator().forEachRemaining(unit -> visitSourceUnit(unit));
@@ -89,6 +133,7 @@ public class CompletionVisitor extends ClassCodeVisitorSupport {
 			this.statements.put(this.currentUri, new ArrayList<>());
 			this.constants.put(this.currentUri, new ArrayList<>());
 			this.plugins.put(this.currentUri, new HashSet<>());
+			this.pluginItems.put(this.currentUri, new ArrayList<>());
 			visitModule(moduleNode);
 		}
 	}
@@ -196,7 +241,20 @@ public class CompletionVisitor extends ClassCodeVisitorSupport {
 	private List<String> getPluginFromPlugins(MethodCallExpression node) {
 		Expression objectExpression = node.getObjectExpression();
 		if (objectExpression instanceof MethodCallExpression) {
-			return getPluginFromPlugins((MethodCallExpression) objectExpression);
+			List<String> ids = getPluginFromPlugins((MethodCallExpression) objectExpression);
+			// match id '${id}' version '${version}'
+			if (ids.size() == 1 && node.getMethodAsString().equals("version")) {
+				Expression argument = node.getArguments();
+				if (argument instanceof ArgumentListExpression) {
+					for (Expression expression : ((ArgumentListExpression) argument).getExpressions()) {
+						if (expression instanceof ConstantExpression) {
+							this.pluginItems.get(this.currentUri).add(new PluginItem(ids.get(0), expression.getText(),
+									LSPUtils.toDependencyRange(expression), true));
+						}
+					}
+				}
+			}
+			return ids;
 		}
 		List<String> results = new ArrayList<>();
 		Expression argument = node.getArguments();
@@ -205,6 +263,8 @@ public class CompletionVisitor extends ClassCodeVisitorSupport {
 			for (Expression expression : expressions) {
 				if (expression instanceof ConstantExpression && node.getMethodAsString().equals("id")) {
 					results.add(expression.getText());
+					this.pluginItems.get(this.currentUri).add(new PluginItem(expression.getText(), expression.getText(),
+							LSPUtils.toDependencyRange(expression), false));
 				} else if (expression instanceof ClosureExpression) {
 					Statement code = ((ClosureExpression) expression).getCode();
 					if (code instanceof BlockStatement) {
@@ -5,19 +5,82 @@ package com.microsoft.gradle.compile;
 
 import groovy.lang.GroovyClassLoader;
 import java.security.CodeSource;
+import org.codehaus.groovy.control.CompilationFailedException;
 import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilerConfiguration;
 
 public class GradleCompilationUnit extends CompilationUnit {
-	private Integer version;
+	private String contentKey;
+	private boolean compiled;
+	private CompilationFailedException failure;
+	private volatile CompileWatchdog.Watch watch;
+	private volatile String exceededBudget;
 
 	public GradleCompilationUnit(CompilerConfiguration configuration, CodeSource codeSource, GroovyClassLoader loader,
-			Integer version) {
+			String contentKey) {
 		super(configuration, codeSource, loader);
-		this.version = version;
+		this.contentKey = contentKey;
+		setProgressCallback((context, phase) -> checkBudget());
 	}
 
-	public Integer getVersion() {
-		return this.version;
+	/**
+	 * @return the key of the compiled content and compiler configuration, units
+	 *         with the same key are shared between documents
+	 */
+	public String getContentKey() {
+		return this.contentKey;
+	}
+
+	/**
+	 * Compiles the unit on the first call only. A shared unit can't be compiled
+	 * again, so later calls just report the result of the first compilation.
+	 */
+	public synchronized void compileOnce(int throughPhase) throws CompilationFailedException {
+		compileOnce(throughPhase, null);
+	}
+
+	/**
+	 * Compiles the unit on the first call only, within the budget enforced by the
+	 * given watchdog.
+	 */
+	public synchronized void compileOnce(int throughPhase, CompileWatchdog watchdog) throws CompilationFailedException {
+		if (!this.compiled) {
+			this.compiled = true;
+			this.watch = (watchdog == null) ? null : watchdog.watch();
+			try {
+				compile(throughPhase);
+			} catch (CompilationFailedException e) {
+				this.failure = e;
+			} finally {
+				this.watch = null;
+			}
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * @return the budget which stopped the compilation, or null if it completed
+	 */
+	public String getExceededBudget() {
+		return this.exceededBudget;
+	}
+
+	/**
+	 * Stops the compilation if it exceeded its budget, called by the compiling
+	 * thread only.
+	 */
+	public void checkBudget() throws CompilationFailedException {
+		CompileWatchdog.Watch watch = this.watch;
+		if (watch == null) {
+			return;
+		}
+		String exceededBudget = watch.check();
+		if (exceededBudget != null) {
+			this.exceededBudget = exceededBudget;
+			this.watch = null;
+			throw new CompileBudgetExceededException(getPhase(), this);
+		}
 	}
 }
@@ -0,0 +1,55 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.compile;
+
+import com.microsoft.gradle.resolver.ClassNameIndex.ClassLookup;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import org.codehaus.groovy.ast.decompiled.AsmDecompiler;
+import org.codehaus.groovy.ast.decompiled.AsmReferenceResolver;
+import org.codehaus.groovy.ast.decompiled.ClassStub;
+import org.codehaus.groovy.ast.decompiled.DecompiledClassNode;
+import org.codehaus.groovy.control.ClassNodeResolver;
+import org.codehaus.groovy.control.CompilationUnit;
+
+/**
+ * Resolves classes from the indexed classpath jars with a single hash lookup,
+ * instead of letting the class loader search every jar on the classpath.
+ * Classes which are not in the index (JDK, class folders) are resolved as
+ * usual.
+ */
+public class IndexedClassNodeResolver extends ClassNodeResolver {
+
+	private ClassLookup lookup;
+
+	public IndexedClassNodeResolver(ClassLookup lookup) {
+		this.lookup = lookup;
+	}
+
+	@Override
+	public LookupResult resolveName(String name, CompilationUnit compilationUnit) {
+		if (compilationUnit instanceof GradleCompilationUnit) {
+			// resolving the classes is the most expensive part of a compilation
+			((GradleCompilationUnit) compilationUnit).checkBudget();
+		}
+		return super.resolveName(name, compilationUnit);
+	}
+
+	@Override
+	public LookupResult findClassNode(String name, CompilationUnit compilationUnit) {
+		File jar = this.lookup.getJar(name);
+		if (jar == null) {
+			return super.findClassNode(name, compilationUnit);
+		}
+		try {
+			URL url = new URL("jar:" + jar.toURI().toString() + "!/" + name.replace('.', '/') + ".class");
+			ClassStub stub = AsmDecompiler.parseClass(url);
+			return new LookupResult(null,
+					new DecompiledClassNode(stub, new AsmReferenceResolver(this, compilationUnit)));
+		} catch (IOException e) {
+			return super.findClassNode(name, compilationUnit);
+		}
+	}
+}
@@ -53,6 +53,9 @@ public class SemanticTokenVisitor extends ClassCodeVisitorSupport {
 		if (moduleNode != null) {
 			this.tokens.put(uri, new ArrayList<>());
 			visitModule(moduleNode);
+		} else {
+			// the tokens of an older version would be misplaced
+			this.tokens.remove(uri);
 		}
 	}
 
@@ -0,0 +1,57 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.diagnostics;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import org.eclipse.lsp4j.TextDocumentClientCapabilities;
+
+/**
+ * Adds the textDocument.diagnostic client capability of LSP 3.17, which tells
+ * whether the client pulls diagnostics. Register {@link #configureGson} with
+ * the launcher to read it.
+ */
+public class DiagnosticClientCapabilities extends TextDocumentClientCapabilities {
+
+	public static class DiagnosticCapabilities {
+		private Boolean dynamicRegistration;
+		private Boolean relatedDocumentSupport;
+
+		public Boolean getDynamicRegistration() {
+			return this.dynamicRegistration;
+		}
+
+		public Boolean getRelatedDocumentSupport() {
+			return this.relatedDocumentSupport;
+		}
+	}
+
+	private DiagnosticCapabilities diagnostic;
+
+	public DiagnosticCapabilities getDiagnostic() {
+		return this.diagnostic;
+	}
+
+	public void setDiagnostic(DiagnosticCapabilities diagnostic) {
+		this.diagnostic = diagnostic;
+	}
+
+	/**
+	 * @return whether the client supports pull diagnostics
+	 */
+	public static boolean isPullSupported(TextDocumentClientCapabilities capabilities) {
+		return capabilities instanceof DiagnosticClientCapabilities
+				&& ((DiagnosticClientCapabilities) capabilities).getDiagnostic() != null;
+	}
+
+	/**
+	 * Reads the text document capabilities of the client as
+	 * {@link DiagnosticClientCapabilities}.
+	 */
+	public static void configureGson(GsonBuilder builder) {
+		builder.registerTypeAdapter(TextDocumentClientCapabilities.class,
+				(JsonDeserializer<TextDocumentClientCapabilities>) (json, type, context) -> context.deserialize(json,
+						DiagnosticClientCapabilities.class));
+	}
+}
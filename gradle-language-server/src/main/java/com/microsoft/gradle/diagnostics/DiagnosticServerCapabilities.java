@@ -0,0 +1,47 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.diagnostics;
+
+import org.eclipse.lsp4j.ServerCapabilities;
+
+/**
+ * Adds the diagnosticProvider capability of LSP 3.17, clients without support
+ * for pull diagnostics ignore it.
+ */
+public class DiagnosticServerCapabilities extends ServerCapabilities {
+
+	public static class DiagnosticOptions {
+		private String identifier;
+		private boolean interFileDependencies;
+		private boolean workspaceDiagnostics;
+
+		public DiagnosticOptions(String identifier) {
+			this.identifier = identifier;
+			this.interFileDependencies = false;
+			this.workspaceDiagnostics = false;
+		}
+
+		public String getIdentifier() {
+			return this.identifier;
+		}
+
+		public boolean isInterFileDependencies() {
+			return this.interFileDependencies;
+		}
+
+		public boolean isWorkspaceDiagnostics() {
+			return this.workspaceDiagnostics;
+		}
+	}
+
+	private DiagnosticOptions diagnosticProvider;
+
+	public DiagnosticOptions getDiagnosticProvider() {
+		return this.diagnosticProvider;
+	}
+
+	public void setDiagnosticProvider(DiagnosticOptions diagnosticProvider) {
+		this.diagnosticProvider = diagnosticProvider;
+	}
+}
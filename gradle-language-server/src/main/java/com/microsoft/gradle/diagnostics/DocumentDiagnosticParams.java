@@ -0,0 +1,36 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.diagnostics;
+
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+
+/**
+ * The parameters of a textDocument/diagnostic request (LSP 3.17), which the
+ * lsp4j version in use doesn't provide yet.
+ */
+public class DocumentDiagnosticParams {
+	private TextDocumentIdentifier textDocument;
+	private String identifier;
+	private String previousResultId;
+
+	public DocumentDiagnosticParams() {
+	}
+
+	public DocumentDiagnosticParams(TextDocumentIdentifier textDocument, String previousResultId) {
+		this.textDocument = textDocument;
+		this.previousResultId = previousResultId;
+	}
+
+	public TextDocumentIdentifier getTextDocument() {
+		return this.textDocument;
+	}
+
+	public String getIdentifier() {
+		return this.identifier;
+	}
+
+	public String getPreviousResultId() {
+		return this.previousResultId;
+	}
+}
@@ -0,0 +1,46 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.diagnostics;
+
+import java.util.List;
+import org.eclipse.lsp4j.Diagnostic;
+
+/**
+ * The result of a textDocument/diagnostic request (LSP 3.17). An unchanged
+ * report tells the client to keep the diagnostics of the previous result.
+ */
+public class DocumentDiagnosticReport {
+	public static final String FULL = "full";
+	public static final String UNCHANGED = "unchanged";
+
+	private String kind;
+	private String resultId;
+	private List<Diagnostic> items;
+
+	private DocumentDiagnosticReport(String kind, String resultId, List<Diagnostic> items) {
+		this.kind = kind;
+		this.resultId = resultId;
+		this.items = items;
+	}
+
+	public static DocumentDiagnosticReport full(String resultId, List<Diagnostic> items) {
+		return new DocumentDiagnosticReport(FULL, resultId, items);
+	}
+
+	public static DocumentDiagnosticReport unchanged(String resultId) {
+		return new DocumentDiagnosticReport(UNCHANGED, resultId, null);
+	}
+
+	public String getKind() {
+		return this.kind;
+	}
+
+	public String getResultId() {
+		return this.resultId;
+	}
+
+	public List<Diagnostic> getItems() {
+		return this.items;
+	}
+}
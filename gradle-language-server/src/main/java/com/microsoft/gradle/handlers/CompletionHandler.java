@@ -4,10 +4,7 @@
 package com.microsoft.gradle.handlers;
 
 import com.microsoft.gradle.delegate.GradleDelegate;
-import com.microsoft.gradle.resolver.GradleClosure;
-import com.microsoft.gradle.resolver.GradleField;
 import com.microsoft.gradle.resolver.GradleLibraryResolver;
-import com.microsoft.gradle.resolver.GradleMethod;
 import com.microsoft.gradle.utils.CompletionUtils;
 import com.microsoft.gradle.utils.CompletionUtils.CompletionKinds;
 import java.lang.reflect.Modifier;
@@ -108,7 +105,7 @@ public class CompletionHandler {
 					arguments.add(((ObjectType) type).getClassName());
 				}
 			});
-			CompletionItem item = generateCompletionItemForMethod(methodName, arguments, isMethodDeprecated);
+			CompletionItem item = CompletionUtils.getMethodCompletionItem(methodName, arguments, isMethodDeprecated);
 			if (resultSet.add(item.getLabel())) {
 				results.add(item);
 			}
@@ -161,26 +158,8 @@ public class CompletionHandler {
 
 	private List<CompletionItem> getCompletionItemsFromExtClosures(GradleLibraryResolver resolver, String projectPath,
 			Set<String> resultSet) {
-		List<GradleClosure> extClosures = resolver.getExtClosures(projectPath);
-		if (extClosures == null || extClosures.isEmpty()) {
-			return Collections.emptyList();
-		}
 		List<CompletionItem> results = new ArrayList<>();
-		for (GradleClosure closure : extClosures) {
-			StringBuilder titleBuilder = new StringBuilder();
-			titleBuilder.append(closure.name);
-			titleBuilder.append("(Closure c)");
-			CompletionItem item = new CompletionItem(titleBuilder.toString());
-			item.setKind(CompletionItemKind.Function);
-			item.setInsertTextFormat(InsertTextFormat.Snippet);
-			StringBuilder insertTextBuilder = new StringBuilder();
-			insertTextBuilder.append(closure.name);
-			insertTextBuilder.append(" {$0}");
-			item.setInsertText(insertTextBuilder.toString());
-			List<Object> arguments = new ArrayList<>();
-			arguments.add(CompletionKinds.METHOD_CALL.toString());
-			arguments.add(closure.name);
-			item.setCommand(new Command(CompletionUtils.completionTitle, CompletionUtils.completionCommand, arguments));
+		for (CompletionItem item : resolver.getClosureIndex(projectPath).getClosureItems()) {
 			if (resultSet.add(item.getLabel())) {
 				results.add(item);
 			}
@@ -190,80 +169,13 @@ public class CompletionHandler {
 
 	private List<CompletionItem> getCompletionItemsFromExtClosures(GradleLibraryResolver resolver, String projectPath,
 			String closureName, Set<String> resultSet) {
-		List<GradleClosure> extClosures = resolver.getExtClosures(projectPath);
-		if (extClosures == null || extClosures.isEmpty()) {
-			return Collections.emptyList();
-		}
 		List<CompletionItem> results = new ArrayList<>();
-		for (GradleClosure closure : extClosures) {
-			if (closure.name.equals(closureName)) {
-				for (GradleMethod method : closure.methods) {
-					CompletionItem item = generateCompletionItemForMethod(method.name,
-							Arrays.asList(method.parameterTypes), method.deprecated);
-					if (resultSet.add(item.getLabel())) {
-						results.add(item);
-					}
-				}
-				for (GradleField field : closure.fields) {
-					CompletionItem property = new CompletionItem(field.name);
-					property.setKind(CompletionItemKind.Property);
-					if (field.deprecated) {
-						property.setTags(Arrays.asList(CompletionItemTag.Deprecated));
-					}
-					List<Object> arguments = new ArrayList<>();
-					arguments.add(CompletionKinds.PROPERTY.toString());
-					arguments.add(field.name);
-					property.setCommand(
-							new Command(CompletionUtils.completionTitle, CompletionUtils.completionCommand, arguments));
-					if (resultSet.add(field.name)) {
-						results.add(property);
-					}
-				}
-				return results;
-			}
-		}
-		return Collections.emptyList();
-	}
-
-	private static CompletionItem generateCompletionItemForMethod(String name, List<String> arguments,
-			boolean deprecated) {
-		StringBuilder labelBuilder = new StringBuilder();
-		labelBuilder.append(name);
-		labelBuilder.append("(");
-		for (int i = 0; i < arguments.size(); i++) {
-			String type = arguments.get(i);
-			String[] classNameSplits = type.split("\\.");
-			String className = classNameSplits[classNameSplits.length - 1];
-			String variableName = className.substring(0, 1).toLowerCase();
-			labelBuilder.append(className);
-			labelBuilder.append(" ");
-			labelBuilder.append(variableName);
-			if (i != arguments.size() - 1) {
-				labelBuilder.append(", ");
+		for (CompletionItem item : resolver.getClosureIndex(projectPath).getMemberItems(closureName)) {
+			if (resultSet.add(item.getLabel())) {
+				results.add(item);
 			}
 		}
-		labelBuilder.append(")");
-		String label = labelBuilder.toString();
-		CompletionItem item = new CompletionItem(label);
-		if (deprecated) {
-			item.setTags(Arrays.asList(CompletionItemTag.Deprecated));
-		}
-		item.setKind(CompletionItemKind.Function);
-		item.setInsertTextFormat(InsertTextFormat.Snippet);
-		StringBuilder builder = new StringBuilder();
-		builder.append(name);
-		if (label.endsWith("(Closure c)")) {
-			// for single closure, we offer curly brackets
-			builder.append(" {$0}");
-		} else {
-			builder.append("($0)");
-		}
-		item.setInsertText(builder.toString());
-		List<Object> itemArguments = new ArrayList<>();
-		itemArguments.add(CompletionKinds.METHOD_CALL.toString());
-		itemArguments.add(name);
-		item.setCommand(new Command(CompletionUtils.completionTitle, CompletionUtils.completionCommand, itemArguments));
-		return item;
+		return results;
 	}
 
 	private static boolean isDeprecated(FieldOrMethod object) {
@@ -276,11 +188,6 @@ public class CompletionHandler {
 	}
 
 	private static void setSortText(CompletionItem item) {
-		// priority: function > property
-		int kindValue = (item.getKind() == CompletionItemKind.Function) ? 0 : 1;
-		StringBuilder builder = new StringBuilder();
-		builder.append(String.valueOf(kindValue));
-		builder.append(item.getLabel());
-		item.setSortText(builder.toString());
+		item.setSortText(CompletionUtils.getSortText(item));
 	}
 }
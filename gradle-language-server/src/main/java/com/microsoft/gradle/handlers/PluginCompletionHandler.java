@@ -0,0 +1,130 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.handlers;
+
+import com.microsoft.gradle.compile.CompletionVisitor.PluginItem;
+import com.microsoft.gradle.resolver.PluginIndex;
+import com.microsoft.gradle.utils.CompletionUtils;
+import com.microsoft.gradle.utils.CompletionUtils.CompletionKinds;
+import com.microsoft.gradle.utils.LSPUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.lsp4j.Command;
+import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.CompletionItemKind;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextEdit;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+
+/**
+ * Completes plugin IDs and versions in the plugins block without any network
+ * access, from the bundled index of well-known plugins, the plugins found in
+ * the local Gradle cache and the plugins applied to the synced projects.
+ */
+public class PluginCompletionHandler {
+	private static final int MAX_RESULTS = 200;
+	private static String sequence = "0";
+	private String indexFile = "/PluginIndex.bin";
+	private PluginIndex bundledIndex = PluginIndex.EMPTY;
+	private PluginIndex localIndex = PluginIndex.EMPTY;
+	private PluginIndex projectIndex = PluginIndex.EMPTY;
+	private volatile PluginIndex index = PluginIndex.EMPTY;
+
+	public PluginCompletionHandler() {
+		try (InputStream inputStream = PluginCompletionHandler.class.getResourceAsStream(indexFile)) {
+			if (inputStream != null) {
+				this.bundledIndex = PluginIndex.read(inputStream);
+			}
+		} catch (IOException e) {
+			// Do nothing
+		}
+		this.index = this.bundledIndex;
+	}
+
+	/**
+	 * Rescans the plugin markers in the Gradle cache, which grows whenever a build
+	 * resolves a plugin.
+	 */
+	public void scanGradleCache(Path gradleUserHome) {
+		if (gradleUserHome == null) {
+			return;
+		}
+		PluginIndex localIndex = PluginIndex.scanGradleCache(gradleUserHome.toFile());
+		synchronized (this) {
+			this.localIndex = localIndex;
+			this.index = PluginIndex.merge(this.bundledIndex, this.localIndex, this.projectIndex);
+		}
+	}
+
+	public synchronized void setProjectPlugins(Collection<String> plugins) {
+		Map<String, List<String>> entries = new HashMap<>();
+		for (String plugin : plugins) {
+			entries.put(plugin, Collections.emptyList());
+		}
+		this.projectIndex = new PluginIndex(entries);
+		this.index = PluginIndex.merge(this.bundledIndex, this.localIndex, this.projectIndex);
+	}
+
+	public List<CompletionItem> getPluginCompletionItems(PluginItem plugin, Position position) {
+		Range range = new Range(plugin.getRange().getStart(), position);
+		String validText = LSPUtils.getStringBeforePosition(plugin.getText(), plugin.getRange(), position);
+		PluginIndex index = this.index;
+		if (plugin.isVersion()) {
+			return getVersionCompletions(index, plugin.getId(), validText, range);
+		}
+		return getIdCompletions(index, validText, range);
+	}
+
+	private List<CompletionItem> getIdCompletions(PluginIndex index, String text, Range range) {
+		List<String> ids = index.getIds(text);
+		List<CompletionItem> items = new ArrayList<>();
+		for (int i = 0; i < ids.size() && i < MAX_RESULTS; i++) {
+			String id = ids.get(i);
+			List<String> versions = index.getVersions(id);
+			CompletionItem completionItem = new CompletionItem();
+			completionItem.setTextEdit(Either.forLeft(new TextEdit(range, id)));
+			completionItem.setLabel(id);
+			completionItem.setKind(CompletionItemKind.Module);
+			completionItem.setDetail(versions.isEmpty() ? "Plugin ID" : "Plugin ID, latest: " + versions.get(0));
+			completionItem.setSortText(sequence + String.format("%08d", i));
+			completionItem.setCommand(getCommand(CompletionKinds.PLUGIN_ID, id));
+			items.add(completionItem);
+		}
+		return items;
+	}
+
+	private List<CompletionItem> getVersionCompletions(PluginIndex index, String id, String text, Range range) {
+		List<CompletionItem> items = new ArrayList<>();
+		for (String version : index.getVersions(id)) {
+			if (!version.startsWith(text)) {
+				continue;
+			}
+			CompletionItem completionItem = new CompletionItem();
+			completionItem.setTextEdit(Either.forLeft(new TextEdit(range, version)));
+			completionItem.setLabel(version);
+			completionItem.setKind(CompletionItemKind.Constant);
+			completionItem.setDetail("Version of " + id);
+			// the newest version first
+			completionItem.setSortText(sequence + String.format("%08d", items.size()));
+			completionItem.setCommand(getCommand(CompletionKinds.PLUGIN_VERSION, id + ":" + version));
+			items.add(completionItem);
+		}
+		return items;
+	}
+
+	private static Command getCommand(CompletionKinds kind, String content) {
+		List<Object> arguments = new ArrayList<>();
+		arguments.add(kind.toString());
+		arguments.add(content);
+		return new Command(CompletionUtils.completionTitle, CompletionUtils.completionCommand, arguments);
+	}
+}
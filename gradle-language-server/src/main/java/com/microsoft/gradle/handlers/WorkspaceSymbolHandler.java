@@ -0,0 +1,78 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.handlers;
+
+import com.microsoft.gradle.manager.WorkspaceIndex.FileSummary;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.eclipse.lsp4j.SymbolInformation;
+
+public class WorkspaceSymbolHandler {
+	private static final int MAX_RESULTS = 500;
+
+	private static class Match {
+		private final SymbolInformation symbol;
+		private final int score;
+
+		private Match(SymbolInformation symbol, int score) {
+			this.symbol = symbol;
+			this.score = score;
+		}
+	}
+
+	public List<SymbolInformation> getWorkspaceSymbols(Map<String, FileSummary> summaries, String query) {
+		String lowerQuery = (query == null) ? "" : query.toLowerCase(Locale.ROOT);
+		List<Match> matches = new ArrayList<>();
+		for (Map.Entry<String, FileSummary> entry : summaries.entrySet()) {
+			String uri = Paths.get(entry.getKey()).toUri().toString();
+			for (SymbolInformation symbol : entry.getValue().getWorkspaceSymbols(uri)) {
+				int score = getScore(symbol, lowerQuery);
+				if (score > 0) {
+					matches.add(new Match(symbol, score));
+				}
+			}
+		}
+		matches.sort(Comparator.comparingInt((Match match) -> -match.score)
+				.thenComparingInt(match -> match.symbol.getName().length()));
+		List<SymbolInformation> results = new ArrayList<>();
+		for (int i = 0; i < matches.size() && i < MAX_RESULTS; i++) {
+			results.add(matches.get(i).symbol);
+		}
+		return results;
+	}
+
+	private static int getScore(SymbolInformation symbol, String query) {
+		if (query.isEmpty()) {
+			return 1;
+		}
+		int score = getScore(symbol.getName().toLowerCase(Locale.ROOT), query);
+		if (score == 0 && symbol.getContainerName() != null) {
+			// e.g. "testImpl" finds the dependencies of that configuration
+			score = Math.min(1, getScore(symbol.getContainerName().toLowerCase(Locale.ROOT), query));
+		}
+		return score;
+	}
+
+	private static int getScore(String text, String query) {
+		if (text.startsWith(query)) {
+			return 4;
+		}
+		if (text.contains(query)) {
+			return 3;
+		}
+		// fuzzy: the query characters appear in order, e.g. "sbst" in
+		// "spring-boot-starter"
+		int index = 0;
+		for (int i = 0; i < text.length() && index < query.length(); i++) {
+			if (text.charAt(i) == query.charAt(index)) {
+				index++;
+			}
+		}
+		return index == query.length() ? 2 : 0;
+	}
+}
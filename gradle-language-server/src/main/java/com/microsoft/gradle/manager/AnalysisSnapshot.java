@@ -0,0 +1,43 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.manager;
+
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.lsp4j.DocumentSymbol;
+
+/**
+ * The analysis results of a build script which can be served before the script
+ * is compiled, e.g. right after the language server starts.
+ */
+public class AnalysisSnapshot {
+	private List<Integer> semanticTokens;
+	private List<DocumentSymbol> documentSymbols;
+	private List<DocumentSymbol> dependencies;
+	private List<String> plugins;
+
+	public AnalysisSnapshot(List<Integer> semanticTokens, List<DocumentSymbol> documentSymbols,
+			List<DocumentSymbol> dependencies, List<String> plugins) {
+		this.semanticTokens = semanticTokens;
+		this.documentSymbols = documentSymbols;
+		this.dependencies = dependencies;
+		this.plugins = plugins;
+	}
+
+	public List<Integer> getSemanticTokens() {
+		return this.semanticTokens == null ? Collections.emptyList() : this.semanticTokens;
+	}
+
+	public List<DocumentSymbol> getDocumentSymbols() {
+		return this.documentSymbols == null ? Collections.emptyList() : this.documentSymbols;
+	}
+
+	public List<DocumentSymbol> getDependencies() {
+		return this.dependencies == null ? Collections.emptyList() : this.dependencies;
+	}
+
+	public List<String> getPlugins() {
+		return this.plugins == null ? Collections.emptyList() : this.plugins;
+	}
+}
@@ -0,0 +1,202 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.manager;
+
+import com.microsoft.gradle.compile.GradleCompilationUnit;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.control.SourceUnit;
+
+/**
+ * Compiles the build scripts a user is likely to open next, e.g. the root
+ * script, the settings script and the other included projects, on a low
+ * priority background thread.
+ *
+ * The related scripts are found from the include list of the settings script
+ * and from the sibling project folders, within the build or the workspace.
+ */
+public class BuildFilePrefetcher {
+
+	private static final String BUILD_FILE = "build.gradle";
+	private static final String SETTINGS_FILE = "settings.gradle";
+	private static final int MAX_RELATED_FILES = 16;
+
+	private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "gradle-prefetch");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	// the scripts queued for prefetching
+	private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+	private volatile List<Path> workspaceFolders = Collections.emptyList();
+
+	/**
+	 * Sets the folders the sibling projects of a build without settings script are
+	 * looked up in.
+	 */
+	public void setWorkspaceFolders(List<Path> workspaceFolders) {
+		List<Path> folders = new ArrayList<>();
+		for (Path folder : workspaceFolders) {
+			folders.add(folder.toAbsolutePath().normalize());
+		}
+		this.workspaceFolders = folders;
+	}
+
+	/**
+	 * Queues the scripts related to the given one.
+	 *
+	 * @param prefetch
+	 *            compiles a related script given its path and content, called on
+	 *            the prefetch thread
+	 */
+	public void prefetchRelatedFiles(Path file, BiConsumer<Path, String> prefetch) {
+		CompletableFuture.runAsync(() -> {
+			for (Path related : getRelatedFiles(file, this.workspaceFolders)) {
+				if (this.pending.add(related)) {
+					this.prefetchExecutor.execute(() -> {
+						this.pending.remove(related);
+						try {
+							prefetch.accept(related, new String(Files.readAllBytes(related), StandardCharsets.UTF_8));
+						} catch (IOException e) {
+							// the script will be compiled when it's opened
+						}
+					});
+				}
+			}
+		}, this.prefetchExecutor);
+	}
+
+	/**
+	 * @return a future completed when the scripts queued so far are prefetched
+	 */
+	public CompletableFuture<Void> flush() {
+		return CompletableFuture.runAsync(() -> {
+		}, this.prefetchExecutor).thenRunAsync(() -> {
+		}, this.prefetchExecutor);
+	}
+
+	/**
+	 * @param workspaceFolders
+	 *            the normalized folders the sibling projects of a build without
+	 *            settings script may be in
+	 * @return the existing scripts related to the given one, the most likely to be
+	 *         opened next first
+	 */
+	public static List<Path> getRelatedFiles(Path file, List<Path> workspaceFolders) {
+		Path folder = file.toAbsolutePath().normalize().getParent();
+		Path root = findRootFolder(folder);
+		Set<Path> related = new LinkedHashSet<>();
+		related.add(root.resolve(BUILD_FILE));
+		Path settings = root.resolve(SETTINGS_FILE);
+		related.add(settings);
+		for (Path project : getIncludedProjects(settings)) {
+			related.add(project.resolve(BUILD_FILE));
+		}
+		// sibling projects which aren't included, e.g. in a workspace without
+		// settings script, never outside of the build or the workspace
+		Path parent = folder.getParent();
+		boolean inScope = (parent != null) && (Files.isRegularFile(settings)
+				? parent.startsWith(root)
+				: workspaceFolders.stream().anyMatch(parent::startsWith));
+		File[] siblings = inScope ? parent.toFile().listFiles(File::isDirectory) : null;
+		if (siblings != null) {
+			for (File sibling : siblings) {
+				related.add(sibling.toPath().resolve(BUILD_FILE));
+			}
+		}
+		List<Path> files = new ArrayList<>();
+		for (Path candidate : related) {
+			Path normalized = candidate.normalize();
+			if (files.size() < MAX_RELATED_FILES && !normalized.equals(file.toAbsolutePath().normalize())
+					&& Files.isRegularFile(normalized)) {
+				files.add(normalized);
+			}
+		}
+		return files;
+	}
+
+	private static Path findRootFolder(Path folder) {
+		for (Path current = folder; current != null; current = current.getParent()) {
+			if (Files.isRegularFile(current.resolve(SETTINGS_FILE))) {
+				return current;
+			}
+		}
+		return folder;
+	}
+
+	/**
+	 * @return the folders of the projects included by the settings script, with the
+	 *         default project layout
+	 */
+	static List<Path> getIncludedProjects(Path settings) {
+		List<Path> projects = new ArrayList<>();
+		if (!Files.isRegularFile(settings)) {
+			return projects;
+		}
+		String content;
+		try {
+			content = new String(Files.readAllBytes(settings), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return projects;
+		}
+		Path root = settings.getParent();
+		GradleCompilationUnit unit = WorkspaceIndex.parse(settings.toUri(), content);
+		unit.iterator().forEachRemaining((SourceUnit sourceUnit) -> {
+			ModuleNode moduleNode = sourceUnit.getAST();
+			if (moduleNode == null) {
+				return;
+			}
+			moduleNode.getStatementBlock().visit(new CodeVisitorSupport() {
+				@Override
+				public void visitMethodCallExpression(MethodCallExpression call) {
+					String method = call.getMethodAsString();
+					if (("include".equals(method) || "includeFlat".equals(method))
+							&& call.getArguments() instanceof ArgumentListExpression) {
+						for (Expression argument : ((ArgumentListExpression) call.getArguments()).getExpressions()) {
+							if (argument instanceof ConstantExpression
+									&& ((ConstantExpression) argument).getValue() instanceof String) {
+								String projectPath = (String) ((ConstantExpression) argument).getValue();
+								projects.add("include".equals(method)
+										? getProjectFolder(root, projectPath)
+										: root.resolveSibling(projectPath));
+							}
+						}
+					}
+					super.visitMethodCallExpression(call);
+				}
+			});
+		});
+		return projects;
+	}
+
+	private static Path getProjectFolder(Path root, String projectPath) {
+		Path folder = root;
+		for (String segment : projectPath.split(":")) {
+			if (!segment.isEmpty()) {
+				folder = folder.resolve(segment);
+			}
+		}
+		return folder;
+	}
+}
@@ -3,71 +3,248 @@
 
 package com.microsoft.gradle.manager;
 
+import com.microsoft.gradle.compile.CompileWatchdog;
 import com.microsoft.gradle.compile.GradleCompilationUnit;
-import com.microsoft.gradle.compile.GradleDefaultImport;
+import com.microsoft.gradle.resolver.ClassNameIndex;
 import com.microsoft.gradle.utils.Utils;
-import groovy.lang.GroovyClassLoader;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import org.codehaus.groovy.control.CompilerConfiguration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.Phases;
 import org.codehaus.groovy.control.SourceUnit;
-import org.codehaus.groovy.control.customizers.ImportCustomizer;
 import org.codehaus.groovy.control.io.StringReaderSource;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 
 public class GradleFilesManager {
-	private Map<URI, String> openFiles = new HashMap<>();
-	private Map<URI, GradleCompilationUnit> unitStorage = new HashMap<>();
-	private Map<String, CompilerConfiguration> configs = new HashMap<>();
+	private static final long DEFAULT_GRACE_PERIOD = 30000;
+	private static final int MAX_COMPILED_UNITS = 64;
+	private static final long DEFAULT_PREFETCH_BUDGET = 64;
+	// the size of a prefetched unit is estimated from its script when the JVM
+	// doesn't measure allocations
+	private static final long ESTIMATED_BYTES_PER_CHAR = 256;
+
+	private Map<URI, String> openFiles = new ConcurrentHashMap<>();
+	private Map<URI, GradleCompilationUnit> unitStorage = new ConcurrentHashMap<>();
+	private Map<URI, Integer> unitVersions = new ConcurrentHashMap<>();
+	// <contentKey, unit>, documents with the same content and classpath share the
+	// compiled unit, e.g. identical subproject scripts or an undone edit
+	private Map<String, GradleCompilationUnit> compiledUnits = Collections
+			.synchronizedMap(new LinkedHashMap<String, GradleCompilationUnit>(MAX_COMPILED_UNITS, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, GradleCompilationUnit> eldest) {
+					return size() > MAX_COMPILED_UNITS;
+				}
+			});
+	// <projectPath, context>, guarded by this
+	private Map<String, ProjectContext> contexts = new HashMap<>();
+	// the synced script classpaths outlive the project contexts, so a reopened
+	// project doesn't lose its classpath until the next sync
 	private Map<String, List<String>> scriptClasspaths = new HashMap<>();
+	private Map<String, String> scriptClasspathFingerprints = new HashMap<>();
+	// <contentKey, unit> of the scripts compiled ahead of being opened, the oldest
+	// first, guarded by this
+	private LinkedHashMap<String, GradleCompilationUnit> prefetchedUnits = new LinkedHashMap<>();
+	private Map<String, Long> prefetchedSizes = new HashMap<>();
+	private long prefetchedBytes;
+	private long prefetchBudget = DEFAULT_PREFETCH_BUDGET * 1024 * 1024;
 	private List<String> gradleLibraries = new ArrayList<>();
+	private ClassNameIndex classNameIndex = new ClassNameIndex();
+	private long gracePeriod = DEFAULT_GRACE_PERIOD;
+	private ScheduledExecutorService disposalExecutor;
 
-	private CompilerConfiguration createCompilerConfiguration() {
-		CompilerConfiguration config = new CompilerConfiguration();
-		ImportCustomizer customizer = new ImportCustomizer();
-		customizer.addStarImports(GradleDefaultImport.defaultStarImports
-				.toArray(new String[GradleDefaultImport.defaultStarImports.size()]));
-		config.addCompilationCustomizers(customizer);
-		return config;
+	/**
+	 * @return whether the script classpath of the project changed, i.e. whether its
+	 *         open documents need to be recompiled
+	 */
+	public boolean setScriptClasspaths(String projectPath, List<String> scriptClasspaths) {
+		return !setScriptClasspaths(Collections.singletonMap(projectPath, scriptClasspaths)).isEmpty();
 	}
 
-	public void setScriptClasspaths(String projectPath, List<String> scriptClasspaths) {
-		this.scriptClasspaths.put(projectPath, scriptClasspaths);
-		this.createOrUpdateConfig(projectPath);
+	/**
+	 * Sets the script classpaths of several projects at once.
+	 *
+	 * @return the projects whose script classpath changed
+	 */
+	public synchronized Set<String> setScriptClasspaths(Map<String, List<String>> scriptClasspaths) {
+		Set<String> changed = new LinkedHashSet<>();
+		scriptClasspaths.forEach((projectPath, classpaths) -> {
+			String fingerprint = Utils.getClasspathFingerprint(classpaths);
+			if (fingerprint.equals(this.scriptClasspathFingerprints.get(projectPath))) {
+				return;
+			}
+			this.scriptClasspathFingerprints.put(projectPath, fingerprint);
+			this.scriptClasspaths.put(projectPath, classpaths);
+			ProjectContext context = this.contexts.get(projectPath);
+			if (context != null) {
+				updateClasspath(context);
+			}
+			changed.add(projectPath);
+		});
+		return changed;
 	}
 
-	public void setGradleLibraries(List<String> gradleLibraries) {
+	public synchronized void setGradleLibraries(List<String> gradleLibraries) {
 		this.gradleLibraries = gradleLibraries;
-		for (String projectPath : this.configs.keySet()) {
-			this.createOrUpdateConfig(projectPath);
+		for (ProjectContext context : this.contexts.values()) {
+			updateClasspath(context);
 		}
 	}
 
-	private CompilerConfiguration createOrUpdateConfig(String projectPath) {
+	/**
+	 * Sets how long (in milliseconds) the context of a project is kept after its
+	 * last open document closes. A non-positive value disposes it immediately.
+	 */
+	public synchronized void setGracePeriod(long gracePeriod) {
+		this.gracePeriod = gracePeriod;
+	}
+
+	/**
+	 * Sets how much memory (in megabytes) the prefetched units may hold. A
+	 * non-positive value disables prefetching.
+	 */
+	public synchronized void setPrefetchBudget(long prefetchBudget) {
+		this.prefetchBudget = Math.max(0, prefetchBudget) * 1024 * 1024;
+		evictPrefetchedUnits();
+	}
+
+	public synchronized boolean isPrefetchEnabled() {
+		return this.prefetchBudget > 0;
+	}
+
+	/**
+	 * Compiles a script which isn't open yet, so opening it later reuses the
+	 * compiled unit. The unit is kept as long as the prefetch budget allows.
+	 *
+	 * @return the compiled unit, or null if the script is already compiled or
+	 *         doesn't fit in the budget
+	 */
+	public GradleCompilationUnit prefetch(URI uri, String content, CompileWatchdog watchdog) {
+		ProjectContext context = getContext(Utils.getFolderPath(uri));
+		String contentKey = Utils.getContentHash(content) + ":" + context.getFingerprint();
+		synchronized (this) {
+			if (!isPrefetchEnabled() || this.compiledUnits.containsKey(contentKey)
+					|| this.prefetchedUnits.containsKey(contentKey)) {
+				return null;
+			}
+		}
+		GradleCompilationUnit unit = context.createCompilationUnit(contentKey);
+		unit.addSource(new SourceUnit(uri.toString(), new StringReaderSource(content, unit.getConfiguration()),
+				unit.getConfiguration(), unit.getClassLoader(), unit.getErrorCollector()));
+		// the allocated bytes overestimate what the unit retains, which keeps the
+		// prefetched units within their budget
+		long allocatedBytes = CompileWatchdog.getAllocatedBytes();
+		try {
+			unit.compileOnce(Phases.CANONICALIZATION, watchdog);
+		} catch (CompilationFailedException e) {
+			// a partially compiled script still has useful results
+		}
+		long size = (allocatedBytes < 0)
+				? content.length() * ESTIMATED_BYTES_PER_CHAR
+				: CompileWatchdog.getAllocatedBytes() - allocatedBytes;
+		synchronized (this) {
+			if (size > this.prefetchBudget || isOverBudget(unit)) {
+				return null;
+			}
+			this.prefetchedUnits.put(contentKey, unit);
+			this.prefetchedSizes.put(contentKey, size);
+			this.prefetchedBytes += size;
+			evictPrefetchedUnits();
+		}
+		return unit;
+	}
+
+	private synchronized GradleCompilationUnit takePrefetchedUnit(String contentKey) {
+		GradleCompilationUnit unit = this.prefetchedUnits.remove(contentKey);
+		if (unit != null) {
+			this.prefetchedBytes -= this.prefetchedSizes.remove(contentKey);
+		}
+		return unit;
+	}
+
+	private void evictPrefetchedUnits() {
+		Iterator<Map.Entry<String, GradleCompilationUnit>> iterator = this.prefetchedUnits.entrySet().iterator();
+		while (this.prefetchedBytes > this.prefetchBudget && iterator.hasNext()) {
+			String contentKey = iterator.next().getKey();
+			iterator.remove();
+			this.prefetchedBytes -= this.prefetchedSizes.remove(contentKey);
+		}
+	}
+
+	private void updateClasspath(ProjectContext context) {
 		List<String> classpathList = new ArrayList<>();
-		List<String> classpaths = this.scriptClasspaths.get(projectPath);
+		List<String> classpaths = this.scriptClasspaths.get(context.getProjectPath());
 		if (classpaths != null) {
 			classpathList.addAll(classpaths);
 		}
 		classpathList.addAll(this.gradleLibraries);
-		if (this.configs.containsKey(projectPath)) {
-			CompilerConfiguration config = this.configs.get(projectPath);
-			config.setClasspathList(classpathList);
-			return config;
-		} else {
-			CompilerConfiguration config = createCompilerConfiguration();
-			config.setClasspathList(classpathList);
-			this.configs.put(projectPath, config);
-			return config;
+		context.setClasspath(classpathList, this.classNameIndex);
+	}
+
+	private ProjectContext createContext(String projectPath) {
+		ProjectContext context = new ProjectContext(projectPath);
+		updateClasspath(context);
+		return context;
+	}
+
+	/**
+	 * @return the context of the project, or a transient one if none of its
+	 *         documents is open
+	 */
+	public synchronized ProjectContext getContext(String projectPath) {
+		ProjectContext context = this.contexts.get(projectPath);
+		return context != null ? context : createContext(projectPath);
+	}
+
+	private synchronized void acquireContext(String projectPath) {
+		this.contexts.computeIfAbsent(projectPath, this::createContext).acquire();
+	}
+
+	private synchronized void releaseContext(String projectPath) {
+		ProjectContext context = this.contexts.get(projectPath);
+		if (context == null || context.release() > 0) {
+			return;
 		}
+		if (this.gracePeriod <= 0) {
+			this.contexts.remove(projectPath);
+			return;
+		}
+		if (this.disposalExecutor == null) {
+			this.disposalExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "gradle-context-disposal");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		context.setPendingDisposal(this.disposalExecutor.schedule(() -> {
+			synchronized (this) {
+				if (context.getReferences() == 0 && this.contexts.get(projectPath) == context) {
+					this.contexts.remove(projectPath);
+				}
+			}
+		}, this.gracePeriod, TimeUnit.MILLISECONDS));
+	}
+
+	public ClassNameIndex getClassNameIndex() {
+		return this.classNameIndex;
 	}
 
 	public Map<URI, GradleCompilationUnit> getUnitStorage() {
@@ -75,7 +252,9 @@ public class GradleFilesManager {
 	}
 
 	public void didOpen(URI uri, String content) {
-		openFiles.put(uri, content);
+		if (openFiles.put(uri, content) == null) {
+			acquireContext(Utils.getFolderPath(uri));
+		}
 	}
 
 	public void didChange(URI uri, TextDocumentContentChangeEvent change) {
@@ -94,12 +273,12 @@ public class GradleFilesManager {
 		}
 	}
 
-	public void didClose(URI uri) {
-		openFiles.remove(uri);
+	public synchronized void didClose(URI uri) {
 		this.unitStorage.remove(uri);
-		String projectPath = Utils.getFolderPath(uri);
-		this.configs.remove(projectPath);
-		this.scriptClasspaths.remove(projectPath);
+		this.unitVersions.remove(uri);
+		if (openFiles.remove(uri) != null) {
+			releaseContext(Utils.getFolderPath(uri));
+		}
 	}
 
 	public String getContents(URI uri) {
@@ -139,23 +318,76 @@ public class GradleFilesManager {
 	}
 
 	public GradleCompilationUnit getCompilationUnit(URI uri, Integer version, boolean forceRecompile) {
-		if (!forceRecompile && this.unitStorage.containsKey(uri)
-				&& this.unitStorage.get(uri).getVersion().equals(version)) {
+		if (!forceRecompile && this.unitStorage.containsKey(uri) && version.equals(this.unitVersions.get(uri))) {
 			return this.unitStorage.get(uri);
 		}
-		String projectPath = Utils.getFolderPath(uri);
-		CompilerConfiguration config = createOrUpdateConfig(projectPath);
-		GroovyClassLoader classLoader = new GroovyClassLoader(ClassLoader.getSystemClassLoader().getParent(), config,
-				true);
-		GradleCompilationUnit unit = new GradleCompilationUnit(config, null, classLoader, version);
-		SourceUnit sourceUnit = new SourceUnit(uri.toString(),
-				new StringReaderSource(getContents(uri), unit.getConfiguration()), unit.getConfiguration(),
-				unit.getClassLoader(), unit.getErrorCollector());
-		unit.addSource(sourceUnit);
-		this.unitStorage.put(uri, unit);
+		String content = getContents(uri);
+		if (content == null) {
+			// closed meanwhile
+			return null;
+		}
+		ProjectContext context = getContext(Utils.getFolderPath(uri));
+		String contentKey = Utils.getContentHash(content) + ":" + context.getFingerprint();
+		GradleCompilationUnit unit = forceRecompile ? null : this.compiledUnits.get(contentKey);
+		if (isOverBudget(unit)) {
+			// a unit stopped by its budget is compiled again, the next attempt may fit,
+			// e.g. once the JVM is warmed up
+			this.compiledUnits.remove(contentKey, unit);
+			unit = null;
+		}
+		if (unit == null && !forceRecompile) {
+			unit = takePrefetchedUnit(contentKey);
+			if (unit != null) {
+				this.compiledUnits.put(contentKey, unit);
+			}
+		}
+		if (unit == null) {
+			unit = context.createCompilationUnit(contentKey);
+			SourceUnit sourceUnit = new SourceUnit(uri.toString(),
+					new StringReaderSource(content, unit.getConfiguration()), unit.getConfiguration(),
+					unit.getClassLoader(), unit.getErrorCollector());
+			unit.addSource(sourceUnit);
+			this.compiledUnits.put(contentKey, unit);
+		}
+		synchronized (this) {
+			if (!this.openFiles.containsKey(uri)) {
+				// closed while compiling, its state is already disposed
+				return null;
+			}
+			Integer current = this.unitVersions.get(uri);
+			if (!forceRecompile && current != null && current > version) {
+				// a background compilation of an older version finished late
+				return this.unitStorage.get(uri);
+			}
+			this.unitStorage.put(uri, unit);
+			this.unitVersions.put(uri, version);
+		}
 		return unit;
 	}
 
+	private static boolean isOverBudget(GradleCompilationUnit unit) {
+		return unit != null && unit.getExceededBudget() != null;
+	}
+
+	public GradleCompilationUnit recompile(URI uri) {
+		Integer version = this.unitVersions.get(uri);
+		if (version == null) {
+			return null;
+		}
+		return getCompilationUnit(uri, version, /** forceRecompile */
+				true);
+	}
+
+	public List<URI> getOpenDocuments(String projectPath) {
+		List<URI> documents = new ArrayList<>();
+		for (URI uri : this.unitStorage.keySet()) {
+			if (projectPath.equals(Utils.getFolderPath(uri))) {
+				documents.add(uri);
+			}
+		}
+		return documents;
+	}
+
 	public GradleCompilationUnit getCompilationUnit(URI uri) {
 		// if there is no version info provided, we return the newest version
 		// when the previous cu exists, otherwise return null
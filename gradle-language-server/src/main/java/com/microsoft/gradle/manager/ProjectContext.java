@@ -0,0 +1,110 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.manager;
+
+import com.microsoft.gradle.compile.GradleCompilationUnit;
+import com.microsoft.gradle.compile.GradleDefaultImport;
+import com.microsoft.gradle.compile.IndexedClassNodeResolver;
+import com.microsoft.gradle.resolver.ClassNameIndex;
+import com.microsoft.gradle.resolver.ClassNameIndex.ClassLookup;
+import com.microsoft.gradle.utils.Utils;
+import groovy.lang.GroovyClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+
+/**
+ * The compilation state shared by all open documents of a project folder: the
+ * compiler configuration, the resolved classpath and its class lookup.
+ *
+ * The context is reference counted by the open documents of the project and is
+ * only disposed by {@link GradleFilesManager} after the last of them closes.
+ */
+public class ProjectContext {
+
+	private final String projectPath;
+	private final CompilerConfiguration config;
+	private List<String> classpath = Collections.emptyList();
+	private String fingerprint = "";
+	private ClassLookup classLookup = ClassLookup.EMPTY;
+	private int references;
+	private ScheduledFuture<?> pendingDisposal;
+
+	public ProjectContext(String projectPath) {
+		this.projectPath = projectPath;
+		this.config = new CompilerConfiguration();
+		ImportCustomizer customizer = new ImportCustomizer();
+		customizer.addStarImports(GradleDefaultImport.defaultStarImports
+				.toArray(new String[GradleDefaultImport.defaultStarImports.size()]));
+		this.config.addCompilationCustomizers(customizer);
+	}
+
+	public String getProjectPath() {
+		return this.projectPath;
+	}
+
+	public synchronized List<String> getClasspath() {
+		return this.classpath;
+	}
+
+	/**
+	 * @return a fingerprint of the resolved classpath, which changes whenever the
+	 *         result of a compilation in this context may change
+	 */
+	public synchronized String getFingerprint() {
+		return this.fingerprint;
+	}
+
+	synchronized void setClasspath(List<String> classpath, ClassNameIndex classNameIndex) {
+		// jars are resolved through the class name index, only the remaining entries
+		// (e.g. class folders) are left to the class loader
+		List<String> jars = new ArrayList<>();
+		List<String> others = new ArrayList<>();
+		for (String entry : classpath) {
+			if (entry.endsWith(".jar")) {
+				jars.add(entry);
+			} else {
+				others.add(entry);
+			}
+		}
+		this.classLookup = classNameIndex.getLookup(jars);
+		this.config.setClasspathList(others);
+		this.classpath = Collections.unmodifiableList(new ArrayList<>(classpath));
+		this.fingerprint = Utils.getClasspathFingerprint(classpath);
+	}
+
+	public synchronized GradleCompilationUnit createCompilationUnit(String contentKey) {
+		GroovyClassLoader classLoader = new GroovyClassLoader(ClassLoader.getSystemClassLoader().getParent(),
+				this.config, true);
+		GradleCompilationUnit unit = new GradleCompilationUnit(this.config, null, classLoader, contentKey);
+		unit.setClassNodeResolver(new IndexedClassNodeResolver(this.classLookup));
+		return unit;
+	}
+
+	int getReferences() {
+		return this.references;
+	}
+
+	void acquire() {
+		this.references++;
+		if (this.pendingDisposal != null) {
+			this.pendingDisposal.cancel(false);
+			this.pendingDisposal = null;
+		}
+	}
+
+	int release() {
+		if (this.references > 0) {
+			this.references--;
+		}
+		return this.references;
+	}
+
+	void setPendingDisposal(ScheduledFuture<?> pendingDisposal) {
+		this.pendingDisposal = pendingDisposal;
+	}
+}
@@ -0,0 +1,303 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Schedules the work of the language server by priority, so a recompile
+ * triggered by a sync doesn't delay an interactive request.
+ *
+ * Interactive requests run on the calling thread and are never queued. While
+ * one of them is running, no background task is started. The other tasks are
+ * queued by priority and run by a fixed pool of workers, the highest priority
+ * first. A background task waiting longer than the starvation threshold is
+ * promoted to the analysis priority, running ahead of the analysis tasks queued
+ * after it, but it is still held back by interactive requests and the limit of
+ * concurrent background tasks. Running tasks are never interrupted, except by
+ * {@link #close()}.
+ */
+public class RequestScheduler {
+
+	public enum Priority {
+		// e.g. completion, run on the calling thread
+		INTERACTIVE,
+		// e.g. the analysis of an opened document or pulled diagnostics
+		ANALYSIS,
+		// e.g. recompiles after a sync, snapshots, indexing and prefetching
+		BACKGROUND
+	}
+
+	public static final long DEFAULT_STARVATION_THRESHOLD = 2000;
+
+	public static class Metrics {
+		private int queued;
+		private int maxQueued;
+		private int running;
+		private long completed;
+		private long totalWaitNanos;
+
+		private Metrics() {
+		}
+
+		private Metrics(Metrics metrics) {
+			this.queued = metrics.queued;
+			this.maxQueued = metrics.maxQueued;
+			this.running = metrics.running;
+			this.completed = metrics.completed;
+			this.totalWaitNanos = metrics.totalWaitNanos;
+		}
+
+		public int getQueued() {
+			return this.queued;
+		}
+
+		public int getMaxQueued() {
+			return this.maxQueued;
+		}
+
+		public int getRunning() {
+			return this.running;
+		}
+
+		public long getCompleted() {
+			return this.completed;
+		}
+
+		/**
+		 * @return the average time (in milliseconds) the tasks waited in the queue
+		 *         before running
+		 */
+		public long getAverageWait() {
+			long started = this.completed + this.running;
+			return started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(this.totalWaitNanos / started);
+		}
+
+		@Override
+		public String toString() {
+			return "queued=" + this.queued + ", maxQueued=" + this.maxQueued + ", running=" + this.running
+					+ ", completed=" + this.completed + ", averageWait=" + getAverageWait() + "ms";
+		}
+	}
+
+	private static class Task {
+		private final Priority priority;
+		private final Runnable runnable;
+		private final long queuedAt = System.nanoTime();
+
+		private Task(Priority priority, Runnable runnable) {
+			this.priority = priority;
+			this.runnable = runnable;
+		}
+	}
+
+	// all fields are guarded by this
+	private final Map<Priority, Deque<Task>> queues = new EnumMap<>(Priority.class);
+	private final Map<Priority, Metrics> metrics = new EnumMap<>(Priority.class);
+	private final int backgroundLimit;
+	private final List<Thread> workers = new ArrayList<>();
+	private long starvationThreshold = DEFAULT_STARVATION_THRESHOLD;
+	private boolean closed;
+
+	/**
+	 * @param threads
+	 *            the number of workers, all but one of them may run background
+	 *            tasks at the same time
+	 */
+	public RequestScheduler(int threads, String name) {
+		for (Priority priority : Priority.values()) {
+			this.queues.put(priority, new ArrayDeque<>());
+			this.metrics.put(priority, new Metrics());
+		}
+		this.backgroundLimit = Math.max(1, threads - 1);
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(this::work, name);
+			worker.setDaemon(true);
+			worker.start();
+			this.workers.add(worker);
+		}
+	}
+
+	/**
+	 * Stops the workers, interrupting the running tasks and dropping the queued
+	 * ones. Tasks submitted afterwards are rejected.
+	 */
+	public void close() {
+		synchronized (this) {
+			this.closed = true;
+			for (Deque<Task> queue : this.queues.values()) {
+				queue.clear();
+			}
+			notifyAll();
+		}
+		for (Thread worker : this.workers) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Sets how long (in milliseconds) a queued background task may be passed over
+	 * by analysis tasks before it is promoted.
+	 */
+	public synchronized void setStarvationThreshold(long starvationThreshold) {
+		this.starvationThreshold = starvationThreshold;
+		notifyAll();
+	}
+
+	/**
+	 * @return an executor queueing its tasks with the given priority
+	 */
+	public Executor executor(Priority priority) {
+		if (priority == Priority.INTERACTIVE) {
+			throw new IllegalArgumentException("Interactive requests run on the calling thread");
+		}
+		return runnable -> submit(priority, runnable);
+	}
+
+	private synchronized void submit(Priority priority, Runnable runnable) {
+		if (this.closed) {
+			throw new RejectedExecutionException("The scheduler is closed");
+		}
+		Deque<Task> queue = this.queues.get(priority);
+		queue.addLast(new Task(priority, runnable));
+		Metrics metrics = this.metrics.get(priority);
+		metrics.queued = queue.size();
+		metrics.maxQueued = Math.max(metrics.maxQueued, queue.size());
+		notifyAll();
+	}
+
+	/**
+	 * Runs an interactive request on the calling thread, holding back the
+	 * background tasks until it completes.
+	 */
+	public <T> T runInteractive(Supplier<T> request) {
+		Metrics metrics = this.metrics.get(Priority.INTERACTIVE);
+		synchronized (this) {
+			metrics.running++;
+		}
+		try {
+			return request.get();
+		} finally {
+			synchronized (this) {
+				metrics.running--;
+				metrics.completed++;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Blocks a thread outside of the pool, e.g. the indexing thread, while there
+	 * are interactive requests or queued tasks of a higher priority, at most for
+	 * the starvation threshold.
+	 */
+	public synchronized void yieldToInteractive() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.starvationThreshold);
+		try {
+			while (hasForegroundWork()) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					return;
+				}
+				wait(remaining);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean hasForegroundWork() {
+		return this.metrics.get(Priority.INTERACTIVE).running > 0 || !this.queues.get(Priority.ANALYSIS).isEmpty();
+	}
+
+	/**
+	 * @return a snapshot of the queue depths and counters of each priority
+	 */
+	public synchronized Map<Priority, Metrics> getMetrics() {
+		Map<Priority, Metrics> result = new LinkedHashMap<>();
+		this.metrics.forEach((priority, metrics) -> result.put(priority, new Metrics(metrics)));
+		return result;
+	}
+
+	private void work() {
+		while (true) {
+			Task task;
+			try {
+				task = take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				task.runnable.run();
+			} catch (RuntimeException e) {
+				// the task reports its own failures, e.g. through its future
+			} finally {
+				synchronized (this) {
+					Metrics metrics = this.metrics.get(task.priority);
+					metrics.running--;
+					metrics.completed++;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	private synchronized Task take() throws InterruptedException {
+		while (true) {
+			if (this.closed) {
+				throw new InterruptedException();
+			}
+			long now = System.nanoTime();
+			Task task = next(now);
+			if (task != null) {
+				Deque<Task> queue = this.queues.get(task.priority);
+				queue.removeFirst();
+				Metrics metrics = this.metrics.get(task.priority);
+				metrics.queued = queue.size();
+				metrics.running++;
+				metrics.totalWaitNanos += now - task.queuedAt;
+				return task;
+			}
+			Task background = this.queues.get(Priority.BACKGROUND).peekFirst();
+			if (background == null || isStarved(background, now)) {
+				// woken up by a submitted or completed task
+				wait();
+			} else {
+				// wake up when the held back background task starves
+				long starvesAt = background.queuedAt + TimeUnit.MILLISECONDS.toNanos(this.starvationThreshold);
+				wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(starvesAt - now)));
+			}
+		}
+	}
+
+	private Task next(long now) {
+		Task analysis = this.queues.get(Priority.ANALYSIS).peekFirst();
+		Task background = this.queues.get(Priority.BACKGROUND).peekFirst();
+		boolean canRunBackground = background != null && this.metrics.get(Priority.INTERACTIVE).running == 0
+				&& this.metrics.get(Priority.BACKGROUND).running < this.backgroundLimit;
+		if (canRunBackground && isStarved(background, now)
+				&& (analysis == null || background.queuedAt - analysis.queuedAt < 0)) {
+			// promoted to the analysis priority
+			return background;
+		}
+		if (analysis != null) {
+			return analysis;
+		}
+		return canRunBackground ? background : null;
+	}
+
+	private boolean isStarved(Task task, long now) {
+		return now - task.queuedAt > TimeUnit.MILLISECONDS.toNanos(this.starvationThreshold);
+	}
+}
@@ -0,0 +1,84 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.manager;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.microsoft.gradle.utils.Utils;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Persists analysis snapshots on disk, so reopened build scripts are
+ * highlighted and outlined immediately after a restart of the language server.
+ *
+ * Snapshots are keyed by the content hash of the script and the Gradle API
+ * version it was analyzed against.
+ */
+public class SnapshotCache {
+
+	// bump when the analysis results or their serialized form change
+	private static final String FORMAT_VERSION = "1";
+	private static final int MAX_SNAPSHOTS = 256;
+	private static final String SUFFIX = ".json";
+
+	private final Path directory;
+	private final Gson gson = new Gson();
+
+	public SnapshotCache(Path directory) {
+		this.directory = directory;
+	}
+
+	public static String getKey(String content, String gradleAPIVersion) {
+		return Utils.getContentHash(FORMAT_VERSION + ":" + gradleAPIVersion + ":" + Utils.getContentHash(content));
+	}
+
+	public AnalysisSnapshot get(String key) {
+		Path file = this.directory.resolve(key + SUFFIX);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return this.gson.fromJson(reader, AnalysisSnapshot.class);
+		} catch (IOException | JsonParseException e) {
+			return null;
+		}
+	}
+
+	public void put(String key, AnalysisSnapshot snapshot) {
+		try {
+			Files.createDirectories(this.directory);
+			// write to a temporary file first, so a concurrent reader never sees a partial
+			// snapshot
+			Path temp = Files.createTempFile(this.directory, key, ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				this.gson.toJson(snapshot, writer);
+			}
+			Files.move(temp, this.directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			prune();
+		} catch (IOException e) {
+			// the cache is only an optimization
+		}
+	}
+
+	private void prune() {
+		File[] files = this.directory.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files == null || files.length <= MAX_SNAPSHOTS) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length - MAX_SNAPSHOTS; i++) {
+			files[i].delete();
+		}
+	}
+}
@@ -0,0 +1,317 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.manager;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.microsoft.gradle.compile.CompletionVisitor;
+import com.microsoft.gradle.compile.DocumentSymbolVisitor;
+import com.microsoft.gradle.compile.GradleCompilationUnit;
+import groovy.lang.GroovyClassLoader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.io.StringReaderSource;
+import org.eclipse.lsp4j.DocumentSymbol;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.SymbolInformation;
+
+/**
+ * A persistent index of lightweight summaries of the build scripts in the
+ * workspace, including the ones which are not open in the editor.
+ *
+ * Scripts are only parsed, never resolved against a classpath, on a low
+ * priority background thread. A summary is valid as long as the size and the
+ * modification time of its file don't change.
+ */
+public class WorkspaceIndex {
+
+	public static final List<String> BUILD_FILES = Arrays.asList("build.gradle", "settings.gradle");
+	private static final Set<String> EXCLUDED_FOLDERS = new HashSet<>(
+			Arrays.asList(".git", ".gradle", ".idea", "build", "node_modules", "out"));
+
+	public static class FileSummary {
+		private long size;
+		private long lastModified;
+		private List<DocumentSymbol> documentSymbols;
+		private List<DocumentSymbol> dependencies;
+		private List<String> plugins;
+		// the flattened symbols for workspace symbol queries, computed on first use
+		private transient List<SymbolInformation> workspaceSymbols;
+
+		public FileSummary(long size, long lastModified, List<DocumentSymbol> documentSymbols,
+				List<DocumentSymbol> dependencies, List<String> plugins) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.documentSymbols = documentSymbols;
+			this.dependencies = dependencies;
+			this.plugins = plugins;
+		}
+
+		public List<DocumentSymbol> getDocumentSymbols() {
+			return this.documentSymbols == null ? Collections.emptyList() : this.documentSymbols;
+		}
+
+		public List<DocumentSymbol> getDependencies() {
+			return this.dependencies == null ? Collections.emptyList() : this.dependencies;
+		}
+
+		public List<String> getPlugins() {
+			return this.plugins == null ? Collections.emptyList() : this.plugins;
+		}
+
+		/**
+		 * @return the document symbols and their children as workspace symbols,
+		 *         dependencies are named by their coordinates
+		 */
+		public synchronized List<SymbolInformation> getWorkspaceSymbols(String uri) {
+			if (this.workspaceSymbols == null) {
+				List<SymbolInformation> symbols = new ArrayList<>();
+				addWorkspaceSymbols(symbols, uri, getDocumentSymbols(), null);
+				this.workspaceSymbols = Collections.unmodifiableList(symbols);
+			}
+			return this.workspaceSymbols;
+		}
+
+		private void addWorkspaceSymbols(List<SymbolInformation> symbols, String uri,
+				List<DocumentSymbol> documentSymbols, String containerName) {
+			for (DocumentSymbol symbol : documentSymbols) {
+				boolean isDependency = getDependencies().contains(symbol) && symbol.getDetail() != null;
+				String name = isDependency ? symbol.getDetail() : symbol.getName();
+				String container = isDependency ? symbol.getName() : containerName;
+				symbols.add(new SymbolInformation(name, symbol.getKind(), new Location(uri, symbol.getSelectionRange()),
+						container));
+				if (symbol.getChildren() != null) {
+					addWorkspaceSymbols(symbols, uri, symbol.getChildren(), symbol.getName());
+				}
+			}
+		}
+
+		private boolean isUpToDate(File file) {
+			return this.size == file.length() && this.lastModified == file.lastModified();
+		}
+	}
+
+	// <filePath, summary>
+	private final Map<String, FileSummary> summaries = new ConcurrentHashMap<>();
+	private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "gradle-workspace-index");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	private final Gson gson = new Gson();
+	// called before each script is indexed, e.g. to give way to interactive
+	// requests
+	private final Runnable throttle;
+	private Path indexFile;
+
+	public WorkspaceIndex() {
+		this(() -> {
+		});
+	}
+
+	public WorkspaceIndex(Runnable throttle) {
+		this.throttle = throttle;
+	}
+
+	/**
+	 * Loads the summaries persisted in the given file, and persists them there from
+	 * now on.
+	 */
+	public void load(Path indexFile) {
+		this.indexFile = indexFile;
+		if (!Files.isRegularFile(indexFile)) {
+			return;
+		}
+		Type type = new TypeToken<Map<String, FileSummary>>() {
+		}.getType();
+		try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+			Map<String, FileSummary> persisted = this.gson.fromJson(reader, type);
+			if (persisted != null) {
+				this.summaries.putAll(persisted);
+			}
+		} catch (IOException | JsonParseException e) {
+			// the index is rebuilt from scratch
+		}
+	}
+
+	/**
+	 * Discovers the build scripts under the given folders and indexes the ones
+	 * which changed since they were last indexed.
+	 */
+	public CompletableFuture<Void> indexWorkspace(List<Path> folders) {
+		return CompletableFuture.runAsync(() -> {
+			Set<String> found = new HashSet<>();
+			for (Path folder : folders) {
+				for (Path file : findBuildFiles(folder)) {
+					found.add(file.toString());
+					this.throttle.run();
+					getSummary(file);
+				}
+			}
+			// forget the scripts which were deleted while the server wasn't running
+			this.summaries.keySet().removeIf(path -> !found.contains(path)
+					&& folders.stream().anyMatch(folder -> Paths.get(path).startsWith(folder)));
+			save();
+		}, this.indexExecutor);
+	}
+
+	public CompletableFuture<Void> update(List<Path> changed, List<Path> deleted) {
+		return CompletableFuture.runAsync(() -> {
+			for (Path file : deleted) {
+				this.summaries.remove(file.toString());
+			}
+			for (Path file : changed) {
+				this.throttle.run();
+				getSummary(file);
+			}
+			save();
+		}, this.indexExecutor);
+	}
+
+	public static boolean isBuildFile(Path file) {
+		Path fileName = file.getFileName();
+		return fileName != null && BUILD_FILES.contains(fileName.toString());
+	}
+
+	/**
+	 * @return the summary of the given build script, which is indexed right away if
+	 *         it isn't up to date, or null if the script doesn't exist
+	 */
+	public FileSummary getSummary(Path file) {
+		File ioFile = file.toFile();
+		if (!ioFile.isFile()) {
+			this.summaries.remove(file.toString());
+			return null;
+		}
+		FileSummary summary = this.summaries.get(file.toString());
+		if (summary != null && summary.isUpToDate(ioFile)) {
+			return summary;
+		}
+		long size = ioFile.length();
+		long lastModified = ioFile.lastModified();
+		try {
+			String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			summary = summarize(file.toUri(), content, size, lastModified);
+		} catch (IOException e) {
+			return null;
+		}
+		this.summaries.put(file.toString(), summary);
+		return summary;
+	}
+
+	public Map<String, FileSummary> getSummaries() {
+		return Collections.unmodifiableMap(this.summaries);
+	}
+
+	private static FileSummary summarize(URI uri, String content, long size, long lastModified) {
+		GradleCompilationUnit unit = parse(uri, content);
+		DocumentSymbolVisitor symbolVisitor = new DocumentSymbolVisitor();
+		symbolVisitor.visitCompilationUnit(uri, unit);
+		CompletionVisitor pluginVisitor = new CompletionVisitor();
+		pluginVisitor.visitCompilationUnit(uri, unit);
+		Set<String> plugins = pluginVisitor.getPlugins(uri);
+		return new FileSummary(size, lastModified, symbolVisitor.getDocumentSymbols(uri),
+				symbolVisitor.getDependencies(uri), plugins == null ? null : new ArrayList<>(plugins));
+	}
+
+	/**
+	 * Parses the script without resolving it, which is enough to find its
+	 * structure, dependencies and plugins.
+	 */
+	public static GradleCompilationUnit parse(URI uri, String content) {
+		CompilerConfiguration config = new CompilerConfiguration();
+		GroovyClassLoader classLoader = new GroovyClassLoader(ClassLoader.getSystemClassLoader().getParent(), config,
+				true);
+		GradleCompilationUnit unit = new GradleCompilationUnit(config, null, classLoader, null);
+		unit.addSource(new SourceUnit(uri.toString(), new StringReaderSource(content, config), config, classLoader,
+				unit.getErrorCollector()));
+		try {
+			unit.compile(Phases.CONVERSION);
+		} catch (CompilationFailedException e) {
+			// a partially parsed script still has useful results
+		}
+		return unit;
+	}
+
+	private static List<Path> findBuildFiles(Path folder) {
+		List<Path> files = new ArrayList<>();
+		if (!Files.isDirectory(folder)) {
+			return files;
+		}
+		try {
+			Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					Path name = dir.getFileName();
+					if (name != null && EXCLUDED_FOLDERS.contains(name.toString())) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (isBuildFile(file)) {
+						files.add(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			// index what has been found so far
+		}
+		return files;
+	}
+
+	private void save() {
+		if (this.indexFile == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(this.indexFile.getParent());
+			Path temp = Files.createTempFile(this.indexFile.getParent(), "index", ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				this.gson.toJson(new HashMap<>(this.summaries), writer);
+			}
+			Files.move(temp, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the index is only an optimization
+		}
+	}
+}
@@ -0,0 +1,209 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.resolver;
+
+import com.microsoft.gradle.utils.Utils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+/**
+ * A workspace-level index from class names to the jar which contains them.
+ *
+ * Every jar is scanned once. The scan result is keyed by a digest of the jar
+ * entries (names, CRCs and sizes), so the same jar found at different locations
+ * is only stored once and is shared between all projects using it.
+ */
+public class ClassNameIndex {
+
+	private static final int MAX_LOOKUPS = 16;
+
+	public static class JarClasses {
+		private final File jar;
+		private final Set<String> classNames;
+
+		public JarClasses(File jar, Set<String> classNames) {
+			this.jar = jar;
+			this.classNames = classNames;
+		}
+
+		public File getJar() {
+			return this.jar;
+		}
+
+		public Set<String> getClassNames() {
+			return this.classNames;
+		}
+	}
+
+	public static class ClassLookup {
+		public static final ClassLookup EMPTY = new ClassLookup(Collections.emptyMap(), Collections.emptyMap());
+
+		// <className, jar>
+		private final Map<String, File> classes;
+		// <jarPath, stamp>, the jars as they were when the lookup was built
+		private final Map<String, JarStamp> stamps;
+
+		private ClassLookup(Map<String, File> classes, Map<String, JarStamp> stamps) {
+			this.classes = classes;
+			this.stamps = stamps;
+		}
+
+		public File getJar(String className) {
+			return this.classes.get(className);
+		}
+
+		public int size() {
+			return this.classes.size();
+		}
+	}
+
+	private static class JarStamp {
+		private final long size;
+		private final long lastModified;
+		private final String contentKey;
+
+		private JarStamp(long size, long lastModified, String contentKey) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.contentKey = contentKey;
+		}
+	}
+
+	// <jarPath, stamp>
+	private final Map<String, JarStamp> stamps = new ConcurrentHashMap<>();
+	// <contentKey, classes>
+	private final Map<String, JarClasses> contents = new ConcurrentHashMap<>();
+	// <classpath, lookup>, projects sharing the same classpath share the lookup
+	private final Map<List<String>, ClassLookup> lookups = Collections
+			.synchronizedMap(new LinkedHashMap<List<String>, ClassLookup>(MAX_LOOKUPS, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<List<String>, ClassLookup> eldest) {
+					return size() > MAX_LOOKUPS;
+				}
+			});
+
+	public ClassLookup getLookup(List<String> classpath) {
+		if (classpath == null || classpath.isEmpty()) {
+			return ClassLookup.EMPTY;
+		}
+		List<String> key = Collections.unmodifiableList(new ArrayList<>(classpath));
+		ClassLookup lookup = this.lookups.get(key);
+		if (lookup != null && isUpToDate(lookup)) {
+			return lookup;
+		}
+		List<JarClasses> jars = key.parallelStream().map(this::getJarClasses).collect(Collectors.toList());
+		Map<String, File> classes = new HashMap<>();
+		Map<String, JarStamp> jarStamps = new HashMap<>();
+		for (int i = 0; i < jars.size(); i++) {
+			JarClasses jar = jars.get(i);
+			if (jar == null) {
+				continue;
+			}
+			// the scan result may be shared with an identical jar at another location,
+			// so map the names to the jar as it appears on this classpath
+			File jarFile = new File(key.get(i));
+			jarStamps.put(jarFile.getPath(), this.stamps.get(jarFile.getPath()));
+			for (String className : jar.getClassNames()) {
+				// the first entry on the classpath wins, same as a class loader
+				classes.putIfAbsent(className, jarFile);
+			}
+		}
+		lookup = new ClassLookup(classes, jarStamps);
+		this.lookups.put(key, lookup);
+		return lookup;
+	}
+
+	/**
+	 * @return whether none of the jars of the lookup changed since it was built
+	 */
+	private static boolean isUpToDate(ClassLookup lookup) {
+		for (Map.Entry<String, JarStamp> entry : lookup.stamps.entrySet()) {
+			if (!isUpToDate(entry.getValue(), new File(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isUpToDate(JarStamp stamp, File file) {
+		return stamp != null && stamp.size == file.length() && stamp.lastModified == file.lastModified();
+	}
+
+	public JarClasses getJarClasses(String jarPath) {
+		File file = new File(jarPath);
+		if (!file.isFile() || !jarPath.endsWith(".jar")) {
+			return null;
+		}
+		JarStamp stamp = this.stamps.get(file.getPath());
+		if (isUpToDate(stamp, file)) {
+			JarClasses classes = this.contents.get(stamp.contentKey);
+			if (classes != null) {
+				return classes;
+			}
+		}
+		return scan(file);
+	}
+
+	private JarClasses scan(File file) {
+		long size = file.length();
+		long lastModified = file.lastModified();
+		Set<String> classNames = new HashSet<>();
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2);
+		try (JarFile jarFile = new JarFile(file)) {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				String name = entry.getName();
+				digest.update(name.getBytes(StandardCharsets.UTF_8));
+				buffer.clear();
+				buffer.putLong(entry.getCrc()).putLong(entry.getSize());
+				digest.update(buffer.array());
+				String className = toClassName(name);
+				if (className != null) {
+					classNames.add(className);
+				}
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		String contentKey = Utils.toHex(digest.digest());
+		JarClasses classes = this.contents.computeIfAbsent(contentKey,
+				key -> new JarClasses(file, Collections.unmodifiableSet(classNames)));
+		this.stamps.put(file.getPath(), new JarStamp(size, lastModified, contentKey));
+		return classes;
+	}
+
+	private static String toClassName(String entryName) {
+		if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")
+				|| entryName.endsWith("module-info.class") || entryName.endsWith("package-info.class")) {
+			return null;
+		}
+		return entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+	}
+}
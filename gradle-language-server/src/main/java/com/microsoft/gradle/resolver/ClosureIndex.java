@@ -0,0 +1,99 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.resolver;
+
+import com.microsoft.gradle.utils.CompletionUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.lsp4j.CompletionItem;
+
+/**
+ * The closures contributed by the plugins of a project, indexed by name, with
+ * their completion items computed once when the project is synced.
+ *
+ * The index is immutable and its items are shared by all completion requests,
+ * so they already carry their final sort text.
+ */
+public class ClosureIndex {
+
+	public static final ClosureIndex EMPTY = new ClosureIndex(Collections.emptyList());
+
+	// <closureName, closure>
+	private final Map<String, GradleClosure> closures = new LinkedHashMap<>();
+	private final List<CompletionItem> closureItems = new ArrayList<>();
+	// <closureName, items of its methods and fields>
+	private final Map<String, List<CompletionItem>> memberItems = new HashMap<>();
+
+	public ClosureIndex(List<GradleClosure> closures) {
+		for (GradleClosure closure : closures) {
+			if (closure.name == null || this.closures.containsKey(closure.name)) {
+				// the first closure of a name wins, as it did with the linear lookup
+				continue;
+			}
+			this.closures.put(closure.name, closure);
+			this.closureItems.add(withSortText(CompletionUtils.getClosureCompletionItem(closure.name)));
+			this.memberItems.put(closure.name, Collections.unmodifiableList(getMemberItems(closure)));
+		}
+	}
+
+	private static List<CompletionItem> getMemberItems(GradleClosure closure) {
+		List<CompletionItem> items = new ArrayList<>();
+		Set<String> labels = new HashSet<>();
+		if (closure.methods != null) {
+			for (GradleMethod method : closure.methods) {
+				List<String> parameterTypes = method.parameterTypes == null
+						? Collections.emptyList()
+						: Arrays.asList(method.parameterTypes);
+				CompletionItem item = CompletionUtils.getMethodCompletionItem(method.name, parameterTypes,
+						method.deprecated);
+				if (labels.add(item.getLabel())) {
+					items.add(withSortText(item));
+				}
+			}
+		}
+		if (closure.fields != null) {
+			for (GradleField field : closure.fields) {
+				if (labels.add(field.name)) {
+					items.add(withSortText(CompletionUtils.getPropertyCompletionItem(field.name, field.deprecated)));
+				}
+			}
+		}
+		return items;
+	}
+
+	private static CompletionItem withSortText(CompletionItem item) {
+		item.setSortText(CompletionUtils.getSortText(item));
+		return item;
+	}
+
+	public GradleClosure getClosure(String name) {
+		return this.closures.get(name);
+	}
+
+	public List<GradleClosure> getClosures() {
+		return Collections.unmodifiableList(new ArrayList<>(this.closures.values()));
+	}
+
+	/**
+	 * @return the items offered at the root of a script, one for each closure
+	 */
+	public List<CompletionItem> getClosureItems() {
+		return Collections.unmodifiableList(this.closureItems);
+	}
+
+	/**
+	 * @return the items offered inside the closure of the given name
+	 */
+	public List<CompletionItem> getMemberItems(String closureName) {
+		List<CompletionItem> items = this.memberItems.get(closureName);
+		return items == null ? Collections.emptyList() : items;
+	}
+}
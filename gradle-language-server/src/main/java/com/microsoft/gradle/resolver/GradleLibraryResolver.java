@@ -13,6 +13,7 @@ import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,14 +42,26 @@ public class GradleLibraryResolver {
 
 	private static String JAVA_PLUGIN = "org.gradle.api.plugins.JavaPlugin";
 
+	private static class ProjectModels {
+		private static final ProjectModels EMPTY = new ProjectModels(Collections.emptyMap(), Collections.emptyMap());
+
+		// <projectPath, pluginsList>
+		private final Map<String, List<String>> plugins;
+		// <projectPath, closures>
+		private final Map<String, ClosureIndex> closureIndexes;
+
+		private ProjectModels(Map<String, List<String>> plugins, Map<String, ClosureIndex> closureIndexes) {
+			this.plugins = plugins;
+			this.closureIndexes = closureIndexes;
+		}
+	}
+
 	private GradleFilesManager gradleFilesManager;
 	private Map<String, JavaClass> gradleClasses = new HashMap<>();
 	private Set<String> javaConfigurations = new HashSet<>();
 	private Set<String> javaPlugins = new HashSet<>();
-	// <projectPath, pluginsList>
-	private Map<String, List<String>> projectPlugins = new HashMap<>();
-	// <projectPath, closureList>
-	private Map<String, List<GradleClosure>> extClosures = new HashMap<>();
+	// replaced as a whole so a sync is applied atomically
+	private volatile ProjectModels projectModels = ProjectModels.EMPTY;
 	private String gradleHome;
 	private String gradleVersion;
 	private boolean gradleWrapperEnabled;
@@ -83,6 +96,19 @@ public class GradleLibraryResolver {
 				: Paths.get(System.getProperty("user.home"), ".gradle");
 	}
 
+	public Path getGradleUserHomePath() {
+		return this.gradleUserHomePath;
+	}
+
+	/**
+	 * @return the plugins applied to any of the synced projects
+	 */
+	public Set<String> getProjectPlugins() {
+		Set<String> plugins = new HashSet<>();
+		this.projectModels.plugins.values().forEach(plugins::addAll);
+		return plugins;
+	}
+
 	public void setWorkspacePath(Path workspacePath) {
 		this.workspacePath = workspacePath;
 	}
@@ -95,8 +121,17 @@ public class GradleLibraryResolver {
 		return this.javaConfigurations;
 	}
 
-	public List<GradleClosure> getExtClosures(String projectPath) {
-		return this.extClosures.get(projectPath);
+	public ClosureIndex getClosureIndex(String projectPath) {
+		ClosureIndex index = this.projectModels.closureIndexes.get(projectPath);
+		return index == null ? ClosureIndex.EMPTY : index;
+	}
+
+	/**
+	 * @return an identifier of the resolved Gradle API, the results of analyzing a
+	 *         script against different APIs may differ
+	 */
+	public String getGradleAPIVersion() {
+		return Utils.isValidFile(this.coreAPI) ? this.coreAPI.getName() : "";
 	}
 
 	public boolean resolveGradleAPI() {
@@ -277,7 +312,7 @@ public class GradleLibraryResolver {
 	}
 
 	public void setExtClosures(String projectPath, List<GradleClosure> closures) {
-		this.extClosures.put(projectPath, closures);
+		setProjectModels(Collections.emptyMap(), Collections.singletonMap(projectPath, closures));
 	}
 
 	private static String removeQuotes(String original) {
@@ -290,13 +325,31 @@ public class GradleLibraryResolver {
 	}
 
 	public void setProjectPlugins(String projectPath, List<String> plugins) {
-		this.projectPlugins.put(projectPath, plugins);
+		setProjectModels(Collections.singletonMap(projectPath, plugins), Collections.emptyMap());
+	}
+
+	/**
+	 * Applies the plugins and closures of several projects at once, completion
+	 * requests see either none or all of them.
+	 */
+	public void setProjectModels(Map<String, List<String>> plugins, Map<String, List<GradleClosure>> closures) {
+		// the closures are indexed before taking the lock
+		Map<String, ClosureIndex> indexes = new HashMap<>();
+		closures.forEach((projectPath, list) -> indexes.put(projectPath, new ClosureIndex(list)));
+		synchronized (this) {
+			Map<String, List<String>> newPlugins = new HashMap<>(this.projectModels.plugins);
+			newPlugins.putAll(plugins);
+			Map<String, ClosureIndex> newIndexes = new HashMap<>(this.projectModels.closureIndexes);
+			newIndexes.putAll(indexes);
+			this.projectModels = new ProjectModels(Collections.unmodifiableMap(newPlugins),
+					Collections.unmodifiableMap(newIndexes));
+		}
 	}
 
 	public boolean isJavaPluginsIncluded(URI uri, Set<String> plugins) {
 		String folderPath = Utils.getFolderPath(uri);
 		if (folderPath != null) {
-			List<String> pluginsList = this.projectPlugins.get(folderPath);
+			List<String> pluginsList = this.projectModels.plugins.get(folderPath);
 			if (pluginsList != null && pluginsList.contains("java")) {
 				return true;
 			}
@@ -0,0 +1,164 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.resolver;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A sorted index of plugin IDs and their known versions, answering prefix
+ * queries with a binary search.
+ *
+ * The well-known plugins are read from a compact binary file generated at build
+ * time (see the generatePluginIndex task), with the following layout: the
+ * {@link #MAGIC} number, the {@link #FORMAT_VERSION}, the number of entries and
+ * then for each entry, sorted by ID, the length of the prefix shared with the
+ * previous ID (an unsigned byte), the rest of the ID and its latest version
+ * (both as modified UTF-8, the version may be empty for core plugins).
+ */
+public class PluginIndex {
+
+	public static final PluginIndex EMPTY = new PluginIndex(Collections.emptyMap());
+	public static final int MAGIC = 0x47504958;
+	public static final int FORMAT_VERSION = 1;
+
+	private static final Comparator<String> VERSION_ORDER = PluginIndex::compareVersions;
+
+	private final String[] ids;
+	// versions[i] are the versions of ids[i], the newest first
+	private final List<List<String>> versions;
+
+	/**
+	 * @param entries
+	 *            the plugin IDs mapped to their versions
+	 */
+	public PluginIndex(Map<String, ? extends Collection<String>> entries) {
+		Map<String, Collection<String>> sorted = new TreeMap<>(entries);
+		this.ids = sorted.keySet().toArray(new String[sorted.size()]);
+		this.versions = new ArrayList<>(this.ids.length);
+		for (Collection<String> entryVersions : sorted.values()) {
+			Set<String> ordered = new TreeSet<>(VERSION_ORDER.reversed());
+			for (String version : entryVersions) {
+				if (version != null && !version.isEmpty()) {
+					ordered.add(version);
+				}
+			}
+			this.versions.add(Collections.unmodifiableList(new ArrayList<>(ordered)));
+		}
+	}
+
+	public static PluginIndex read(InputStream inputStream) throws IOException {
+		DataInputStream input = new DataInputStream(inputStream);
+		if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+			throw new IOException("Unsupported plugin index format");
+		}
+		int size = input.readInt();
+		Map<String, List<String>> entries = new TreeMap<>();
+		String previous = "";
+		for (int i = 0; i < size; i++) {
+			int shared = input.readUnsignedByte();
+			String id = previous.substring(0, Math.min(shared, previous.length())) + input.readUTF();
+			String version = input.readUTF();
+			entries.put(id, version.isEmpty() ? Collections.emptyList() : Collections.singletonList(version));
+			previous = id;
+		}
+		return new PluginIndex(entries);
+	}
+
+	/**
+	 * Finds the plugins in the local Gradle cache, where each resolved plugin
+	 * leaves a marker module: {@code <id>/<id>.gradle.plugin/<version>}.
+	 */
+	public static PluginIndex scanGradleCache(File gradleUserHome) {
+		File modules = new File(gradleUserHome, String.join(File.separator, "caches", "modules-2", "files-2.1"));
+		File[] groups = modules.listFiles(File::isDirectory);
+		if (groups == null) {
+			return EMPTY;
+		}
+		Map<String, List<String>> entries = new TreeMap<>();
+		for (File group : groups) {
+			String id = group.getName();
+			File marker = new File(group, id + ".gradle.plugin");
+			File[] versionFolders = marker.listFiles(File::isDirectory);
+			if (versionFolders == null) {
+				continue;
+			}
+			List<String> markerVersions = new ArrayList<>();
+			for (File versionFolder : versionFolders) {
+				markerVersions.add(versionFolder.getName());
+			}
+			entries.put(id, markerVersions);
+		}
+		return new PluginIndex(entries);
+	}
+
+	public static PluginIndex merge(PluginIndex... indexes) {
+		Map<String, Set<String>> entries = new TreeMap<>();
+		for (PluginIndex index : indexes) {
+			for (int i = 0; i < index.ids.length; i++) {
+				entries.computeIfAbsent(index.ids[i], id -> new TreeSet<>()).addAll(index.versions.get(i));
+			}
+		}
+		return new PluginIndex(entries);
+	}
+
+	public int size() {
+		return this.ids.length;
+	}
+
+	/**
+	 * @return the IDs starting with the given prefix, in alphabetical order
+	 */
+	public List<String> getIds(String prefix) {
+		int from = lowerBound(prefix);
+		List<String> results = new ArrayList<>();
+		for (int i = from; i < this.ids.length && this.ids[i].startsWith(prefix); i++) {
+			results.add(this.ids[i]);
+		}
+		return results;
+	}
+
+	/**
+	 * @return the known versions of the plugin, the newest first
+	 */
+	public List<String> getVersions(String id) {
+		int index = Arrays.binarySearch(this.ids, id);
+		return index < 0 ? Collections.emptyList() : this.versions.get(index);
+	}
+
+	private int lowerBound(String prefix) {
+		int index = Arrays.binarySearch(this.ids, prefix);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	private static int compareVersions(String a, String b) {
+		// numeric segments are compared as numbers, so 1.10 is newer than 1.9
+		String[] aParts = a.split("[.\\-]");
+		String[] bParts = b.split("[.\\-]");
+		for (int i = 0; i < Math.min(aParts.length, bParts.length); i++) {
+			boolean aNumeric = aParts[i].matches("\\d{1,9}");
+			boolean bNumeric = bParts[i].matches("\\d{1,9}");
+			int result = (aNumeric && bNumeric)
+					? Integer.compare(Integer.parseInt(aParts[i]), Integer.parseInt(bParts[i]))
+					: aParts[i].compareTo(bParts[i]);
+			if (result != 0) {
+				return result;
+			}
+		}
+		int result = Integer.compare(aParts.length, bParts.length);
+		return result != 0 ? result : a.compareTo(b);
+	}
+}
@@ -0,0 +1,18 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.resolver;
+
+public class ProjectModel {
+	public String projectPath;
+	public String[] plugins;
+	public GradleClosure[] closures;
+	public String[] scriptClasspaths;
+
+	public ProjectModel(String projectPath, String[] plugins, GradleClosure[] closures, String[] scriptClasspaths) {
+		this.projectPath = projectPath;
+		this.plugins = plugins;
+		this.closures = closures;
+		this.scriptClasspaths = scriptClasspaths;
+	}
+}
@@ -0,0 +1,226 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.semantictokens;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Classifies the tokens of a script from its token stream only, without parsing
+ * it. The result is less accurate than the tokens of the AST, but it is
+ * available right away and even for scripts with syntax errors.
+ *
+ * Lines and columns start from 1, like in the groovy AST.
+ */
+public class SemanticTokenLexer {
+
+	private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("as", "assert", "boolean", "break", "byte",
+			"case", "catch", "char", "class", "continue", "def", "default", "do", "double", "else", "enum", "extends",
+			"false", "final", "finally", "float", "for", "if", "implements", "import", "in", "instanceof", "int",
+			"interface", "long", "new", "null", "package", "private", "protected", "public", "return", "short",
+			"static", "super", "switch", "this", "throw", "throws", "true", "try", "void", "while"));
+
+	private enum Kind {
+		IDENTIFIER, STRING, NUMBER, SYMBOL, NEWLINE
+	}
+
+	private static class Lexeme {
+		private final Kind kind;
+		private final String text;
+		private final int line;
+		private final int column;
+
+		private Lexeme(Kind kind, String text, int line, int column) {
+			this.kind = kind;
+			this.text = text;
+			this.line = line;
+			this.column = column;
+		}
+
+		private boolean is(Kind kind, String text) {
+			return this.kind == kind && this.text.equals(text);
+		}
+	}
+
+	private final String content;
+	private final List<Lexeme> lexemes = new ArrayList<>();
+	private final List<SemanticToken> tokens = new ArrayList<>();
+	private int offset;
+	private int line = 1;
+	private int column = 1;
+
+	private SemanticTokenLexer(String content) {
+		this.content = content;
+	}
+
+	public static List<SemanticToken> getSemanticTokens(String content) {
+		SemanticTokenLexer lexer = new SemanticTokenLexer(content == null ? "" : content);
+		lexer.scan();
+		lexer.classify();
+		return lexer.tokens;
+	}
+
+	private void scan() {
+		while (this.offset < this.content.length()) {
+			char c = this.content.charAt(this.offset);
+			if (c == '\n') {
+				this.lexemes.add(new Lexeme(Kind.NEWLINE, "\n", this.line, this.column));
+				advance(1);
+			} else if (Character.isWhitespace(c)) {
+				advance(1);
+			} else if (this.content.startsWith("//", this.offset)) {
+				skipUntil("\n", false);
+			} else if (this.content.startsWith("/*", this.offset)) {
+				advance(2);
+				skipUntil("*/", true);
+			} else if (c == '\'' || c == '"') {
+				scanString(c);
+			} else if (Character.isJavaIdentifierStart(c)) {
+				int start = this.offset;
+				int startColumn = this.column;
+				while (this.offset < this.content.length()
+						&& Character.isJavaIdentifierPart(this.content.charAt(this.offset))) {
+					advance(1);
+				}
+				this.lexemes.add(new Lexeme(Kind.IDENTIFIER, this.content.substring(start, this.offset), this.line,
+						startColumn));
+			} else if (Character.isDigit(c)) {
+				int start = this.offset;
+				int startColumn = this.column;
+				while (this.offset < this.content.length()
+						&& (Character.isLetterOrDigit(this.content.charAt(this.offset))
+								|| this.content.charAt(this.offset) == '_')) {
+					advance(1);
+				}
+				this.lexemes.add(
+						new Lexeme(Kind.NUMBER, this.content.substring(start, this.offset), this.line, startColumn));
+			} else {
+				this.lexemes.add(new Lexeme(Kind.SYMBOL, String.valueOf(c), this.line, this.column));
+				advance(1);
+			}
+		}
+	}
+
+	private void scanString(char quote) {
+		String delimiter = this.content.startsWith(repeat(quote), this.offset) ? repeat(quote) : String.valueOf(quote);
+		int startLine = this.line;
+		int startColumn = this.column;
+		advance(delimiter.length());
+		int segmentColumn = startColumn;
+		while (this.offset < this.content.length()) {
+			char c = this.content.charAt(this.offset);
+			if (c == '\\' && this.offset + 1 < this.content.length() && this.content.charAt(this.offset + 1) != '\n') {
+				advance(2);
+			} else if (this.content.startsWith(delimiter, this.offset)) {
+				advance(delimiter.length());
+				break;
+			} else if (c == '\n') {
+				if (delimiter.length() == 1) {
+					// an unterminated string ends with its line
+					break;
+				}
+				// tokens can't span lines, so a multiline string gets a token per line
+				addStringToken(this.line, segmentColumn, this.column - segmentColumn);
+				advance(1);
+				segmentColumn = this.column;
+			} else {
+				advance(1);
+			}
+		}
+		addStringToken(this.line, segmentColumn, this.column - segmentColumn);
+		this.lexemes.add(new Lexeme(Kind.STRING, "", startLine, startColumn));
+	}
+
+	private static String repeat(char c) {
+		return new String(new char[]{c, c, c});
+	}
+
+	private void addStringToken(int line, int column, int length) {
+		if (length > 0) {
+			this.tokens.add(new SemanticToken(line, column, length, TokenType.STRING, 0));
+		}
+	}
+
+	private void skipUntil(String end, boolean consumeEnd) {
+		while (this.offset < this.content.length() && !this.content.startsWith(end, this.offset)) {
+			advance(1);
+		}
+		if (consumeEnd && this.offset < this.content.length()) {
+			advance(end.length());
+		}
+	}
+
+	private void advance(int count) {
+		for (int i = 0; i < count && this.offset < this.content.length(); i++) {
+			if (this.content.charAt(this.offset) == '\n') {
+				this.line++;
+				this.column = 1;
+			} else {
+				this.column++;
+			}
+			this.offset++;
+		}
+	}
+
+	private void classify() {
+		for (int i = 0; i < this.lexemes.size(); i++) {
+			Lexeme lexeme = this.lexemes.get(i);
+			if (lexeme.kind != Kind.IDENTIFIER || KEYWORDS.contains(lexeme.text)) {
+				continue;
+			}
+			Lexeme previous = i > 0 ? this.lexemes.get(i - 1) : null;
+			Lexeme next = i + 1 < this.lexemes.size() ? this.lexemes.get(i + 1) : null;
+			boolean isCall = next != null && (next.is(Kind.SYMBOL, "(") || next.is(Kind.SYMBOL, "{"));
+			if (previous != null && previous.is(Kind.SYMBOL, ".")) {
+				addToken(lexeme, isCall ? TokenType.FUNCTION : TokenType.PROPERTY);
+			} else if (isMapKey(previous, next, i)) {
+				addToken(lexeme, TokenType.PARAMETER);
+			} else if (isCall || isCommand(previous, next)) {
+				addToken(lexeme, TokenType.FUNCTION);
+			} else {
+				addToken(lexeme, TokenType.VARIABLE);
+			}
+		}
+	}
+
+	private boolean isMapKey(Lexeme previous, Lexeme next, int index) {
+		if (next == null || !next.is(Kind.SYMBOL, ":")) {
+			return false;
+		}
+		Lexeme afterNext = index + 2 < this.lexemes.size() ? this.lexemes.get(index + 2) : null;
+		if (afterNext != null && afterNext.is(Kind.SYMBOL, ":")) {
+			// a method reference, e.g. this::method
+			return false;
+		}
+		// e.g. foo(key: value), [key: value] or a command like apply plugin: 'java'
+		return previous == null || previous.is(Kind.SYMBOL, "(") || previous.is(Kind.SYMBOL, "[")
+				|| previous.is(Kind.SYMBOL, ",") || previous.kind == Kind.IDENTIFIER;
+	}
+
+	private static boolean isCommand(Lexeme previous, Lexeme next) {
+		// a command expression, e.g. implementation 'group:artifact:version', or a
+		// chained one, e.g. id 'plugin' version '1.0'
+		if (next == null || next.kind == Kind.NEWLINE) {
+			return false;
+		}
+		boolean hasArgument = next.kind == Kind.STRING || next.kind == Kind.NUMBER
+				|| (next.kind == Kind.IDENTIFIER && !KEYWORDS.contains(next.text));
+		if (!hasArgument) {
+			return false;
+		}
+		return previous == null || previous.kind == Kind.NEWLINE || previous.kind == Kind.STRING
+				|| previous.kind == Kind.NUMBER || previous.is(Kind.SYMBOL, "{") || previous.is(Kind.SYMBOL, "}")
+				|| previous.is(Kind.SYMBOL, ";") || previous.is(Kind.SYMBOL, ")");
+	}
+
+	private void addToken(Lexeme lexeme, TokenType tokenType) {
+		int modifiers = (tokenType == TokenType.FUNCTION && TokenModifier.isDefaultLibrary(lexeme.text))
+				? TokenModifier.DEFAULT_LIBRARY.bitmask
+				: 0;
+		this.tokens.add(new SemanticToken(lexeme.line, lexeme.column, lexeme.text.length(), tokenType, modifiers));
+	}
+}
@@ -4,6 +4,7 @@
 package com.microsoft.gradle.utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -11,6 +12,8 @@ import java.util.stream.Stream;
 import org.eclipse.lsp4j.Command;
 import org.eclipse.lsp4j.CompletionItem;
 import org.eclipse.lsp4j.CompletionItemKind;
+import org.eclipse.lsp4j.CompletionItemTag;
+import org.eclipse.lsp4j.InsertTextFormat;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.TextEdit;
@@ -23,7 +26,8 @@ public class CompletionUtils {
 
 	public enum CompletionKinds {
 		DEPENDENCY_GROUP("dependency_group"), DEPENDENCY_ARTIFACT("dependency_artifact"), DEPENDENCY_VERSION(
-				"dependency_version"), METHOD_CALL("method_call"), PROPERTY("property");
+				"dependency_version"), METHOD_CALL(
+						"method_call"), PROPERTY("property"), PLUGIN_ID("plugin_id"), PLUGIN_VERSION("plugin_version");
 
 		private final String text;
 
@@ -84,6 +88,86 @@ public class CompletionUtils {
 		return items;
 	}
 
+	public static CompletionItem getMethodCompletionItem(String name, List<String> arguments, boolean deprecated) {
+		StringBuilder labelBuilder = new StringBuilder();
+		labelBuilder.append(name);
+		labelBuilder.append("(");
+		for (int i = 0; i < arguments.size(); i++) {
+			String type = arguments.get(i);
+			String[] classNameSplits = type.split("\\.");
+			String className = classNameSplits[classNameSplits.length - 1];
+			String variableName = className.substring(0, 1).toLowerCase();
+			labelBuilder.append(className);
+			labelBuilder.append(" ");
+			labelBuilder.append(variableName);
+			if (i != arguments.size() - 1) {
+				labelBuilder.append(", ");
+			}
+		}
+		labelBuilder.append(")");
+		String label = labelBuilder.toString();
+		CompletionItem item = new CompletionItem(label);
+		if (deprecated) {
+			item.setTags(Arrays.asList(CompletionItemTag.Deprecated));
+		}
+		item.setKind(CompletionItemKind.Function);
+		item.setInsertTextFormat(InsertTextFormat.Snippet);
+		StringBuilder builder = new StringBuilder();
+		builder.append(name);
+		if (label.endsWith("(Closure c)")) {
+			// for single closure, we offer curly brackets
+			builder.append(" {$0}");
+		} else {
+			builder.append("($0)");
+		}
+		item.setInsertText(builder.toString());
+		List<Object> itemArguments = new ArrayList<>();
+		itemArguments.add(CompletionKinds.METHOD_CALL.toString());
+		itemArguments.add(name);
+		item.setCommand(new Command(completionTitle, completionCommand, itemArguments));
+		return item;
+	}
+
+	public static CompletionItem getClosureCompletionItem(String name) {
+		StringBuilder titleBuilder = new StringBuilder();
+		titleBuilder.append(name);
+		titleBuilder.append("(Closure c)");
+		CompletionItem item = new CompletionItem(titleBuilder.toString());
+		item.setKind(CompletionItemKind.Function);
+		item.setInsertTextFormat(InsertTextFormat.Snippet);
+		StringBuilder insertTextBuilder = new StringBuilder();
+		insertTextBuilder.append(name);
+		insertTextBuilder.append(" {$0}");
+		item.setInsertText(insertTextBuilder.toString());
+		List<Object> arguments = new ArrayList<>();
+		arguments.add(CompletionKinds.METHOD_CALL.toString());
+		arguments.add(name);
+		item.setCommand(new Command(completionTitle, completionCommand, arguments));
+		return item;
+	}
+
+	public static CompletionItem getPropertyCompletionItem(String name, boolean deprecated) {
+		CompletionItem property = new CompletionItem(name);
+		property.setKind(CompletionItemKind.Property);
+		if (deprecated) {
+			property.setTags(Arrays.asList(CompletionItemTag.Deprecated));
+		}
+		List<Object> arguments = new ArrayList<>();
+		arguments.add(CompletionKinds.PROPERTY.toString());
+		arguments.add(name);
+		property.setCommand(new Command(completionTitle, completionCommand, arguments));
+		return property;
+	}
+
+	public static String getSortText(CompletionItem item) {
+		// priority: function > property
+		int kindValue = (item.getKind() == CompletionItemKind.Function) ? 0 : 1;
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.valueOf(kindValue));
+		builder.append(item.getLabel());
+		return builder.toString();
+	}
+
 	public static List<String> sortResults(String text, Collection<String> keys) {
 		if (text.isEmpty()) {
 			return new ArrayList<>(keys);
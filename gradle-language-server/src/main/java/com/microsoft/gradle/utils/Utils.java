@@ -6,9 +6,12 @@ package com.microsoft.gradle.utils;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -86,4 +89,43 @@ public class Utils {
 		Set<Object> seen = ConcurrentHashMap.newKeySet();
 		return t -> seen.add(keyExtractor.apply(t));
 	}
+
+	public static String getClasspathFingerprint(List<String> classpaths) {
+		// a classpath changes when an entry is added, removed, reordered or rewritten
+		// in place
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (String classpath : classpaths) {
+				File file = new File(classpath);
+				StringBuilder builder = new StringBuilder();
+				builder.append(classpath);
+				builder.append('|');
+				builder.append(file.length());
+				builder.append('|');
+				builder.append(file.lastModified());
+				builder.append('\n');
+				digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			return String.valueOf(classpaths.hashCode());
+		}
+	}
+
+	public static String getContentHash(String content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return toHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			return content.length() + ":" + content.hashCode();
+		}
+	}
+
+	public static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			builder.append(String.format("%02x", b));
+		}
+		return builder.toString();
+	}
 }
@@ -10,6 +10,7 @@ import com.google.gson.GsonBuilder;
 import com.microsoft.gradle.resolver.GradleClosure;
 import com.microsoft.gradle.resolver.GradleField;
 import com.microsoft.gradle.resolver.GradleMethod;
+import com.microsoft.gradle.resolver.ProjectModel;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +30,7 @@ import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.TextDocumentItem;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -37,6 +39,11 @@ public class GradleCompletionTest {
 
 	private GradleServices services;
 
+	@AfterEach
+	void tearDown() {
+		services.shutdown();
+	}
+
 	@BeforeEach
 	void setup() {
 		services = new GradleServices();
@@ -140,6 +147,71 @@ public class GradleCompletionTest {
 				completionItemExists(resultInClosureList, "targetCompatibility", CompletionItemKind.Property));
 	}
 
+	@Test
+	public void testProjectModelsCompletions() throws Exception {
+		Path filePath = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		ExecuteCommandParams params = new ExecuteCommandParams();
+		params.setCommand("gradle.setProjectModels");
+		List<Object> arguments = new ArrayList<>();
+		Gson gson = new GsonBuilder().create();
+		String projectPath = GradleTestConstants.testPath.resolve("app").normalize().toString();
+		GradleMethod method = new GradleMethod("withSourcesJar", new String[]{}, false);
+		GradleClosure closure = new GradleClosure("java", new GradleMethod[]{method},
+				new GradleField[]{new GradleField("sourceCompatibility", false)});
+		ProjectModel[] models = {
+				new ProjectModel(projectPath, new String[]{"java"}, new GradleClosure[]{closure}, new String[]{}),
+				new ProjectModel(GradleTestConstants.testPath.resolve("other").normalize().toString(), new String[]{},
+						new GradleClosure[]{}, new String[]{})};
+		arguments.add(gson.toJsonTree(models, ProjectModel[].class));
+		params.setArguments(arguments);
+		services.executeCommand(params).get();
+		CompletableFuture<Either<List<CompletionItem>, CompletionList>> result = services
+				.completion(new CompletionParams(new TextDocumentIdentifier(uri), new Position(12, 0)));
+		Assertions.assertTrue(
+				completionItemExists(result.get().getLeft(), "java(Closure c)", CompletionItemKind.Function));
+		List<CompletionItem> resultInClosureList = services
+				.completion(new CompletionParams(new TextDocumentIdentifier(uri), new Position(8, 6))).get().getLeft();
+		Assertions
+				.assertTrue(completionItemExists(resultInClosureList, "withSourcesJar()", CompletionItemKind.Function));
+		Assertions.assertTrue(
+				completionItemExists(resultInClosureList, "sourceCompatibility", CompletionItemKind.Property));
+	}
+
+	@Test
+	public void testPluginCompletions() throws Exception {
+		Path filePath = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		// id 'org.|springframework.boot'
+		List<CompletionItem> idResults = services
+				.completion(new CompletionParams(new TextDocumentIdentifier(uri), new Position(1, 9))).get().getLeft();
+		Assertions.assertTrue(completionItemExists(idResults, "org.springframework.boot", CompletionItemKind.Module));
+		Assertions.assertTrue(idResults.stream().allMatch(item -> item.getLabel().startsWith("org.")));
+		// version '|2.2.1.RELEASE'
+		List<CompletionItem> versionResults = services
+				.completion(new CompletionParams(new TextDocumentIdentifier(uri), new Position(1, 40))).get().getLeft();
+		Assertions.assertTrue(completionItemExists(versionResults, "2.6.3", CompletionItemKind.Constant));
+		// the plugins of the synced projects are offered too
+		ExecuteCommandParams params = new ExecuteCommandParams();
+		params.setCommand("gradle.setPlugins");
+		List<Object> arguments = new ArrayList<>();
+		Gson gson = new GsonBuilder().create();
+		String projectPath = GradleTestConstants.testPath.resolve("app").normalize().toString();
+		arguments.add(gson.toJsonTree(projectPath, String.class));
+		arguments.add(gson.toJsonTree(new String[]{"org.example.conventions"}, String[].class));
+		params.setArguments(arguments);
+		services.executeCommand(params).get();
+		idResults = services.completion(new CompletionParams(new TextDocumentIdentifier(uri), new Position(1, 9))).get()
+				.getLeft();
+		Assertions.assertTrue(completionItemExists(idResults, "org.example.conventions", CompletionItemKind.Module));
+	}
+
 	private static boolean completionItemExists(List<CompletionItem> items, String label, CompletionItemKind kind) {
 		if (items == null || items.isEmpty()) {
 			return false;
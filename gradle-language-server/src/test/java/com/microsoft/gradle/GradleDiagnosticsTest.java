@@ -7,21 +7,34 @@ import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.microsoft.gradle.diagnostics.DiagnosticClientCapabilities;
+import com.microsoft.gradle.diagnostics.DocumentDiagnosticParams;
+import com.microsoft.gradle.diagnostics.DocumentDiagnosticReport;
+import com.microsoft.gradle.manager.GradleFilesManager;
+import com.microsoft.gradle.manager.ProjectContext;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import org.eclipse.lsp4j.ClientCapabilities;
 import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.DiagnosticSeverity;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
 import org.eclipse.lsp4j.DidOpenTextDocumentParams;
 import org.eclipse.lsp4j.ExecuteCommandParams;
 import org.eclipse.lsp4j.MessageActionItem;
 import org.eclipse.lsp4j.MessageParams;
 import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.SemanticTokens;
+import org.eclipse.lsp4j.SemanticTokensParams;
 import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.TextDocumentItem;
 import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -35,6 +48,11 @@ public class GradleDiagnosticsTest {
 	private Path testPath;
 	private Path classpathTestPath;
 
+	@AfterEach
+	void tearDown() {
+		services.shutdown();
+	}
+
 	@BeforeEach
 	void setup() {
 		testPath = Paths.get(System.getProperty("user.dir")).resolve(TEST_PROJECT_PATH);
@@ -144,4 +162,212 @@ public class GradleDiagnosticsTest {
 		}
 		Assertions.fail("Can't get corresponding diagnostics for the test file.");
 	}
+
+	@Test
+	public void testRecompileOnlyWhenScriptClasspathsChanged() throws Exception {
+		Path filePath = classpathTestPath.resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		Assertions.assertEquals(1, this.diagnosticsStorage.size());
+		Assertions.assertEquals(1, this.diagnosticsStorage.get(0).getDiagnostics().size());
+		ExecuteCommandParams params = new ExecuteCommandParams();
+		params.setCommand("gradle.setScriptClasspaths");
+		List<Object> arguments = new ArrayList<>();
+		Gson gson = new GsonBuilder().create();
+		String projectPath = classpathTestPath.normalize().toString();
+		String[] scriptClasspaths = {classpathTestPath.resolve("classpath.jar").normalize().toString()};
+		arguments.add(gson.toJsonTree(projectPath, String.class));
+		arguments.add(gson.toJsonTree(scriptClasspaths, String[].class));
+		params.setArguments(arguments);
+		services.executeCommand(params).get();
+		// the classpath changed, so the open document is recompiled
+		Assertions.assertEquals(2, this.diagnosticsStorage.size());
+		Assertions.assertEquals(0, this.diagnosticsStorage.get(1).getDiagnostics().size());
+		services.executeCommand(params).get();
+		// the same classpath again, nothing to recompile
+		Assertions.assertEquals(2, this.diagnosticsStorage.size());
+	}
+
+	@Test
+	public void testKeepScriptClasspathsAfterReopen() throws Exception {
+		Path filePath = classpathTestPath.resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		ExecuteCommandParams params = new ExecuteCommandParams();
+		params.setCommand("gradle.setScriptClasspaths");
+		List<Object> arguments = new ArrayList<>();
+		Gson gson = new GsonBuilder().create();
+		String projectPath = classpathTestPath.normalize().toString();
+		String[] scriptClasspaths = {classpathTestPath.resolve("classpath.jar").normalize().toString()};
+		arguments.add(gson.toJsonTree(projectPath, String.class));
+		arguments.add(gson.toJsonTree(scriptClasspaths, String[].class));
+		params.setArguments(arguments);
+		services.executeCommand(params).get();
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		services.didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(uri)));
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		// the script classpath survives closing the last document of the project
+		Assertions.assertEquals(2, this.diagnosticsStorage.size());
+		Assertions.assertEquals(0, this.diagnosticsStorage.get(1).getDiagnostics().size());
+	}
+
+	@Test
+	public void testPublishSharedDiagnosticsForIdenticalContent() throws Exception {
+		Path filePath = testPath.resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		String otherUri = testPath.resolve("other.gradle").normalize().toUri().toString();
+		services.didOpen(new DidOpenTextDocumentParams(
+				new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content)));
+		services.didOpen(new DidOpenTextDocumentParams(
+				new TextDocumentItem(otherUri, GradleTestConstants.LANGUAGE_GRADLE, 1, content)));
+		// the second document reuses the compiled unit, with diagnostics rebased to its
+		// own uri
+		Assertions.assertEquals(2, this.diagnosticsStorage.size());
+		Assertions.assertEquals(otherUri, this.diagnosticsStorage.get(1).getUri());
+		Assertions.assertEquals(this.diagnosticsStorage.get(0).getDiagnostics(),
+				this.diagnosticsStorage.get(1).getDiagnostics());
+		Assertions.assertEquals(1, this.diagnosticsStorage.get(1).getDiagnostics().size());
+	}
+
+	private String openInProject(String fileName) throws Exception {
+		Path filePath = testPath.resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = testPath.resolve(fileName).normalize().toUri().toString();
+		services.didOpen(new DidOpenTextDocumentParams(
+				new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content)));
+		return uri;
+	}
+
+	private void close(String uri) {
+		services.didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(uri)));
+	}
+
+	@Test
+	public void testShareProjectContextBetweenDocuments() throws Exception {
+		GradleFilesManager manager = services.getGradleFilesManager();
+		String projectPath = testPath.normalize().toString();
+		String uri = openInProject("build.gradle");
+		ProjectContext context = manager.getContext(projectPath);
+		String otherUri = openInProject("settings.gradle");
+		// both documents of the project reference the same context
+		Assertions.assertSame(context, manager.getContext(projectPath));
+		close(uri);
+		close(otherUri);
+	}
+
+	@Test
+	public void testKeepProjectContextWhileADocumentIsOpen() throws Exception {
+		Map<String, Object> settings = new HashMap<>();
+		settings.put("gradleWrapperEnabled", false);
+		settings.put("projectContextGracePeriod", 0);
+		services.applySetting(settings);
+		GradleFilesManager manager = services.getGradleFilesManager();
+		String projectPath = testPath.normalize().toString();
+		String uri = openInProject("build.gradle");
+		String otherUri = openInProject("settings.gradle");
+		ProjectContext context = manager.getContext(projectPath);
+		close(uri);
+		// the other document still references the context
+		Assertions.assertSame(context, manager.getContext(projectPath));
+		close(otherUri);
+		// the last reference is gone, only a transient context is left
+		Assertions.assertNotSame(context, manager.getContext(projectPath));
+	}
+
+	@Test
+	public void testDisposeProjectContextAfterGracePeriod() throws Exception {
+		Map<String, Object> settings = new HashMap<>();
+		settings.put("gradleWrapperEnabled", false);
+		settings.put("projectContextGracePeriod", 200);
+		services.applySetting(settings);
+		GradleFilesManager manager = services.getGradleFilesManager();
+		String projectPath = testPath.normalize().toString();
+		String uri = openInProject("build.gradle");
+		ProjectContext context = manager.getContext(projectPath);
+		close(uri);
+		// reopened within the grace period, the context is reused
+		Assertions.assertSame(context, manager.getContext(projectPath));
+		uri = openInProject("build.gradle");
+		Thread.sleep(400);
+		Assertions.assertSame(context, manager.getContext(projectPath));
+		close(uri);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (manager.getContext(projectPath) == context && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Assertions.assertNotSame(context, manager.getContext(projectPath));
+	}
+
+	@Test
+	public void testPullDiagnostics() throws Exception {
+		services.setPullDiagnostics(true);
+		Path filePath = testPath.resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		// nothing is pushed in pull mode
+		Assertions.assertEquals(0, this.diagnosticsStorage.size());
+		DocumentDiagnosticReport report = services
+				.diagnostic(new DocumentDiagnosticParams(new TextDocumentIdentifier(uri), null)).get();
+		Assertions.assertEquals(DocumentDiagnosticReport.FULL, report.getKind());
+		Assertions.assertEquals(1, report.getItems().size());
+		Assertions.assertEquals("expecting '}', found '' @ line 8, column 2.", report.getItems().get(0).getMessage());
+		DocumentDiagnosticReport unchangedReport = services
+				.diagnostic(new DocumentDiagnosticParams(new TextDocumentIdentifier(uri), report.getResultId())).get();
+		Assertions.assertEquals(DocumentDiagnosticReport.UNCHANGED, unchangedReport.getKind());
+		Assertions.assertEquals(report.getResultId(), unchangedReport.getResultId());
+	}
+
+	@Test
+	public void testReadPullDiagnosticsCapability() {
+		GsonBuilder builder = new GsonBuilder();
+		DiagnosticClientCapabilities.configureGson(builder);
+		Gson gson = builder.create();
+		ClientCapabilities pullCapabilities = gson.fromJson(
+				"{\"textDocument\":{\"diagnostic\":{\"dynamicRegistration\":true}}}", ClientCapabilities.class);
+		Assertions.assertTrue(DiagnosticClientCapabilities.isPullSupported(pullCapabilities.getTextDocument()));
+		ClientCapabilities pushCapabilities = gson.fromJson("{\"textDocument\":{\"publishDiagnostics\":{}}}",
+				ClientCapabilities.class);
+		Assertions.assertFalse(DiagnosticClientCapabilities.isPullSupported(pushCapabilities.getTextDocument()));
+	}
+
+	@Test
+	public void testCompileBudgetExceeded() throws Exception {
+		Map<String, Object> settings = new HashMap<>();
+		settings.put("gradleWrapperEnabled", false);
+		settings.put("compileTimeBudget", 1);
+		services.applySetting(settings);
+		StringBuilder content = new StringBuilder("dependencies {\n");
+		for (int i = 0; i < 5000; i++) {
+			content.append("\timplementation 'org.example:artifact-").append(i).append(":1.0'\n");
+		}
+		content.append("}\n");
+		String uri = testPath.resolve("generated").resolve("build.gradle").normalize().toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1,
+				content.toString());
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		Assertions.assertEquals(1, this.diagnosticsStorage.size());
+		List<Diagnostic> diagnostics = this.diagnosticsStorage.get(0).getDiagnostics();
+		Assertions.assertEquals(1, diagnostics.size());
+		Assertions.assertEquals(DiagnosticSeverity.Information, diagnostics.get(0).getSeverity());
+		Assertions.assertTrue(diagnostics.get(0).getMessage().contains("time budget (1 ms)"));
+		// the script is still highlighted, from a partial AST or from its tokens
+		SemanticTokens tokens = services.semanticTokensFull(new SemanticTokensParams(new TextDocumentIdentifier(uri)))
+				.get();
+		Assertions.assertFalse(tokens.getData().isEmpty());
+		// the partial analysis isn't shared with a document of the same content
+		settings.put("compileTimeBudget", 0);
+		services.applySetting(settings);
+		String otherUri = testPath.resolve("generated").resolve("other.gradle").normalize().toUri().toString();
+		services.didOpen(new DidOpenTextDocumentParams(
+				new TextDocumentItem(otherUri, GradleTestConstants.LANGUAGE_GRADLE, 1, content.toString())));
+		Assertions.assertEquals(2, this.diagnosticsStorage.size());
+		Assertions.assertEquals(otherUri, this.diagnosticsStorage.get(1).getUri());
+		Assertions.assertEquals(0, this.diagnosticsStorage.get(1).getDiagnostics().size());
+	}
 }
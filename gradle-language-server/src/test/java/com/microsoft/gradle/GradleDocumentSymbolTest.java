@@ -5,12 +5,17 @@ package com.microsoft.gradle;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.microsoft.gradle.manager.WorkspaceIndex.FileSummary;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import org.eclipse.lsp4j.DidOpenTextDocumentParams;
 import org.eclipse.lsp4j.DocumentSymbol;
 import org.eclipse.lsp4j.DocumentSymbolParams;
+import org.eclipse.lsp4j.ExecuteCommandParams;
 import org.eclipse.lsp4j.MessageActionItem;
 import org.eclipse.lsp4j.MessageParams;
 import org.eclipse.lsp4j.Position;
@@ -21,8 +26,10 @@ import org.eclipse.lsp4j.SymbolInformation;
 import org.eclipse.lsp4j.SymbolKind;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.WorkspaceSymbolParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -31,6 +38,11 @@ public class GradleDocumentSymbolTest {
 
 	private GradleServices services;
 
+	@AfterEach
+	void tearDown() {
+		services.shutdown();
+	}
+
 	@BeforeEach
 	void setup() {
 		services = new GradleServices();
@@ -84,4 +96,57 @@ public class GradleDocumentSymbolTest {
 		Assertions.assertEquals(SymbolKind.Function, symbol4.getKind());
 		Assertions.assertEquals(symbol4.getRange(), new Range(new Position(13, 0), new Position(15, 1)));
 	}
+
+	@Test
+	public void testIndexedDependencies() throws Exception {
+		Path filePath = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize();
+		services.getWorkspaceIndex().indexWorkspace(Arrays.asList(GradleTestConstants.testPath.normalize())).get();
+		FileSummary summary = services.getWorkspaceIndex().getSummaries().get(filePath.toString());
+		Assertions.assertNotNull(summary);
+		Assertions.assertTrue(summary.getPlugins().contains("java"));
+		Assertions.assertNotNull(services.getWorkspaceIndex().getSummaries()
+				.get(GradleTestConstants.testPath.resolve("settings.gradle").normalize().toString()));
+		// the dependencies of a document which isn't open are read from the index
+		ExecuteCommandParams params = new ExecuteCommandParams();
+		params.setCommand("gradle.getDependencies");
+		params.setArguments(Arrays.asList(new Gson().toJsonTree(filePath.toUri().toString(), String.class)));
+		List<?> dependencies = (List<?>) services.executeCommand(params).get();
+		Assertions.assertEquals(3, dependencies.size());
+		Assertions.assertEquals(3, summary.getDependencies().size());
+		Assertions.assertEquals("implementation", summary.getDependencies().get(0).getName());
+	}
+
+	@Test
+	public void testDependenciesBatch() throws Exception {
+		String appUri = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize().toUri()
+				.toString();
+		String settingsUri = GradleTestConstants.testPath.resolve("settings.gradle").normalize().toUri().toString();
+		String missingUri = GradleTestConstants.testPath.resolve("missing").resolve("build.gradle").normalize().toUri()
+				.toString();
+		ExecuteCommandParams params = new ExecuteCommandParams();
+		params.setCommand("gradle.getDependenciesBatch");
+		String[] uris = {appUri, settingsUri, missingUri};
+		params.setArguments(Arrays.asList(new Gson().toJsonTree(uris, String[].class)));
+		Map<?, ?> result = (Map<?, ?>) services.executeCommand(params).get();
+		Assertions.assertEquals(3, ((List<?>) result.get(appUri)).size());
+		Assertions.assertEquals(0, ((List<?>) result.get(settingsUri)).size());
+		Assertions.assertFalse(result.containsKey(missingUri));
+	}
+
+	@Test
+	public void testWorkspaceSymbols() throws Exception {
+		services.getWorkspaceIndex().indexWorkspace(Arrays.asList(GradleTestConstants.testPath.normalize())).get();
+		List<? extends SymbolInformation> symbols = services.symbol(new WorkspaceSymbolParams("sbst")).get();
+		Assertions.assertFalse(symbols.isEmpty());
+		SymbolInformation symbol = symbols.get(0);
+		Assertions.assertEquals("org.springframework.boot:spring-boot-starter-test", symbol.getName());
+		Assertions.assertEquals("testImplementation", symbol.getContainerName());
+		Assertions.assertEquals(
+				GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize().toUri().toString(),
+				symbol.getLocation().getUri());
+		List<? extends SymbolInformation> repositories = services.symbol(new WorkspaceSymbolParams("repositories"))
+				.get();
+		Assertions.assertEquals("repositories", repositories.get(0).getName());
+		Assertions.assertEquals(SymbolKind.Function, repositories.get(0).getKind());
+	}
 }
@@ -0,0 +1,144 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.microsoft.gradle.compile.GradleCompilationUnit;
+import com.microsoft.gradle.manager.BuildFilePrefetcher;
+import com.microsoft.gradle.manager.GradleFilesManager;
+import com.microsoft.gradle.manager.SnapshotCache;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GradlePrefetchTest {
+
+	private static String TEST_PROJECT_PATH = "./test-resources/prefetch";
+	private Path testPath;
+
+	@BeforeEach
+	void setup() {
+		testPath = Paths.get(System.getProperty("user.dir")).resolve(TEST_PROJECT_PATH).normalize();
+	}
+
+	@Test
+	public void testRelatedFiles() {
+		Assertions.assertEquals(
+				Arrays.asList(testPath.resolve("build.gradle"), testPath.resolve("settings.gradle"),
+						testPath.resolve("lib").resolve("build.gradle")),
+				BuildFilePrefetcher.getRelatedFiles(testPath.resolve("app").resolve("build.gradle"),
+						Collections.emptyList()));
+	}
+
+	@Test
+	public void testRelatedFilesOfRootScript() {
+		// the sibling folders of the root project are outside of the build
+		Assertions.assertEquals(
+				Arrays.asList(testPath.resolve("settings.gradle"), testPath.resolve("app").resolve("build.gradle"),
+						testPath.resolve("lib").resolve("build.gradle")),
+				BuildFilePrefetcher.getRelatedFiles(testPath.resolve("build.gradle"),
+						Collections.singletonList(testPath.getParent())));
+	}
+
+	@Test
+	public void testRelatedFilesWithoutSettings(@TempDir Path workspacePath) throws Exception {
+		Path app = workspacePath.resolve("app").resolve("build.gradle");
+		Path lib = workspacePath.resolve("lib").resolve("build.gradle");
+		for (Path file : Arrays.asList(app, lib)) {
+			Files.createParentDirs(file.toFile());
+			Files.touch(file.toFile());
+		}
+		Assertions.assertEquals(Collections.singletonList(lib),
+				BuildFilePrefetcher.getRelatedFiles(app, Collections.singletonList(workspacePath)));
+		// the siblings are only looked up within the workspace
+		Assertions.assertEquals(Collections.emptyList(),
+				BuildFilePrefetcher.getRelatedFiles(app, Collections.singletonList(app.getParent())));
+	}
+
+	@Test
+	public void testOpenPrefetchedUnit() throws Exception {
+		GradleFilesManager manager = new GradleFilesManager();
+		Path filePath = testPath.resolve("lib").resolve("build.gradle");
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		GradleCompilationUnit unit = manager.prefetch(filePath.toUri(), content, null);
+		Assertions.assertNotNull(unit);
+		// already prefetched
+		Assertions.assertNull(manager.prefetch(filePath.toUri(), content, null));
+		manager.didOpen(filePath.toUri(), content);
+		Assertions.assertSame(unit, manager.getCompilationUnit(filePath.toUri(), 1, /** forceRecompile */
+				false));
+	}
+
+	@Test
+	public void testPrefetchBudget() throws Exception {
+		GradleFilesManager manager = new GradleFilesManager();
+		manager.setPrefetchBudget(0);
+		Path filePath = testPath.resolve("lib").resolve("build.gradle");
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		Assertions.assertFalse(manager.isPrefetchEnabled());
+		Assertions.assertNull(manager.prefetch(filePath.toUri(), content, null));
+	}
+
+	@Test
+	public void testPrefetchSnapshots(@TempDir Path snapshotPath) throws Exception {
+		GradleServices services = new GradleServices();
+		services.connect(new LanguageClient() {
+			@Override
+			public void telemetryEvent(Object object) {
+
+			}
+
+			@Override
+			public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+				return null;
+			}
+
+			@Override
+			public void showMessage(MessageParams messageParams) {
+
+			}
+
+			@Override
+			public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+
+			}
+
+			@Override
+			public void logMessage(MessageParams message) {
+
+			}
+		});
+		Map<String, Object> settings = new HashMap<>();
+		settings.put("gradleWrapperEnabled", false);
+		settings.put("prefetchRelatedFiles", true);
+		services.applySetting(settings);
+		services.setSnapshotCache(new SnapshotCache(snapshotPath));
+		Path filePath = testPath.resolve("app").resolve("build.gradle");
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		services.didOpen(new DidOpenTextDocumentParams(
+				new TextDocumentItem(filePath.toUri().toString(), GradleTestConstants.LANGUAGE_GRADLE, 1, content)));
+		services.getPrefetcher().flush().get(30, TimeUnit.SECONDS);
+		String libContent = Files.asCharSource(testPath.resolve("lib").resolve("build.gradle").toFile(), Charsets.UTF_8)
+				.read();
+		String key = SnapshotCache.getKey(libContent, services.getLibraryResolver().getGradleAPIVersion());
+		Assertions.assertNotNull(new SnapshotCache(snapshotPath).get(key));
+	}
+}
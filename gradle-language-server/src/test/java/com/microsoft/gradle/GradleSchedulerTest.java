@@ -0,0 +1,135 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle;
+
+import com.microsoft.gradle.manager.RequestScheduler;
+import com.microsoft.gradle.manager.RequestScheduler.Priority;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GradleSchedulerTest {
+
+	private RequestScheduler scheduler;
+
+	@AfterEach
+	void tearDown() {
+		if (scheduler != null) {
+			scheduler.close();
+		}
+	}
+
+	@Test
+	public void testInteractiveHoldsBackBackground() throws Exception {
+		scheduler = new RequestScheduler(2, "test-scheduler");
+		CountDownLatch background = new CountDownLatch(1);
+		boolean ranDuringRequest = scheduler.runInteractive(() -> {
+			scheduler.executor(Priority.BACKGROUND).execute(background::countDown);
+			try {
+				return background.await(300, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return true;
+			}
+		});
+		Assertions.assertFalse(ranDuringRequest);
+		Assertions.assertTrue(background.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testAnalysisBeforeBackground() throws Exception {
+		scheduler = new RequestScheduler(1, "test-scheduler");
+		CountDownLatch blocked = blockWorker(scheduler);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		CompletableFuture<Void> background = CompletableFuture.runAsync(() -> order.add("background"),
+				scheduler.executor(Priority.BACKGROUND));
+		CompletableFuture<Void> analysis = CompletableFuture.runAsync(() -> order.add("analysis"),
+				scheduler.executor(Priority.ANALYSIS));
+		Assertions.assertEquals(1, scheduler.getMetrics().get(Priority.BACKGROUND).getQueued());
+		Assertions.assertEquals(1, scheduler.getMetrics().get(Priority.ANALYSIS).getQueued());
+		blocked.countDown();
+		CompletableFuture.allOf(background, analysis).get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals(Arrays.asList("analysis", "background"), order);
+	}
+
+	@Test
+	public void testStarvationProtection() throws Exception {
+		scheduler = new RequestScheduler(1, "test-scheduler");
+		scheduler.setStarvationThreshold(100);
+		CountDownLatch blocked = blockWorker(scheduler);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		CompletableFuture<Void> background = CompletableFuture.runAsync(() -> order.add("background"),
+				scheduler.executor(Priority.BACKGROUND));
+		Thread.sleep(300);
+		// the starved background task is promoted ahead of later analysis tasks
+		CompletableFuture<Void> analysis = CompletableFuture.runAsync(() -> order.add("analysis"),
+				scheduler.executor(Priority.ANALYSIS));
+		blocked.countDown();
+		CompletableFuture.allOf(background, analysis).get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals(Arrays.asList("background", "analysis"), order);
+	}
+
+	@Test
+	public void testInteractiveHoldsBackStarvedBackground() throws Exception {
+		scheduler = new RequestScheduler(2, "test-scheduler");
+		scheduler.setStarvationThreshold(100);
+		CountDownLatch background = new CountDownLatch(1);
+		boolean ranDuringRequest = scheduler.runInteractive(() -> {
+			scheduler.executor(Priority.BACKGROUND).execute(background::countDown);
+			try {
+				return background.await(500, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return true;
+			}
+		});
+		Assertions.assertFalse(ranDuringRequest);
+		Assertions.assertTrue(background.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		scheduler = new RequestScheduler(1, "test-scheduler");
+		CountDownLatch interrupted = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		scheduler.executor(Priority.ANALYSIS).execute(() -> {
+			started.countDown();
+			try {
+				new CountDownLatch(1).await();
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		});
+		Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+		scheduler.close();
+		Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		Assertions.assertThrows(RejectedExecutionException.class,
+				() -> scheduler.executor(Priority.BACKGROUND).execute(() -> {
+				}));
+	}
+
+	/**
+	 * @return a latch releasing the analysis task occupying a worker
+	 */
+	private static CountDownLatch blockWorker(RequestScheduler scheduler) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		scheduler.executor(Priority.ANALYSIS).execute(() -> {
+			started.countDown();
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+		return blocked;
+	}
+}
@@ -5,13 +5,21 @@ package com.microsoft.gradle;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
+import com.microsoft.gradle.manager.AnalysisSnapshot;
+import com.microsoft.gradle.manager.RequestScheduler.Metrics;
+import com.microsoft.gradle.manager.RequestScheduler.Priority;
+import com.microsoft.gradle.manager.SnapshotCache;
 import com.microsoft.gradle.semantictokens.SemanticToken;
+import com.microsoft.gradle.semantictokens.SemanticTokenLexer;
+import com.microsoft.gradle.semantictokens.TokenModifier;
 import com.microsoft.gradle.semantictokens.TokenType;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
 import org.eclipse.lsp4j.DidOpenTextDocumentParams;
 import org.eclipse.lsp4j.MessageActionItem;
 import org.eclipse.lsp4j.MessageParams;
@@ -22,18 +30,34 @@ import org.eclipse.lsp4j.ShowMessageRequestParams;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.TextDocumentItem;
 import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class GradleSemanticsTest {
 
 	private GradleServices services;
+	private LanguageClient client;
+	private CompletableFuture<Void> refreshed;
+
+	@AfterEach
+	void tearDown() {
+		services.shutdown();
+	}
 
 	@BeforeEach
 	void setup() {
 		services = new GradleServices();
-		services.connect(new LanguageClient() {
+		refreshed = new CompletableFuture<>();
+		client = new LanguageClient() {
+			@Override
+			public CompletableFuture<Void> refreshSemanticTokens() {
+				refreshed.complete(null);
+				return CompletableFuture.completedFuture(null);
+			}
+
 			@Override
 			public void telemetryEvent(Object object) {
 
@@ -58,7 +82,8 @@ public class GradleSemanticsTest {
 			public void logMessage(MessageParams message) {
 
 			}
-		});
+		};
+		services.connect(client);
 	}
 
 	@Test
@@ -86,6 +111,109 @@ public class GradleSemanticsTest {
 		Assertions.assertEquals(0, decodeTokens.get(10).getTokenModifiers());
 	}
 
+	@Test
+	public void testSemanticTokensFromSnapshot(@TempDir Path storagePath) throws Exception {
+		Path filePath = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		SnapshotCache cache = new SnapshotCache(storagePath);
+		services.setSnapshotCache(cache);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		String key = SnapshotCache.getKey(content, services.getLibraryResolver().getGradleAPIVersion());
+		// the snapshot is written in the background
+		for (int i = 0; i < 100 && cache.get(key) == null; i++) {
+			Thread.sleep(100);
+		}
+		AnalysisSnapshot snapshot = cache.get(key);
+		Assertions.assertNotNull(snapshot);
+		Assertions.assertEquals(135, snapshot.getSemanticTokens().size());
+		GradleServices restartedServices = new GradleServices();
+		restartedServices.connect(client);
+		restartedServices.setSnapshotCache(cache);
+		restartedServices.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		SemanticTokensParams params = new SemanticTokensParams(new TextDocumentIdentifier(uri));
+		List<Integer> encodedData = restartedServices.semanticTokensFull(params).get().getData();
+		Assertions.assertEquals(snapshot.getSemanticTokens(), encodedData);
+	}
+
+	@Test
+	public void testSnapshotOfClosedDocumentIsNotCompiled(@TempDir Path storagePath) throws Exception {
+		Path filePath = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		SnapshotCache cache = new SnapshotCache(storagePath);
+		services.setSnapshotCache(cache);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		String key = SnapshotCache.getKey(content, services.getLibraryResolver().getGradleAPIVersion());
+		for (int i = 0; i < 100 && cache.get(key) == null; i++) {
+			Thread.sleep(100);
+		}
+		Assertions.assertNotNull(cache.get(key));
+		GradleServices restartedServices = new GradleServices();
+		restartedServices.connect(client);
+		restartedServices.setSnapshotCache(cache);
+		restartedServices.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		restartedServices.didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(uri)));
+		// the deferred compile of the snapshot runs on the analysis workers
+		for (int i = 0; i < 100 && isAnalyzing(restartedServices); i++) {
+			Thread.sleep(100);
+		}
+		Assertions
+				.assertFalse(restartedServices.getGradleFilesManager().getUnitStorage().containsKey(filePath.toUri()));
+	}
+
+	private static boolean isAnalyzing(GradleServices services) {
+		Metrics metrics = services.getScheduler().getMetrics().get(Priority.ANALYSIS);
+		return metrics.getQueued() > 0 || metrics.getRunning() > 0;
+	}
+
+	@Test
+	public void testLexicalTokensForUnparsableScript() throws Exception {
+		Path filePath = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize();
+		String uri = filePath.toUri().toString();
+		String content = "plugins {\n\tid 'java'\n}\n\ndependencies {\n\timplementation 'a:b:1.0'\n"
+				+ "\texclude group: 'c'\n";
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		SemanticTokensParams params = new SemanticTokensParams(new TextDocumentIdentifier(uri));
+		List<SemanticToken> tokens = SemanticTokenLexer.getSemanticTokens(content);
+		// sorts the tokens too
+		List<Integer> encodedData = SemanticToken.encodedTokens(tokens);
+		Assertions.assertEquals(encodedData, services.semanticTokensFull(params).get().getData());
+		Assertions.assertEquals(9, tokens.size());
+		assertToken(tokens.get(0), 1, 1, 7, TokenType.FUNCTION);
+		assertToken(tokens.get(1), 2, 2, 2, TokenType.FUNCTION);
+		assertToken(tokens.get(2), 2, 5, 6, TokenType.STRING);
+		assertToken(tokens.get(3), 5, 1, 12, TokenType.FUNCTION);
+		Assertions.assertEquals(TokenModifier.DEFAULT_LIBRARY.bitmask, tokens.get(3).getTokenModifiers());
+		assertToken(tokens.get(4), 6, 2, 14, TokenType.FUNCTION);
+		assertToken(tokens.get(5), 6, 17, 9, TokenType.STRING);
+		assertToken(tokens.get(7), 7, 10, 5, TokenType.PARAMETER);
+	}
+
+	@Test
+	public void testRefreshLexicalTokensAfterCompilation() throws Exception {
+		Path filePath = GradleTestConstants.testPath.resolve("app").resolve("build.gradle").normalize();
+		String content = Files.asCharSource(filePath.toFile(), Charsets.UTF_8).read();
+		String uri = filePath.toUri().toString();
+		TextDocumentItem textDocumentItem = new TextDocumentItem(uri, GradleTestConstants.LANGUAGE_GRADLE, 1, content);
+		services.setSemanticTokensRefreshSupport(true);
+		services.didOpen(new DidOpenTextDocumentParams(textDocumentItem));
+		SemanticTokensParams params = new SemanticTokensParams(new TextDocumentIdentifier(uri));
+		Assertions.assertFalse(services.semanticTokensFull(params).get().getData().isEmpty());
+		refreshed.get(10, TimeUnit.SECONDS);
+		Assertions.assertEquals(135, services.semanticTokensFull(params).get().getData().size());
+	}
+
+	private static void assertToken(SemanticToken token, int line, int column, int length, TokenType tokenType) {
+		Assertions.assertEquals(line, token.getLine());
+		Assertions.assertEquals(column, token.getColumn());
+		Assertions.assertEquals(length, token.getLength());
+		Assertions.assertEquals(tokenType, token.getTokenType());
+	}
+
 	private static List<SemanticToken> decodeTokens(List<Integer> encodedData) {
 		if (encodedData.size() % 5 != 0) {
 			// invalid data list
@@ -0,0 +1,118 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.resolver;
+
+import com.microsoft.gradle.resolver.ClassNameIndex.ClassLookup;
+import com.microsoft.gradle.resolver.ClassNameIndex.JarClasses;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ClassNameIndexTest {
+	@TempDir
+	Path tempDir;
+
+	private ClassNameIndex index;
+
+	@BeforeEach
+	public void setUp() {
+		index = new ClassNameIndex();
+	}
+
+	private File createJar(String name, String... classNames) throws IOException {
+		File jar = tempDir.resolve(name).toFile();
+		try (OutputStream output = Files.newOutputStream(jar.toPath());
+				JarOutputStream jarOutput = new JarOutputStream(output)) {
+			for (String className : classNames) {
+				jarOutput.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+				jarOutput.write(new byte[]{(byte) 0xCA, (byte) 0xFE});
+				jarOutput.closeEntry();
+			}
+			jarOutput.putNextEntry(new JarEntry("META-INF/versions/9/module-info.class"));
+			jarOutput.closeEntry();
+		}
+		return jar;
+	}
+
+	@Test
+	public void testJarClasses() throws IOException {
+		File jar = createJar("a.jar", "org.example.A", "org.example.B");
+		JarClasses classes = index.getJarClasses(jar.getPath());
+		Assertions.assertEquals(new java.util.HashSet<>(Arrays.asList("org.example.A", "org.example.B")),
+				classes.getClassNames());
+		Assertions.assertSame(classes, index.getJarClasses(jar.getPath()));
+		Assertions.assertNull(index.getJarClasses(tempDir.resolve("missing.jar").toString()));
+		Assertions.assertNull(index.getJarClasses(tempDir.toString()));
+	}
+
+	@Test
+	public void testIdenticalJarsShareTheirClasses() throws IOException {
+		File jar = createJar("a.jar", "org.example.A");
+		File copy = tempDir.resolve("copy.jar").toFile();
+		Files.copy(jar.toPath(), copy.toPath());
+		Assertions.assertSame(index.getJarClasses(jar.getPath()), index.getJarClasses(copy.getPath()));
+		// mapped to the jar as it appears on the classpath
+		ClassLookup lookup = index.getLookup(Collections.singletonList(copy.getPath()));
+		Assertions.assertEquals(copy, lookup.getJar("org.example.A"));
+	}
+
+	@Test
+	public void testChangedJarIsScannedAgain() throws IOException {
+		File jar = createJar("a.jar", "org.example.A");
+		ClassLookup lookup = index.getLookup(Collections.singletonList(jar.getPath()));
+		Assertions.assertEquals(jar, lookup.getJar("org.example.A"));
+
+		createJar("a.jar", "org.example.A", "org.example.C");
+		Assertions.assertTrue(jar.setLastModified(jar.lastModified() + 10_000));
+		Assertions.assertTrue(index.getJarClasses(jar.getPath()).getClassNames().contains("org.example.C"));
+		ClassLookup changedLookup = index.getLookup(Collections.singletonList(jar.getPath()));
+		Assertions.assertNotSame(lookup, changedLookup);
+		Assertions.assertEquals(jar, changedLookup.getJar("org.example.C"));
+	}
+
+	@Test
+	public void testLookupMiss() throws IOException {
+		File jar = createJar("a.jar", "org.example.A");
+		ClassLookup lookup = index.getLookup(Arrays.asList(jar.getPath(), tempDir.toString()));
+		Assertions.assertEquals(1, lookup.size());
+		Assertions.assertNull(lookup.getJar("org.example.Missing"));
+		Assertions.assertNull(lookup.getJar("module-info"));
+		Assertions.assertSame(ClassLookup.EMPTY, index.getLookup(null));
+		Assertions.assertSame(ClassLookup.EMPTY, index.getLookup(Collections.emptyList()));
+	}
+
+	@Test
+	public void testFirstJarOnTheClasspathWins() throws IOException {
+		File first = createJar("first.jar", "org.example.A");
+		File second = createJar("second.jar", "org.example.A", "org.example.B");
+		ClassLookup lookup = index.getLookup(Arrays.asList(first.getPath(), second.getPath()));
+		Assertions.assertEquals(first, lookup.getJar("org.example.A"));
+		Assertions.assertEquals(second, lookup.getJar("org.example.B"));
+	}
+
+	@Test
+	public void testLookupsAreEvictedLeastRecentlyUsedFirst() throws IOException {
+		File jar = createJar("a.jar", "org.example.A");
+		ClassLookup first = index.getLookup(Collections.singletonList(jar.getPath()));
+		ClassLookup second = index.getLookup(Arrays.asList(jar.getPath(), tempDir.resolve("0").toString()));
+		for (int i = 1; i < 16; i++) {
+			// keeps the first lookup the most recently used one
+			Assertions.assertSame(first, index.getLookup(Collections.singletonList(jar.getPath())));
+			index.getLookup(Arrays.asList(jar.getPath(), tempDir.resolve(String.valueOf(i)).toString()));
+		}
+		Assertions.assertSame(first, index.getLookup(Collections.singletonList(jar.getPath())));
+		Assertions.assertNotSame(second,
+				index.getLookup(Arrays.asList(jar.getPath(), tempDir.resolve("0").toString())));
+	}
+}
@@ -0,0 +1,54 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT license.
+
+package com.microsoft.gradle.api;
+
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildActionExecuter;
+import org.gradle.tooling.BuildController;
+import org.gradle.tooling.IntermediateResultHandler;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.model.GradleProject;
+
+/**
+ * Fetches the task tree and the IDE model of a build in a single build
+ * invocation, so a sync configures the build once.
+ *
+ * The task tree is handed over as soon as the projects are configured, before
+ * the IDE model resolves the dependencies. Phased actions need Gradle 4.8 or
+ * later.
+ */
+public class GradleSyncAction {
+
+	public static class ProjectTreeAction implements BuildAction<GradleProject> {
+		@Override
+		public GradleProject execute(BuildController controller) {
+			return controller.getModel(GradleProject.class);
+		}
+	}
+
+	public static class ProjectModelAction implements BuildAction<GradleProjectModel> {
+		/**
+		 * @return the IDE model, or null if the plugin isn't applied to the build
+		 */
+		@Override
+		public GradleProjectModel execute(BuildController controller) {
+			return controller.findModel(GradleProjectModel.class);
+		}
+	}
+
+	/**
+	 * Fetches the task tree only, the build stops once the projects are configured.
+	 */
+	public static BuildActionExecuter<Void> create(ProjectConnection connection,
+			IntermediateResultHandler<GradleProject> projectTreeHandler) {
+		return connection.action().projectsLoaded(new ProjectTreeAction(), projectTreeHandler).build();
+	}
+
+	public static BuildActionExecuter<Void> create(ProjectConnection connection,
+			IntermediateResultHandler<GradleProject> projectTreeHandler,
+			IntermediateResultHandler<GradleProjectModel> projectModelHandler) {
+		return connection.action().projectsLoaded(new ProjectTreeAction(), projectTreeHandler)
+				.buildFinished(new ProjectModelAction(), projectModelHandler).build();
+	}
+}
@@ -0,0 +1,402 @@
+package com.github.badsyntax.gradle;
+
+import com.google.common.base.Strings;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the project tree of each build, so a sync doesn't configure the build
+ * again when its build logic didn't change.
+ *
+ * A cached project is valid as long as the fingerprint of the build logic
+ * matches: the content of the build and settings scripts, the gradle.properties
+ * files, the version catalogs, the wrapper properties, the sources of buildSrc
+ * and of the included builds, and the Gradle config. The cache is persisted, so
+ * it survives server restarts.
+ */
+public class GradleBuildModelCache {
+	private static final Logger logger = LoggerFactory.getLogger(GradleBuildModelCache.class.getName());
+
+	// bumped when the persisted format changes
+	private static final int VERSION = 3;
+	private static final List<String> SKIPPED_FOLDERS = Arrays.asList("build", "out", "node_modules");
+	// the source sets of a project hold no build logic, unless it's a build of
+	// the build logic
+	private static final String SOURCES_FOLDER = "src";
+	private static final List<String> BUILD_LOGIC_FOLDERS = Arrays.asList("buildSrc", "build-logic");
+	private static final List<String> SETTINGS_FILES = Arrays.asList("settings.gradle", "settings.gradle.kts");
+	private static final Pattern INCLUDED_BUILD = Pattern.compile("includeBuild\\s*\\(?\\s*[\"']([^\"']+)[\"']");
+	// how long (in milliseconds) a fingerprint is reused by the requests of a
+	// burst, e.g. the GetTasks requests of the projects of a build
+	private static final long FINGERPRINT_TIME_TO_LIVE = 1000;
+
+	public static class Entry {
+		private final String fingerprint;
+		private final Environment environment;
+		private final GradleBuild build;
+
+		public Entry(String fingerprint, Environment environment, GradleBuild build) {
+			this.fingerprint = fingerprint;
+			this.environment = environment;
+			this.build = build;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public Environment getEnvironment() {
+			return environment;
+		}
+
+		public GradleBuild getBuild() {
+			return build;
+		}
+	}
+
+	private static class Fingerprint {
+		private final String value;
+		private final long computedAt = System.nanoTime();
+
+		private Fingerprint(String value) {
+			this.value = value;
+		}
+	}
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+	// <key, completion> of the entries being revalidated
+	private final Map<String, CompletableFuture<Void>> revalidations = new ConcurrentHashMap<>();
+	private final Path cacheDir;
+
+	/**
+	 * @param cacheDir
+	 *            the folder the entries are persisted to, or null to keep them in
+	 *            memory only
+	 */
+	public GradleBuildModelCache(Path cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * @return the cached project of the build, whether it's still valid or not, or
+	 *         null if there's none
+	 */
+	public Entry get(String projectDir, GradleConfig config) {
+		String key = getKey(projectDir, config);
+		return entries.computeIfAbsent(key, this::load);
+	}
+
+	/**
+	 * @param entry
+	 *            the entry, with the tasks of its project compact, whatever the
+	 *            encoding the requests ask for
+	 */
+	public void put(String projectDir, GradleConfig config, Entry entry) {
+		String key = getKey(projectDir, config);
+		entries.put(key, entry);
+		save(key, entry);
+	}
+
+	/**
+	 * Runs the revalidation of a stale entry on the executor, unless the entry is
+	 * already being revalidated.
+	 */
+	public void revalidate(String projectDir, GradleConfig config, Executor executor, Runnable revalidation) {
+		String key = getKey(projectDir, config);
+		CompletableFuture<Void> completion = new CompletableFuture<>();
+		if (revalidations.putIfAbsent(key, completion) != null) {
+			return;
+		}
+		executor.execute(() -> {
+			try {
+				revalidation.run();
+			} finally {
+				revalidations.remove(key);
+				completion.complete(null);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the revalidation of the entry, if any, so the request following a
+	 * stale reply gets the refreshed entry.
+	 *
+	 * @return whether the entry was being revalidated
+	 */
+	public boolean awaitRevalidation(String projectDir, GradleConfig config) {
+		CompletableFuture<Void> completion = revalidations.get(getKey(projectDir, config));
+		if (completion == null) {
+			return false;
+		}
+		try {
+			completion.get();
+		} catch (ExecutionException e) {
+			// completed normally only
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the fingerprint of the build logic of the build, reusing the one
+	 *         computed by a request of the same burst, or null if it couldn't be
+	 *         read
+	 */
+	public String getRecentFingerprint(String projectDir, GradleConfig config) {
+		String key = getKey(projectDir, config);
+		Fingerprint fingerprint = fingerprints.get(key);
+		if (fingerprint == null || System.nanoTime() - fingerprint.computedAt > TimeUnit.MILLISECONDS
+				.toNanos(FINGERPRINT_TIME_TO_LIVE)) {
+			fingerprint = new Fingerprint(getFingerprint(projectDir, config));
+			fingerprints.put(key, fingerprint);
+		}
+		return fingerprint.value;
+	}
+
+	/**
+	 * @return the fingerprint of the build logic of the build, or null if it
+	 *         couldn't be read
+	 */
+	public static String getFingerprint(String projectDir, GradleConfig config) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			update(digest, String.valueOf(VERSION));
+			for (String value : GradleProjectConnectionPool.getKey(projectDir, config)) {
+				update(digest, Strings.nullToEmpty(value));
+			}
+			Path root = Paths.get(projectDir);
+			for (Path file : getBuildLogicFiles(root)) {
+				update(digest, root.relativize(file).toString());
+				digest.update(Files.readAllBytes(file));
+			}
+			Path userProperties = getGradleUserHome(projectDir, config).resolve("gradle.properties");
+			if (Files.isRegularFile(userProperties)) {
+				digest.update(Files.readAllBytes(userProperties));
+			}
+			return toHex(digest.digest());
+		} catch (IOException | NoSuchAlgorithmException e) {
+			logger.warn("Could not fingerprint the build logic: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	private static List<Path> getBuildLogicFiles(Path root) throws IOException {
+		Set<Path> buildLogicRoots = getBuildLogicRoots(root);
+		Set<Path> files = new TreeSet<>();
+		collectBuildLogicFiles(root, buildLogicRoots, files);
+		for (Path buildLogicRoot : buildLogicRoots) {
+			// e.g. an included build next to the root project
+			if (!buildLogicRoot.startsWith(root)) {
+				collectBuildLogicFiles(buildLogicRoot, buildLogicRoots, files);
+			}
+		}
+		// sorted, as the walk order depends on the file system
+		return new ArrayList<>(files);
+	}
+
+	/**
+	 * @return the folders of the builds compiling build logic: buildSrc, the
+	 *         conventional build-logic folder, and the builds included by the
+	 *         settings script
+	 */
+	private static Set<Path> getBuildLogicRoots(Path root) {
+		Set<Path> roots = new LinkedHashSet<>();
+		for (String folder : BUILD_LOGIC_FOLDERS) {
+			roots.add(root.resolve(folder));
+		}
+		for (String settingsFile : SETTINGS_FILES) {
+			Path settings = root.resolve(settingsFile);
+			if (!Files.isRegularFile(settings)) {
+				continue;
+			}
+			try {
+				Matcher matcher = INCLUDED_BUILD
+						.matcher(new String(Files.readAllBytes(settings), StandardCharsets.UTF_8));
+				while (matcher.find()) {
+					roots.add(root.resolve(matcher.group(1)).normalize());
+				}
+			} catch (IOException e) {
+				// the settings script itself is fingerprinted
+			}
+		}
+		roots.removeIf(folder -> !Files.isDirectory(folder));
+		return roots;
+	}
+
+	/**
+	 * Collects the scripts and properties of the projects under the folder, and
+	 * every file of the builds of the build logic, without walking into the source
+	 * sets of the other projects.
+	 */
+	private static void collectBuildLogicFiles(Path folder, Set<Path> buildLogicRoots, Set<Path> files)
+			throws IOException {
+		Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+			// the build of the build logic being walked, if any
+			private Path buildLogicRoot = buildLogicRoots.contains(folder) ? folder : null;
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+				if (!dir.equals(folder) && (name.startsWith(".") || SKIPPED_FOLDERS.contains(name))) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				if (buildLogicRoot == null && buildLogicRoots.contains(dir)) {
+					buildLogicRoot = dir;
+				} else if (buildLogicRoot == null && name.equals(SOURCES_FOLDER)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+				if (dir.equals(buildLogicRoot) && !dir.equals(folder)) {
+					buildLogicRoot = null;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && (buildLogicRoot != null || isBuildLogic(file))) {
+					files.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static boolean isBuildLogic(Path file) {
+		String name = file.getFileName().toString();
+		return name.endsWith(".gradle") || name.endsWith(".gradle.kts") || name.equals("gradle.properties")
+				|| name.endsWith(".versions.toml") || name.equals("gradle-wrapper.properties");
+	}
+
+	private static Path getGradleUserHome(String projectDir, GradleConfig config) {
+		if (!Strings.isNullOrEmpty(config.getUserHome())) {
+			return GradleProjectConnector.buildGradleUserHomeFile(config.getUserHome(), projectDir).toPath();
+		}
+		String userHome = System.getenv("GRADLE_USER_HOME");
+		if (!Strings.isNullOrEmpty(userHome)) {
+			return Paths.get(userHome);
+		}
+		return Paths.get(System.getProperty("user.home"), ".gradle");
+	}
+
+	private static String getKey(String projectDir, GradleConfig config) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String value : GradleProjectConnectionPool.getKey(projectDir, config)) {
+				update(digest, Strings.nullToEmpty(value));
+			}
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		// separates the values
+		digest.update((byte) 0);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private Entry load(String key) {
+		if (cacheDir == null) {
+			return null;
+		}
+		File file = cacheDir.resolve(key).toFile();
+		if (!file.isFile()) {
+			return null;
+		}
+		try (InputStream input = Files.newInputStream(file.toPath());
+				DataInputStream data = new DataInputStream(input)) {
+			if (data.readInt() != VERSION) {
+				return null;
+			}
+			String fingerprint = data.readUTF();
+			Environment environment = Environment.parseFrom(readBytes(data));
+			GradleBuild build = GradleBuild.parseFrom(readBytes(data));
+			return new Entry(fingerprint, environment, build);
+		} catch (IOException e) {
+			logger.warn("Could not read the cached project: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return bytes;
+	}
+
+	private void save(String key, Entry entry) {
+		if (cacheDir == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(cacheDir);
+			Path tempFile = Files.createTempFile(cacheDir, key, ".tmp");
+			try (OutputStream output = Files.newOutputStream(tempFile);
+					DataOutputStream data = new DataOutputStream(output)) {
+				data.writeInt(VERSION);
+				data.writeUTF(entry.getFingerprint());
+				writeBytes(data, entry.getEnvironment().toByteArray());
+				writeBytes(data, entry.getBuild().toByteArray());
+			}
+			Files.move(tempFile, cacheDir.resolve(key), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("Could not persist the cached project: {}", e.getMessage());
+		}
+	}
+
+	private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+}
@@ -38,6 +38,7 @@ public class GradleBuildRunner {
 	private InputStream standardInputStream;
 	private ProgressListener progressListener;
 	private Boolean javaDebugCleanOutputCache;
+	private GradleProjectConnectionPool connectionPool;
 
 	public GradleBuildRunner(String projectDir, List<String> args, GradleConfig gradleConfig, String cancellationKey,
 			Boolean colorOutput, int javaDebugPort, Boolean javaDebugCleanOutputCache) {
@@ -54,6 +55,14 @@ public class GradleBuildRunner {
 		this(projectDir, args, gradleConfig, cancellationKey, true, 0, false);
 	}
 
+	/**
+	 * Runs the build on a pooled connection, instead of a connection of its own.
+	 */
+	public GradleBuildRunner setConnectionPool(GradleProjectConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+		return this;
+	}
+
 	public GradleBuildRunner setStandardOutputStream(OutputStream standardOutputStream) {
 		this.standardOutputStream = standardOutputStream;
 		return this;
@@ -78,9 +87,23 @@ public class GradleBuildRunner {
 		if (Boolean.TRUE.equals(args.isEmpty())) {
 			throw new GradleBuildRunnerException("No args supplied");
 		}
-		GradleConnector gradleConnector = GradleProjectConnector.build(projectDir, gradleConfig);
-		try (ProjectConnection connection = gradleConnector.connect()) {
-			runBuild(connection);
+		if (connectionPool == null) {
+			// a one-off connection, which isn't registered anywhere
+			GradleConnector gradleConnector = GradleProjectConnector.build(projectDir, gradleConfig);
+			try (ProjectConnection connection = gradleConnector.connect()) {
+				runBuild(connection);
+			} finally {
+				GradleBuildCancellation.clearToken(cancellationKey);
+			}
+			return;
+		}
+		try (GradleProjectConnectionPool.Lease lease = connectionPool.acquire(projectDir, gradleConfig)) {
+			try {
+				runBuild(lease.getConnection());
+			} catch (org.gradle.tooling.GradleConnectionException e) {
+				lease.discard();
+				throw e;
+			}
 		} finally {
 			GradleBuildCancellation.clearToken(cancellationKey);
 		}
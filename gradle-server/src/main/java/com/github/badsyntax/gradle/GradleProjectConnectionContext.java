@@ -0,0 +1,33 @@
+package com.github.badsyntax.gradle;
+
+/**
+ * How the connections of a project reach their Gradle distribution, which the
+ * daemon operations use to run the same distribution.
+ */
+public class GradleProjectConnectionContext {
+	public static final GradleProjectConnectionContext WRAPPER = new GradleProjectConnectionContext(
+			GradleProjectConnectionType.WRAPPER, null, null);
+
+	private final GradleProjectConnectionType connectionType;
+	private final String gradleVersion;
+	private final String localInstallation;
+
+	public GradleProjectConnectionContext(GradleProjectConnectionType connectionType, String gradleVersion,
+			String localInstallation) {
+		this.connectionType = connectionType;
+		this.gradleVersion = gradleVersion;
+		this.localInstallation = localInstallation;
+	}
+
+	public GradleProjectConnectionType getConnectionType() {
+		return connectionType;
+	}
+
+	public String getGradleVersion() {
+		return gradleVersion;
+	}
+
+	public String getLocalInstallation() {
+		return localInstallation;
+	}
+}
@@ -0,0 +1,231 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.gradle.tooling.ProjectConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reuses tooling API connections across requests, so a repeated task run or
+ * refresh doesn't pay for the connector setup, the distribution resolution and
+ * the daemon handshake again.
+ *
+ * Connections are keyed by everything that affects them: the project directory,
+ * the Gradle user home, the wrapper, version and installation settings and the
+ * JVM arguments. A ProjectConnection is thread-safe, so concurrent requests
+ * share the same one. A connection is closed once it has been idle for the idle
+ * timeout, or when the pool is closed.
+ */
+public class GradleProjectConnectionPool implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(GradleProjectConnectionPool.class.getName());
+
+	public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(3);
+
+	private static class Entry {
+		private final List<String> key;
+		private final ProjectConnection connection;
+		private int leases;
+		private long lastUsed = System.nanoTime();
+
+		private Entry(List<String> key, ProjectConnection connection) {
+			this.key = key;
+			this.connection = connection;
+		}
+	}
+
+	/**
+	 * A connection borrowed from the pool, returned to it when closed.
+	 */
+	public class Lease implements AutoCloseable {
+		private final Entry entry;
+		private boolean closed;
+
+		private Lease(Entry entry) {
+			this.entry = entry;
+		}
+
+		public ProjectConnection getConnection() {
+			return entry.connection;
+		}
+
+		/**
+		 * Closes the connection once it's returned, instead of reusing it, e.g. after
+		 * it failed to connect to the daemon.
+		 */
+		public void discard() {
+			synchronized (GradleProjectConnectionPool.this) {
+				if (connections.get(entry.key) == entry) {
+					connections.remove(entry.key);
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			release(this);
+		}
+	}
+
+	// all fields are guarded by this
+	private final Map<List<String>, Entry> connections = new HashMap<>();
+	private final GradleProjectConnectionRegistry registry = new GradleProjectConnectionRegistry();
+	private final long idleTimeout;
+	private ScheduledExecutorService evictionExecutor;
+	private boolean closed;
+
+	public GradleProjectConnectionPool() {
+		this(DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * @param idleTimeout
+	 *            how long (in milliseconds) an unused connection is kept open, a
+	 *            non-positive value closes connections as soon as they are returned
+	 */
+	public GradleProjectConnectionPool(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @return the connection contexts of the projects connected through this pool
+	 */
+	public GradleProjectConnectionRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Records the connection context of the project, for a request that doesn't
+	 * connect.
+	 */
+	public void register(String projectDir, GradleConfig config) throws GradleConnectionException {
+		registry.register(projectDir, GradleProjectConnector.getContext(config));
+	}
+
+	public Lease acquire(String projectDir, GradleConfig config) throws GradleConnectionException {
+		register(projectDir, config);
+		List<String> key = getKey(projectDir, config);
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The connection pool is closed");
+			}
+			Entry entry = connections.get(key);
+			if (entry != null) {
+				entry.leases++;
+				return new Lease(entry);
+			}
+		}
+		// connect outside of the lock, a concurrent request for the same key may
+		// connect too, in which case the first connection wins
+		ProjectConnection connection = GradleProjectConnector.build(projectDir, config).connect();
+		synchronized (this) {
+			Entry entry = connections.get(key);
+			if (entry == null && !closed) {
+				entry = new Entry(key, connection);
+				connections.put(key, entry);
+				scheduleEviction();
+			} else {
+				connection.close();
+				if (entry == null) {
+					throw new IllegalStateException("The connection pool is closed");
+				}
+			}
+			entry.leases++;
+			return new Lease(entry);
+		}
+	}
+
+	static List<String> getKey(String projectDir, GradleConfig config) {
+		return Arrays.asList(projectDir, config.getUserHome(), String.valueOf(config.getWrapperEnabled()),
+				config.getVersion(), config.getGradleHome(), config.getJvmArguments());
+	}
+
+	private void release(Lease lease) {
+		ProjectConnection toClose = null;
+		synchronized (this) {
+			if (lease.closed) {
+				return;
+			}
+			lease.closed = true;
+			Entry entry = lease.entry;
+			entry.leases--;
+			entry.lastUsed = System.nanoTime();
+			boolean pooled = connections.get(entry.key) == entry;
+			if (entry.leases == 0 && (!pooled || idleTimeout <= 0)) {
+				if (pooled) {
+					connections.remove(entry.key);
+				}
+				toClose = entry.connection;
+			}
+		}
+		close(toClose);
+	}
+
+	private void scheduleEviction() {
+		if (evictionExecutor != null || idleTimeout <= 0) {
+			return;
+		}
+		evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "gradle-connection-eviction");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1, idleTimeout / 2);
+		evictionExecutor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	void evictIdleConnections() {
+		List<ProjectConnection> toClose = new ArrayList<>();
+		synchronized (this) {
+			long now = System.nanoTime();
+			connections.values().removeIf(entry -> {
+				boolean idle = entry.leases == 0 && now - entry.lastUsed >= TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+				if (idle) {
+					toClose.add(entry.connection);
+				}
+				return idle;
+			});
+		}
+		toClose.forEach(this::close);
+	}
+
+	public synchronized int size() {
+		return connections.size();
+	}
+
+	/**
+	 * Closes all the pooled connections, including the ones still in use.
+	 */
+	@Override
+	public void close() {
+		List<ProjectConnection> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<>();
+			connections.values().forEach(entry -> toClose.add(entry.connection));
+			connections.clear();
+			if (evictionExecutor != null) {
+				evictionExecutor.shutdownNow();
+			}
+		}
+		toClose.forEach(this::close);
+	}
+
+	private void close(ProjectConnection connection) {
+		if (connection == null) {
+			return;
+		}
+		try {
+			connection.close();
+		} catch (RuntimeException e) {
+			logger.warn("Could not close the connection: {}", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.github.badsyntax.gradle;
+
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The connection context of each project, recorded whenever a connection to the
+ * project is requested, so concurrent requests for projects using different
+ * distributions don't overwrite each other's context.
+ */
+public class GradleProjectConnectionRegistry {
+
+	private final Map<String, GradleProjectConnectionContext> contexts = new ConcurrentHashMap<>();
+
+	public void register(String projectDir, GradleProjectConnectionContext context) {
+		contexts.put(getKey(projectDir), context);
+	}
+
+	/**
+	 * @return the context of the last connection requested for the project, or the
+	 *         wrapper context if none was requested yet
+	 */
+	public GradleProjectConnectionContext get(String projectDir) {
+		return contexts.getOrDefault(getKey(projectDir), GradleProjectConnectionContext.WRAPPER);
+	}
+
+	private static String getKey(String projectDir) {
+		return Paths.get(projectDir).toAbsolutePath().normalize().toString();
+	}
+}
@@ -11,9 +11,6 @@ public class GradleProjectConnector {
 	private GradleProjectConnector() {
 	}
 
-	private static GradleProjectConnectionType connectionType = GradleProjectConnectionType.WRAPPER;
-	private static String localInstallation;
-
 	public static GradleConnector build(String projectDir, GradleConfig config) throws GradleConnectionException {
 		GradleConnector connector = GradleConnector.newConnector().forProjectDirectory(new File(projectDir));
 		setConnectorConfig(connector, projectDir, config);
@@ -25,34 +22,36 @@ public class GradleProjectConnector {
 		if (!Strings.isNullOrEmpty(config.getUserHome())) {
 			gradleConnector.useGradleUserHomeDir(buildGradleUserHomeFile(config.getUserHome(), projectDir));
 		}
-		if (!config.getWrapperEnabled()) {
-			if (!Strings.isNullOrEmpty(config.getVersion())) {
-				GradleProjectConnector.connectionType = GradleProjectConnectionType.SPECIFICVERSION;
-				gradleConnector.useGradleVersion(config.getVersion());
-			} else if (!Strings.isNullOrEmpty(config.getGradleHome())) {
-				GradleProjectConnector.connectionType = GradleProjectConnectionType.LOCALINSTALLATION;
-				GradleProjectConnector.localInstallation = config.getGradleHome();
-				gradleConnector.useInstallation(new File(GradleProjectConnector.localInstallation));
-			} else {
-				throw new GradleConnectionException("java.import.gradle.home is invalid, please check it again.");
-			}
-		} else {
-			GradleProjectConnector.connectionType = GradleProjectConnectionType.WRAPPER;
+		GradleProjectConnectionContext context = getContext(config);
+		if (context.getConnectionType() == GradleProjectConnectionType.SPECIFICVERSION) {
+			gradleConnector.useGradleVersion(context.getGradleVersion());
+		} else if (context.getConnectionType() == GradleProjectConnectionType.LOCALINSTALLATION) {
+			gradleConnector.useInstallation(new File(context.getLocalInstallation()));
+		}
+	}
+
+	/**
+	 * @return how a connector built with the given config reaches its distribution
+	 */
+	public static GradleProjectConnectionContext getContext(GradleConfig config) throws GradleConnectionException {
+		if (config.getWrapperEnabled()) {
+			return GradleProjectConnectionContext.WRAPPER;
+		}
+		if (!Strings.isNullOrEmpty(config.getVersion())) {
+			return new GradleProjectConnectionContext(GradleProjectConnectionType.SPECIFICVERSION, config.getVersion(),
+					null);
 		}
+		if (!Strings.isNullOrEmpty(config.getGradleHome())) {
+			return new GradleProjectConnectionContext(GradleProjectConnectionType.LOCALINSTALLATION, null,
+					config.getGradleHome());
+		}
+		throw new GradleConnectionException("java.import.gradle.home is invalid, please check it again.");
 	}
 
-	private static File buildGradleUserHomeFile(String gradleUserHome, String projectDir) {
+	static File buildGradleUserHomeFile(String gradleUserHome, String projectDir) {
 		String gradleUserHomePath = Paths.get(gradleUserHome).isAbsolute()
 				? gradleUserHome
 				: Paths.get(projectDir, gradleUserHome).toAbsolutePath().toString();
 		return new File(gradleUserHomePath);
 	}
-
-	public static GradleProjectConnectionType getConnectionType() {
-		return GradleProjectConnector.connectionType;
-	}
-
-	public static String getLocalInstallation() {
-		return GradleProjectConnector.localInstallation;
-	}
 }
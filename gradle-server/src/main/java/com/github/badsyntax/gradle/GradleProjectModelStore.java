@@ -0,0 +1,62 @@
+package com.github.badsyntax.gradle;
+
+import com.microsoft.gradle.api.GradleProjectModel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the IDE model fetched by a sync over to the project content request
+ * following it, so a sync configures the build once.
+ *
+ * A model is handed over at most once and only within the time to live, so the
+ * later requests see the changes made to the build since.
+ */
+public class GradleProjectModelStore {
+	public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(1);
+
+	private static class Entry {
+		private final CompletableFuture<GradleProjectModel> model = new CompletableFuture<>();
+		private final long createdAt = System.nanoTime();
+	}
+
+	private final Map<List<String>, Entry> models = new ConcurrentHashMap<>();
+	private final long timeToLive;
+
+	public GradleProjectModelStore() {
+		this(DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * @param timeToLive
+	 *            how long (in milliseconds) a model is handed over after its sync
+	 *            started
+	 */
+	public GradleProjectModelStore(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Registers the model a sync is about to fetch. The returned future is
+	 * completed with the model, or with null if the sync doesn't fetch it.
+	 */
+	public CompletableFuture<GradleProjectModel> expect(String projectDir, GradleConfig config) {
+		Entry entry = new Entry();
+		models.put(GradleProjectConnectionPool.getKey(projectDir, config), entry);
+		return entry.model;
+	}
+
+	/**
+	 * @return the model of the last sync of the project, which may still be
+	 *         fetched, or null if there's none to hand over
+	 */
+	public CompletableFuture<GradleProjectModel> take(String projectDir, GradleConfig config) {
+		Entry entry = models.remove(GradleProjectConnectionPool.getKey(projectDir, config));
+		if (entry == null || System.nanoTime() - entry.createdAt > TimeUnit.MILLISECONDS.toNanos(timeToLive)) {
+			return null;
+		}
+		return entry.model;
+	}
+}
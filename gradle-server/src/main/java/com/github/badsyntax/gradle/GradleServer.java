@@ -3,6 +3,8 @@ package com.github.badsyntax.gradle;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,14 +14,30 @@ public class GradleServer {
 
 	private final int port;
 	private final Server server;
+	private final GradleService service;
 
 	public GradleServer(int port) {
 		this(ServerBuilder.forPort(port), port);
 	}
 
+	public GradleServer(int port, long connectionIdleTimeout, Path modelCacheDir) {
+		this(ServerBuilder.forPort(port), port, new GradleService(
+				new GradleProjectConnectionPool(connectionIdleTimeout), new GradleBuildModelCache(modelCacheDir)));
+	}
+
 	public GradleServer(ServerBuilder<?> serverBuilder, int port) {
+		this(serverBuilder, port, GradleProjectConnectionPool.DEFAULT_IDLE_TIMEOUT);
+	}
+
+	public GradleServer(ServerBuilder<?> serverBuilder, int port, long connectionIdleTimeout) {
+		this(serverBuilder, port, new GradleService(new GradleProjectConnectionPool(connectionIdleTimeout),
+				new GradleBuildModelCache(null)));
+	}
+
+	public GradleServer(ServerBuilder<?> serverBuilder, int port, GradleService service) {
 		this.port = port;
-		server = serverBuilder.addService(new GradleService()).build();
+		this.service = service;
+		server = serverBuilder.addService(service).build();
 	}
 
 	@SuppressWarnings("java:S106")
@@ -45,6 +63,7 @@ public class GradleServer {
 		if (server != null) {
 			server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
 		}
+		service.close();
 	}
 
 	private void blockUntilShutdown() throws InterruptedException {
@@ -58,7 +77,27 @@ public class GradleServer {
 		if (args.length > 0) {
 			port = Integer.parseInt(args[0]);
 		}
-		GradleServer server = new GradleServer(port);
+		long connectionIdleTimeout = GradleProjectConnectionPool.DEFAULT_IDLE_TIMEOUT;
+		if (args.length > 1) {
+			connectionIdleTimeout = Long.parseLong(args[1]);
+		}
+		// the cached projects are kept in memory only unless a folder is given
+		Path modelCacheDir = null;
+		if (args.length > 2) {
+			modelCacheDir = Paths.get(args[2]);
+		}
+		long replyBufferSize = QueuedStreamObserver.DEFAULT_BUFFER_SIZE;
+		if (args.length > 3) {
+			replyBufferSize = Long.parseLong(args[3]);
+		}
+		QueuedStreamObserver.OverflowPolicy replyOverflowPolicy = QueuedStreamObserver.OverflowPolicy.DROP_PROGRESS;
+		if (args.length > 4) {
+			replyOverflowPolicy = QueuedStreamObserver.OverflowPolicy.valueOf(args[4]);
+		}
+		GradleServer server = new GradleServer(ServerBuilder.forPort(port), port,
+				new GradleService(new GradleProjectConnectionPool(connectionIdleTimeout),
+						new GradleBuildModelCache(modelCacheDir), QueuedStreamObserver.getDefaultExecutor(),
+						replyBufferSize, replyOverflowPolicy));
 		server.start();
 		server.blockUntilShutdown();
 	}
@@ -6,29 +6,114 @@ import com.github.badsyntax.gradle.handlers.CancelProjectsHandler;
 import com.github.badsyntax.gradle.handlers.GetBuildHandler;
 import com.github.badsyntax.gradle.handlers.GetDaemonsStatusHandler;
 import com.github.badsyntax.gradle.handlers.GetProjectsHandler;
+import com.github.badsyntax.gradle.handlers.GetTasksHandler;
 import com.github.badsyntax.gradle.handlers.RunBuildHandler;
 import com.github.badsyntax.gradle.handlers.StopDaemonHandler;
 import com.github.badsyntax.gradle.handlers.StopDaemonsHandler;
 import io.grpc.stub.StreamObserver;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class GradleService extends GradleGrpc.GradleImplBase {
+public class GradleService extends GradleGrpc.GradleImplBase implements AutoCloseable {
+
+	private static final ExecutorService defaultBackgroundExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "gradle-background");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final GradleProjectConnectionPool connectionPool;
+	private final GradleProjectModelStore modelStore = new GradleProjectModelStore();
+	private final GradleBuildModelCache modelCache;
+	private final Executor replyExecutor;
+	private final long replyBufferSize;
+	private final QueuedStreamObserver.OverflowPolicy replyOverflowPolicy;
+	private final Executor backgroundExecutor;
+
+	public GradleService() {
+		this(new GradleProjectConnectionPool(), new GradleBuildModelCache(null));
+	}
+
+	public GradleService(GradleProjectConnectionPool connectionPool, GradleBuildModelCache modelCache) {
+		this(connectionPool, modelCache, QueuedStreamObserver.getDefaultExecutor());
+	}
+
+	/**
+	 * @param replyExecutor
+	 *            the executor sending the queued progress and output of the builds
+	 */
+	public GradleService(GradleProjectConnectionPool connectionPool, GradleBuildModelCache modelCache,
+			Executor replyExecutor) {
+		this(connectionPool, modelCache, replyExecutor, QueuedStreamObserver.DEFAULT_BUFFER_SIZE,
+				QueuedStreamObserver.OverflowPolicy.DROP_PROGRESS);
+	}
+
+	/**
+	 * @param replyBufferSize
+	 *            the size (in bytes) of the replies of a build queued for a slow
+	 *            client
+	 * @param replyOverflowPolicy
+	 *            what to do with the replies of a build past the buffer size
+	 */
+	public GradleService(GradleProjectConnectionPool connectionPool, GradleBuildModelCache modelCache,
+			Executor replyExecutor, long replyBufferSize, QueuedStreamObserver.OverflowPolicy replyOverflowPolicy) {
+		this(connectionPool, modelCache, replyExecutor, replyBufferSize, replyOverflowPolicy,
+				defaultBackgroundExecutor);
+	}
+
+	/**
+	 * @param backgroundExecutor
+	 *            the executor running the handlers configuring or running a build,
+	 *            off the call thread which delivers the events of their call, and
+	 *            the work left once a call is completed, e.g. refreshing a stale
+	 *            cached project
+	 */
+	public GradleService(GradleProjectConnectionPool connectionPool, GradleBuildModelCache modelCache,
+			Executor replyExecutor, long replyBufferSize, QueuedStreamObserver.OverflowPolicy replyOverflowPolicy,
+			Executor backgroundExecutor) {
+		this.connectionPool = connectionPool;
+		this.modelCache = modelCache;
+		this.replyExecutor = replyExecutor;
+		this.replyBufferSize = replyBufferSize;
+		this.replyOverflowPolicy = replyOverflowPolicy;
+		this.backgroundExecutor = backgroundExecutor;
+	}
+
+	/**
+	 * Closes the pooled connections.
+	 */
+	@Override
+	public void close() {
+		connectionPool.close();
+	}
 
 	@Override
 	public void getBuild(GetBuildRequest req, StreamObserver<GetBuildReply> responseObserver) {
-		GetBuildHandler getBuildHandler = new GetBuildHandler(req, responseObserver);
-		getBuildHandler.run();
+		GetBuildHandler getBuildHandler = new GetBuildHandler(req, new QueuedStreamObserver<>(responseObserver,
+				replyExecutor, replyBufferSize, replyOverflowPolicy, GetBuildReply::hasProgress), connectionPool,
+				modelStore, modelCache, backgroundExecutor);
+		backgroundExecutor.execute(getBuildHandler::run);
 	}
 
 	@Override
 	public void getProjects(GetProjectsRequest req, StreamObserver<GetProjectsReply> responseObserver) {
-		GetProjectsHandler getProjectsHandler = new GetProjectsHandler(req, responseObserver);
-		getProjectsHandler.run();
+		GetProjectsHandler getProjectsHandler = new GetProjectsHandler(req, responseObserver, connectionPool,
+				modelStore);
+		backgroundExecutor.execute(getProjectsHandler::run);
+	}
+
+	@Override
+	public void getTasks(GetTasksRequest req, StreamObserver<GetTasksReply> responseObserver) {
+		GetTasksHandler getTasksHandler = new GetTasksHandler(req, responseObserver, connectionPool, modelCache);
+		backgroundExecutor.execute(getTasksHandler::run);
 	}
 
 	@Override
 	public void runBuild(RunBuildRequest req, StreamObserver<RunBuildReply> responseObserver) {
-		RunBuildHandler runBuildHandler = new RunBuildHandler(req, responseObserver);
-		runBuildHandler.run();
+		RunBuildHandler runBuildHandler = new RunBuildHandler(req, new QueuedStreamObserver<>(responseObserver,
+				replyExecutor, replyBufferSize, replyOverflowPolicy, RunBuildReply::hasProgress), connectionPool);
+		backgroundExecutor.execute(runBuildHandler::run);
 	}
 
 	@Override
@@ -51,13 +136,15 @@ public class GradleService extends GradleGrpc.GradleImplBase {
 
 	@Override
 	public void getDaemonsStatus(GetDaemonsStatusRequest req, StreamObserver<GetDaemonsStatusReply> responseObserver) {
-		GetDaemonsStatusHandler getDaemonsStatusHandler = new GetDaemonsStatusHandler(req, responseObserver);
+		GetDaemonsStatusHandler getDaemonsStatusHandler = new GetDaemonsStatusHandler(req, responseObserver,
+				connectionPool.getRegistry());
 		getDaemonsStatusHandler.run();
 	}
 
 	@Override
 	public void stopDaemons(StopDaemonsRequest req, StreamObserver<StopDaemonsReply> responseObserver) {
-		StopDaemonsHandler stopDaemonsHandler = new StopDaemonsHandler(req, responseObserver);
+		StopDaemonsHandler stopDaemonsHandler = new StopDaemonsHandler(req, responseObserver,
+				connectionPool.getRegistry());
 		stopDaemonsHandler.run();
 	}
 
@@ -0,0 +1,160 @@
+package com.github.badsyntax.gradle;
+
+import com.google.protobuf.ByteString;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the standard output and error of a build into fewer replies. The
+ * tooling API flushes the output streams about once per line, so replying on
+ * each flush sends a message per line of a chatty build.
+ *
+ * The written bytes are sent once they reach the batch size, or once the oldest
+ * of them has waited for the batch window. The output and error streams share a
+ * single batch, which is sent before bytes of the other stream are added, so
+ * the order in which they were written is kept. Call {@link #flush()} before
+ * replying with anything else, e.g. a progress event or the build result.
+ *
+ * The batch window is timed by a thread shared between the builds, so the sink
+ * must not block. The writing thread of the build waits for the client instead,
+ * once the batch is handed over, through the given backpressure.
+ */
+public class OutputBatcher implements AutoCloseable {
+	public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+	public static final long DEFAULT_BATCH_WINDOW = 20;
+
+	private static final ScheduledExecutorService flushExecutor = Executors
+			.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "gradle-output-batcher");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	public interface Sink {
+		/**
+		 * Queues the bytes without waiting for the client.
+		 */
+		void onOutput(Output.OutputType outputType, ByteString bytes);
+	}
+
+	private class BatchedOutputStream extends OutputStream {
+		private final Output.OutputType outputType;
+
+		private BatchedOutputStream(Output.OutputType outputType) {
+			this.outputType = outputType;
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			OutputBatcher.this.write(outputType, bytes, offset, length);
+			// outside of the lock, the batch window doesn't wait for the client
+			backpressure.run();
+		}
+
+		@Override
+		public void flush() {
+			// batched, the batch window bounds the delay
+		}
+	}
+
+	private final Sink sink;
+	private final Runnable backpressure;
+	private final int batchSize;
+	private final long batchWindow;
+	private final OutputStream standardOutput = new BatchedOutputStream(Output.OutputType.STDOUT);
+	private final OutputStream standardError = new BatchedOutputStream(Output.OutputType.STDERR);
+	// all fields below are guarded by this
+	private final ByteString.Output batch;
+	private Output.OutputType batchType;
+	private ScheduledFuture<?> scheduledFlush;
+	private boolean closed;
+
+	/**
+	 * @param backpressure
+	 *            waits for the client to catch up with the queued output, called by
+	 *            the build after each write
+	 */
+	public OutputBatcher(Sink sink, Runnable backpressure) {
+		this(sink, backpressure, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_WINDOW);
+	}
+
+	/**
+	 * @param batchSize
+	 *            the number of bytes sent at once
+	 * @param batchWindow
+	 *            how long (in milliseconds) written bytes are held at most
+	 */
+	public OutputBatcher(Sink sink, Runnable backpressure, int batchSize, long batchWindow) {
+		this.sink = sink;
+		this.backpressure = backpressure;
+		this.batchSize = batchSize;
+		this.batchWindow = batchWindow;
+		this.batch = ByteString.newOutput(Math.min(batchSize, 8192));
+	}
+
+	public OutputStream getStandardOutput() {
+		return standardOutput;
+	}
+
+	public OutputStream getStandardError() {
+		return standardError;
+	}
+
+	private synchronized void write(Output.OutputType outputType, byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return;
+		}
+		if (closed) {
+			// written after the build ended, sent right away
+			sink.onOutput(outputType, ByteString.copyFrom(bytes, offset, length));
+			return;
+		}
+		if (batchType != outputType) {
+			sendBatch();
+			batchType = outputType;
+		}
+		batch.write(bytes, offset, length);
+		if (batch.size() >= batchSize) {
+			sendBatch();
+		} else if (scheduledFlush == null) {
+			scheduledFlush = flushExecutor.schedule(this::flush, batchWindow, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Sends the batched bytes, if any.
+	 */
+	public synchronized void flush() {
+		sendBatch();
+	}
+
+	private void sendBatch() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		if (batch.size() == 0) {
+			return;
+		}
+		ByteString bytes = batch.toByteString();
+		batch.reset();
+		sink.onOutput(batchType, bytes);
+	}
+
+	/**
+	 * Sends the batched bytes, the bytes written afterwards are sent unbatched.
+	 */
+	@Override
+	public synchronized void close() {
+		sendBatch();
+		closed = true;
+	}
+}
@@ -0,0 +1,448 @@
+package com.github.badsyntax.gradle;
+
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serializes the replies of a single call without locking, so the threads
+ * reporting the progress and output of a build don't wait on each other, nor on
+ * the replies of other builds.
+ *
+ * The replies are queued, and a single writer at a time sends them to the
+ * observer of the call, in the order they were queued. The writer runs on the
+ * given executor when there are replies to send, and stops once the queue is
+ * empty. The replies queued after the call is completed are dropped.
+ *
+ * The writer only sends while the call is ready, so a slow client doesn't make
+ * gRPC buffer the replies without bound, and resumes on the ready event of the
+ * call. The call executor delivers the event only once the handler returns, so
+ * run the handler off the call thread. The queued replies are bounded by the
+ * buffer size, past which the overflow policy applies.
+ */
+public class QueuedStreamObserver<T extends MessageLite> implements StreamObserver<T> {
+	private static final Logger logger = LoggerFactory.getLogger(QueuedStreamObserver.class.getName());
+
+	public static final long DEFAULT_BUFFER_SIZE = 4L * 1024 * 1024;
+
+	private static final ExecutorService defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "gradle-reply-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * What to do with a reply when the queued replies reach the buffer size.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Waits for the client to catch up.
+		 */
+		BLOCK,
+		/**
+		 * Drops the progress replies, and waits for the client to catch up for the
+		 * other ones.
+		 */
+		DROP_PROGRESS,
+		/**
+		 * Writes the replies to a temporary file until the client catches up.
+		 */
+		SPILL
+	}
+
+	private static class Reply<T> {
+		private final T value;
+		private final Throwable error;
+		private final int size;
+
+		private Reply(T value, Throwable error, int size) {
+			this.value = value;
+			this.error = error;
+			this.size = size;
+		}
+
+		private boolean isTerminal() {
+			return value == null;
+		}
+	}
+
+	private final StreamObserver<T> responseObserver;
+	private final Executor executor;
+	private final long bufferSize;
+	private final OverflowPolicy overflowPolicy;
+	private final Predicate<T> isProgress;
+	private final Queue<Reply<T>> replies = new ConcurrentLinkedQueue<>();
+	// the size of the queued replies, not counting the spilled ones
+	private final AtomicLong queuedBytes = new AtomicLong();
+	private final AtomicBoolean writing = new AtomicBoolean();
+	private final AtomicBoolean completed = new AtomicBoolean();
+	private final AtomicInteger waitingProducers = new AtomicInteger();
+	private final AtomicLong droppedReplies = new AtomicLong();
+	private volatile boolean closed;
+	private final List<Runnable> cancelHandlers = new CopyOnWriteArrayList<>();
+	// set while the replies go to the spill file, guarded by spillLock
+	private volatile boolean spilling;
+	private final Object spillLock = new Object();
+	private Path spillPath;
+	private RandomAccessFile spillFile;
+	private long spillReadPosition;
+	private Parser<T> parser;
+	// only accessed by the writer, the terminal reply waiting for the spilled
+	// replies queued before it
+	private Reply<T> terminalReply;
+
+	public QueuedStreamObserver(StreamObserver<T> responseObserver) {
+		this(responseObserver, defaultExecutor);
+	}
+
+	public QueuedStreamObserver(StreamObserver<T> responseObserver, Executor executor) {
+		this(responseObserver, executor, DEFAULT_BUFFER_SIZE, OverflowPolicy.BLOCK, value -> false);
+	}
+
+	/**
+	 * @param bufferSize
+	 *            the size (in bytes) of the replies queued before the overflow
+	 *            policy applies
+	 * @param isProgress
+	 *            whether a reply is a progress reply, which the DROP_PROGRESS
+	 *            policy may drop
+	 */
+	public QueuedStreamObserver(StreamObserver<T> responseObserver, Executor executor, long bufferSize,
+			OverflowPolicy overflowPolicy, Predicate<T> isProgress) {
+		this.responseObserver = responseObserver;
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+		this.overflowPolicy = overflowPolicy;
+		this.isProgress = isProgress;
+		if (responseObserver instanceof ServerCallStreamObserver) {
+			ServerCallStreamObserver<T> callObserver = (ServerCallStreamObserver<T>) responseObserver;
+			callObserver.setOnReadyHandler(this::startWriter);
+			// releases the producers waiting for the buffer
+			callObserver.setOnCancelHandler(() -> {
+				close();
+				cancelHandlers.forEach(Runnable::run);
+			});
+		}
+	}
+
+	/**
+	 * Runs the given handler when the client cancels the call, right away if it's
+	 * already cancelled.
+	 */
+	public void onCancel(Runnable handler) {
+		cancelHandlers.add(handler);
+		if (isCancelled()) {
+			handler.run();
+		}
+	}
+
+	public static Executor getDefaultExecutor() {
+		return defaultExecutor;
+	}
+
+	@Override
+	public void onNext(T value) {
+		queue(value, true);
+	}
+
+	/**
+	 * Queues the reply without waiting for the client to catch up, for a thread
+	 * that mustn't block, e.g. a timer shared between the calls. The queued replies
+	 * exceed the buffer size until the producer calls {@link #awaitCapacity()}.
+	 */
+	public void offer(T value) {
+		queue(value, false);
+	}
+
+	/**
+	 * Waits for the client to catch up with the replies queued past the buffer
+	 * size, unless the overflow policy spills them.
+	 */
+	public void awaitCapacity() {
+		if (overflowPolicy != OverflowPolicy.SPILL && !completed.get()) {
+			awaitBudget(0);
+		}
+	}
+
+	private void queue(T value, boolean await) {
+		if (completed.get() || closed) {
+			return;
+		}
+		int size = value.getSerializedSize();
+		if (spilling || isOverBudget(size)) {
+			switch (overflowPolicy) {
+				case SPILL :
+					if (spill(value)) {
+						startWriter();
+						return;
+					}
+					break;
+				case DROP_PROGRESS :
+					if (isProgress.test(value)) {
+						droppedReplies.incrementAndGet();
+						return;
+					}
+					if (await) {
+						awaitBudget(size);
+					}
+					break;
+				default :
+					if (await) {
+						awaitBudget(size);
+					}
+					break;
+			}
+		}
+		queue(new Reply<>(value, null, size));
+	}
+
+	@Override
+	public void onError(Throwable error) {
+		if (completed.compareAndSet(false, true)) {
+			queue(new Reply<>(null, error, 0));
+		}
+	}
+
+	/**
+	 * Completes the call once the replies queued so far are sent.
+	 */
+	@Override
+	public void onCompleted() {
+		if (completed.compareAndSet(false, true)) {
+			queue(new Reply<>(null, null, 0));
+		}
+	}
+
+	public boolean isCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * @return whether the reply doesn't fit in the buffer, a reply larger than the
+	 *         buffer fits when nothing else is queued
+	 */
+	private boolean isOverBudget(int size) {
+		long queued = queuedBytes.get();
+		return queued > 0 && queued + size > bufferSize;
+	}
+
+	private void awaitBudget(int size) {
+		waitingProducers.incrementAndGet();
+		try {
+			synchronized (queuedBytes) {
+				while (isOverBudget(size) && !closed) {
+					queuedBytes.wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			waitingProducers.decrementAndGet();
+		}
+	}
+
+	private void queue(Reply<T> reply) {
+		queuedBytes.addAndGet(reply.size);
+		replies.offer(reply);
+		startWriter();
+	}
+
+	private void startWriter() {
+		if (writing.compareAndSet(false, true)) {
+			executor.execute(this::write);
+		}
+	}
+
+	private void write() {
+		while (true) {
+			sendReplies();
+			writing.set(false);
+			// a reply queued after the last poll didn't start a writer
+			boolean hasReplies = !replies.isEmpty() || spilling || terminalReply != null;
+			if (!hasReplies || closed) {
+				return;
+			}
+			if (!isReady()) {
+				// the ready event starts the next writer
+				return;
+			}
+			if (!writing.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+
+	private void sendReplies() {
+		while (!closed) {
+			if (isCancelled()) {
+				close();
+				return;
+			}
+			if (!isReady()) {
+				return;
+			}
+			Reply<T> reply = nextReply();
+			if (reply == null) {
+				return;
+			}
+			send(reply);
+		}
+	}
+
+	private Reply<T> nextReply() {
+		Reply<T> reply = replies.poll();
+		if (reply != null) {
+			queuedBytes.addAndGet(-reply.size);
+			if (waitingProducers.get() > 0) {
+				synchronized (queuedBytes) {
+					queuedBytes.notifyAll();
+				}
+			}
+			if (reply.isTerminal() && spilling) {
+				terminalReply = reply;
+				return nextReply();
+			}
+			return reply;
+		}
+		if (spilling) {
+			reply = readSpilled();
+			if (reply != null) {
+				return reply;
+			}
+		}
+		reply = terminalReply;
+		terminalReply = null;
+		return reply;
+	}
+
+	private void send(Reply<T> reply) {
+		try {
+			if (reply.value != null) {
+				responseObserver.onNext(reply.value);
+			} else if (reply.error != null) {
+				close();
+				responseObserver.onError(reply.error);
+			} else {
+				close();
+				responseObserver.onCompleted();
+			}
+		} catch (RuntimeException e) {
+			// e.g. the call was cancelled by the client
+			close();
+			logger.warn("Could not send the reply: {}", e.getMessage());
+		}
+	}
+
+	private boolean isReady() {
+		return !(responseObserver instanceof CallStreamObserver)
+				|| ((CallStreamObserver<T>) responseObserver).isReady();
+	}
+
+	private boolean isCancelled() {
+		return responseObserver instanceof ServerCallStreamObserver
+				&& ((ServerCallStreamObserver<T>) responseObserver).isCancelled();
+	}
+
+	/**
+	 * @return whether the reply was spilled, or false if the spilled replies were
+	 *         all sent meanwhile and it fits in the buffer again
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean spill(T value) {
+		synchronized (spillLock) {
+			if (closed) {
+				return true;
+			}
+			if (!spilling && !isOverBudget(value.getSerializedSize())) {
+				return false;
+			}
+			try {
+				if (spillFile == null) {
+					spillPath = Files.createTempFile("vscode-gradle-replies", ".spill");
+					spillFile = new RandomAccessFile(spillPath.toFile(), "rw");
+					parser = (Parser<T>) value.getParserForType();
+				}
+				byte[] bytes = value.toByteArray();
+				spillFile.seek(spillFile.length());
+				spillFile.writeInt(bytes.length);
+				spillFile.write(bytes);
+				spilling = true;
+				return true;
+			} catch (IOException e) {
+				logger.warn("Could not spill the reply: {}", e.getMessage());
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * @return the next spilled reply, or null once they were all sent
+	 */
+	private Reply<T> readSpilled() {
+		synchronized (spillLock) {
+			if (spillFile == null) {
+				return null;
+			}
+			try {
+				if (spillReadPosition < spillFile.length()) {
+					spillFile.seek(spillReadPosition);
+					byte[] bytes = new byte[spillFile.readInt()];
+					spillFile.readFully(bytes);
+					spillReadPosition = spillFile.getFilePointer();
+					return new Reply<>(parser.parseFrom(bytes), null, 0);
+				}
+				spillFile.setLength(0);
+			} catch (IOException e) {
+				logger.warn("Could not read the spilled replies: {}", e.getMessage());
+			}
+			spillReadPosition = 0;
+			spilling = false;
+			return null;
+		}
+	}
+
+	private void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		replies.clear();
+		synchronized (queuedBytes) {
+			queuedBytes.notifyAll();
+		}
+		synchronized (spillLock) {
+			spilling = false;
+			if (spillFile != null) {
+				try {
+					spillFile.close();
+					Files.deleteIfExists(spillPath);
+				} catch (IOException e) {
+					logger.warn("Could not delete the spilled replies: {}", e.getMessage());
+				}
+				spillFile = null;
+			}
+		}
+		if (droppedReplies.get() > 0) {
+			logger.info("Dropped {} progress replies the client couldn't keep up with", droppedReplies.get());
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package com.github.badsyntax.gradle.handlers;
 
-import com.github.badsyntax.gradle.ByteBufferOutputStream;
 import com.github.badsyntax.gradle.Cancelled;
 import com.github.badsyntax.gradle.Environment;
 import com.github.badsyntax.gradle.ErrorMessageBuilder;
@@ -9,29 +8,39 @@ import com.github.badsyntax.gradle.GetBuildRequest;
 import com.github.badsyntax.gradle.GetBuildResult;
 import com.github.badsyntax.gradle.GradleBuild;
 import com.github.badsyntax.gradle.GradleBuildCancellation;
+import com.github.badsyntax.gradle.GradleBuildModelCache;
 import com.github.badsyntax.gradle.GradleEnvironment;
-import com.github.badsyntax.gradle.GradleProject;
-import com.github.badsyntax.gradle.GradleProjectConnector;
-import com.github.badsyntax.gradle.GradleTask;
+import com.github.badsyntax.gradle.GradleProjectConnectionPool;
+import com.github.badsyntax.gradle.GradleProjectModelStore;
+import com.github.badsyntax.gradle.GradleProjectPart;
 import com.github.badsyntax.gradle.JavaEnvironment;
 import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.OutputBatcher;
 import com.github.badsyntax.gradle.Progress;
+import com.github.badsyntax.gradle.QueuedStreamObserver;
 import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import com.github.badsyntax.gradle.utils.PluginUtils;
 import com.github.badsyntax.gradle.utils.Utils;
 import com.google.common.base.Strings;
 import com.google.protobuf.ByteString;
+import com.microsoft.gradle.api.GradleProjectModel;
+import com.microsoft.gradle.api.GradleSyncAction;
 import io.github.g00fy2.versioncompare.Version;
-import io.grpc.stub.StreamObserver;
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.gradle.internal.service.ServiceCreationException;
+import org.gradle.tooling.BuildActionExecuter;
 import org.gradle.tooling.BuildCancelledException;
 import org.gradle.tooling.CancellationToken;
-import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.ConfigurableLauncher;
 import org.gradle.tooling.ModelBuilder;
 import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.UnsupportedVersionException;
 import org.gradle.tooling.events.OperationType;
 import org.gradle.tooling.events.ProgressEvent;
 import org.gradle.tooling.events.ProgressListener;
@@ -41,59 +50,109 @@ import org.slf4j.LoggerFactory;
 
 public class GetBuildHandler {
 	private static final Logger logger = LoggerFactory.getLogger(GetBuildHandler.class.getName());
+	private static final int TASK_BATCH_SIZE = 500;
 
 	private GetBuildRequest req;
-	private StreamObserver<GetBuildReply> responseObserver;
+	// the reply is completed once the project is sent, the output of the build
+	// fetching the IDE model afterwards is dropped
+	private QueuedStreamObserver<GetBuildReply> responseObserver;
+	private GradleProjectConnectionPool connectionPool;
+	private GradleProjectModelStore modelStore;
+	private GradleBuildModelCache modelCache;
+	private Executor backgroundExecutor;
 	private ProgressListener progressListener;
-	private ByteBufferOutputStream standardOutputListener;
-	private ByteBufferOutputStream standardErrorListener;
+	private OutputBatcher outputBatcher;
 	private Environment environment;
+	private String fingerprint;
+	// assembles the streamed parts to cache them, if the project is cached
+	private ProjectTreeAssembler streamedTree;
 
-	public GetBuildHandler(GetBuildRequest req, StreamObserver<GetBuildReply> responseObserver) {
+	public GetBuildHandler(GetBuildRequest req, QueuedStreamObserver<GetBuildReply> responseObserver,
+			GradleProjectConnectionPool connectionPool, GradleProjectModelStore modelStore,
+			GradleBuildModelCache modelCache, Executor backgroundExecutor) {
 		this.req = req;
 		this.responseObserver = responseObserver;
+		this.connectionPool = connectionPool;
+		this.modelStore = modelStore;
+		this.modelCache = modelCache;
+		this.backgroundExecutor = backgroundExecutor;
+		this.outputBatcher = new OutputBatcher(this::replyWithOutput, responseObserver::awaitCapacity);
 		this.progressListener = (ProgressEvent event) -> {
-			synchronized (GetBuildHandler.class) {
-				replyWithProgress(event);
-			}
-		};
-		this.standardOutputListener = new ByteBufferOutputStream() {
-			@Override
-			public void onFlush(byte[] bytes) {
-				synchronized (GetBuildHandler.class) {
-					replyWithStandardOutput(bytes);
-				}
-			}
-		};
-		this.standardErrorListener = new ByteBufferOutputStream() {
-			@Override
-			public void onFlush(byte[] bytes) {
-				synchronized (GetBuildHandler.class) {
-					replyWithStandardError(bytes);
-				}
-			}
+			// the output written before the event is sent first
+			outputBatcher.flush();
+			replyWithProgress(event);
 		};
 	}
 
 	public void run() {
-		GradleConnector gradleConnector;
+		// a sync following a stale reply waits for the refreshed project, rather than
+		// configuring the build again
+		boolean revalidated = req.getUseCache()
+				&& modelCache.awaitRevalidation(req.getProjectDir(), req.getGradleConfig());
+		// the project is only cached for a later sync using the cache, or for the
+		// GetTasks requests following a sync of the structure only
+		if (req.getUseCache() || req.getStructureOnly()) {
+			// read before the build configures, a change made meanwhile invalidates the
+			// cached project
+			this.fingerprint = GradleBuildModelCache.getFingerprint(req.getProjectDir(), req.getGradleConfig());
+		}
+		if (req.getUseCache() && replyWithCachedProject(!revalidated)) {
+			return;
+		}
+		syncBuild();
+	}
+
+	/**
+	 * Configures the build again to refresh its cached project, once the stale one
+	 * was sent. The replies are dropped, as the call is completed.
+	 */
+	private void revalidate() {
+		// the revalidation has its own token, the next request of the project clears
+		// the token of this one
+		this.req = req.toBuilder().setCancellationKey(req.getCancellationKey() + ":revalidate").setStreamProjects(false)
+				.setFetchProjectModel(false).build();
+		syncBuild();
+	}
+
+	private void syncBuild() {
+		GradleProjectConnectionPool.Lease lease = null;
 		try {
-			gradleConnector = GradleProjectConnector.build(req.getProjectDir(), req.getGradleConfig());
+			// connecting fails like the build itself, e.g. with an incompatible Java
+			// version, so its errors go through the same checks
+			lease = connectionPool.acquire(req.getProjectDir(), req.getGradleConfig());
+			try (GradleProjectConnectionPool.Lease connectionLease = lease) {
+				ProjectConnection connection = connectionLease.getConnection();
+				this.environment = buildEnvironment(connection);
+				replyWithBuildEnvironment(this.environment);
+				// the model is only worth fetching if a project content request follows
+				CompletableFuture<GradleProjectModel> projectModel = req.getFetchProjectModel()
+						? modelStore.expect(req.getProjectDir(), req.getGradleConfig())
+						: null;
+				if (projectModel != null) {
+					// the project content request stops waiting for a cancelled sync
+					responseObserver.onCancel(() -> projectModel.complete(null));
+				}
+				try {
+					syncProject(connection, projectModel);
+				} catch (UnsupportedVersionException e) {
+					replyWithSyncedProject(getGradleProject(connection));
+				} finally {
+					if (projectModel != null) {
+						// the project content request fetches the model itself
+						projectModel.complete(null);
+					}
+				}
+			}
 		} catch (GradleConnectionException e) {
 			logger.error(e.getMessage());
 			responseObserver.onError(ErrorMessageBuilder.build(e));
-			return;
-		}
-
-		try (ProjectConnection connection = gradleConnector.connect()) {
-			this.environment = buildEnvironment(connection);
-			replyWithBuildEnvironment(this.environment);
-			org.gradle.tooling.model.GradleProject gradleProject = getGradleProject(connection);
-			replyWithProject(getProjectData(gradleProject, gradleProject, new HashSet<>()));
 		} catch (BuildCancelledException e) {
 			replyWithCancelled(e);
 		} catch (ServiceCreationException | IOException | IllegalStateException
 				| org.gradle.tooling.GradleConnectionException e) {
+			if (lease != null) {
+				lease.discard();
+			}
 			if (this.environment != null) {
 				Version gradleVersion = new Version(this.environment.getGradleEnvironment().getGradleVersion());
 				Version javaVersion = new Version(System.getProperty("java.version"));
@@ -138,7 +197,8 @@ public class GetBuildHandler {
 		CancellationToken cancellationToken = GradleBuildCancellation.buildToken(req.getCancellationKey());
 
 		buildEnvironment.withCancellationToken(cancellationToken).addProgressListener(progressListener, progressEvents)
-				.setStandardOutput(standardOutputListener).setStandardError(standardErrorListener);
+				.setStandardOutput(outputBatcher.getStandardOutput())
+				.setStandardError(outputBatcher.getStandardError());
 		String jvmArguments = req.getGradleConfig().getJvmArguments();
 		if (!Strings.isNullOrEmpty(jvmArguments)) {
 			buildEnvironment.setJvmArguments(Arrays.stream(jvmArguments.split(" "))
@@ -146,102 +206,285 @@ public class GetBuildHandler {
 		}
 
 		try {
-			BuildEnvironment environment = buildEnvironment.get();
-			org.gradle.tooling.model.build.GradleEnvironment gradleEnvironment = environment.getGradle();
-			org.gradle.tooling.model.build.JavaEnvironment javaEnvironment = environment.getJava();
-			return Environment.newBuilder()
-					.setGradleEnvironment(GradleEnvironment.newBuilder()
-							.setGradleUserHome(gradleEnvironment.getGradleUserHome().getAbsolutePath())
-							.setGradleVersion(gradleEnvironment.getGradleVersion()))
-					.setJavaEnvironment(
-							JavaEnvironment.newBuilder().setJavaHome(javaEnvironment.getJavaHome().getAbsolutePath())
-									.addAllJvmArgs(javaEnvironment.getJvmArguments()))
-					.build();
+			return getEnvironment(buildEnvironment.get());
 		} finally {
 			GradleBuildCancellation.clearToken(req.getCancellationKey());
 		}
 	}
 
+	static Environment getEnvironment(BuildEnvironment environment) {
+		org.gradle.tooling.model.build.GradleEnvironment gradleEnvironment = environment.getGradle();
+		org.gradle.tooling.model.build.JavaEnvironment javaEnvironment = environment.getJava();
+		return Environment.newBuilder()
+				.setGradleEnvironment(GradleEnvironment.newBuilder()
+						.setGradleUserHome(gradleEnvironment.getGradleUserHome().getAbsolutePath())
+						.setGradleVersion(gradleEnvironment.getGradleVersion()))
+				.setJavaEnvironment(
+						JavaEnvironment.newBuilder().setJavaHome(javaEnvironment.getJavaHome().getAbsolutePath())
+								.addAllJvmArgs(javaEnvironment.getJvmArguments()))
+				.build();
+	}
+
+	/**
+	 * Replies with the project as soon as it's configured, then fetches the IDE
+	 * model for the project content request in the same build, if any.
+	 *
+	 * @param projectModel
+	 *            the model expected by the project content request, or null to stop
+	 *            the build once the projects are configured
+	 */
+	private void syncProject(ProjectConnection connection, CompletableFuture<GradleProjectModel> projectModel) {
+		BuildActionExecuter<Void> action;
+		if (projectModel == null) {
+			action = GradleSyncAction.create(connection, this::replyWithSyncedProject);
+			configureLauncher(action);
+		} else {
+			action = GradleSyncAction.create(connection, this::replyWithSyncedProject, projectModel::complete);
+			configureLauncher(action);
+			File initScript = createInitScript();
+			if (initScript != null) {
+				action.withArguments("--init-script", initScript.getAbsolutePath());
+			}
+		}
+
+		try {
+			action.run();
+		} catch (RuntimeException e) {
+			if (!responseObserver.isCompleted()) {
+				throw e;
+			}
+			logger.warn("Could not fetch the project model: {}", e.getMessage());
+		} finally {
+			GradleBuildCancellation.clearToken(req.getCancellationKey());
+		}
+	}
+
+	private File createInitScript() {
+		try {
+			return PluginUtils.createInitScript();
+		} catch (IOException e) {
+			// the project content request reports it
+			logger.warn(e.getMessage());
+			return null;
+		}
+	}
+
 	private org.gradle.tooling.model.GradleProject getGradleProject(ProjectConnection connection) throws IOException {
 
 		ModelBuilder<org.gradle.tooling.model.GradleProject> projectBuilder = connection
 				.model(org.gradle.tooling.model.GradleProject.class);
+		configureLauncher(projectBuilder);
+
+		try {
+			return projectBuilder.get();
+		} finally {
+			GradleBuildCancellation.clearToken(req.getCancellationKey());
+		}
+	}
 
+	private <T extends ConfigurableLauncher<T>> void configureLauncher(T launcher) {
 		Set<OperationType> progressEvents = new HashSet<>();
 		progressEvents.add(OperationType.PROJECT_CONFIGURATION);
 
 		CancellationToken cancellationToken = GradleBuildCancellation.buildToken(req.getCancellationKey());
 
-		projectBuilder.withCancellationToken(cancellationToken).addProgressListener(progressListener, progressEvents)
-				.setStandardOutput(standardOutputListener).setStandardError(standardErrorListener)
+		launcher.withCancellationToken(cancellationToken).addProgressListener(progressListener, progressEvents)
+				.setStandardOutput(outputBatcher.getStandardOutput()).setStandardError(outputBatcher.getStandardError())
 				.setColorOutput(req.getShowOutputColors());
 		String jvmArguments = req.getGradleConfig().getJvmArguments();
 		if (!Strings.isNullOrEmpty(jvmArguments)) {
-			projectBuilder.setJvmArguments(Arrays.stream(jvmArguments.split(" ")).filter(e -> e != null && !e.isEmpty())
+			launcher.setJvmArguments(Arrays.stream(jvmArguments.split(" ")).filter(e -> e != null && !e.isEmpty())
 					.toArray(String[]::new));
 		}
+	}
 
-		try {
-			return projectBuilder.get();
-		} finally {
-			GradleBuildCancellation.clearToken(req.getCancellationKey());
+	/**
+	 * Streams the project tree as parts, so the client can render the projects
+	 * while their tasks follow, and the client doesn't hold the whole tree.
+	 */
+	private void streamProjectData(org.gradle.tooling.model.GradleProject rootGradleProject, TaskEncoder taskEncoder) {
+		streamProjectStructure(rootGradleProject);
+		streamProjectTasks(rootGradleProject, taskEncoder);
+		GradleProjectPart.Builder part = getProjectPart(rootGradleProject);
+		for (org.gradle.tooling.model.GradleTask task : ProjectTreeBuilder.getTaskSelectors(rootGradleProject)) {
+			taskEncoder.addTaskSelector(part, task);
+			if (getTaskCount(part) == TASK_BATCH_SIZE) {
+				replyWithProjectPart(part, taskEncoder);
+				part = getProjectPart(rootGradleProject);
+			}
+		}
+		if (getTaskCount(part) > 0) {
+			replyWithProjectPart(part, taskEncoder);
 		}
 	}
 
-	private GradleProject getProjectData(org.gradle.tooling.model.GradleProject gradleProject,
-			org.gradle.tooling.model.GradleProject rootGradleProject, Set<GradleTask> taskSelectors) {
-		boolean isRoot = gradleProject.getParent() == null;
-		GradleProject.Builder project = GradleProject.newBuilder().setIsRoot(isRoot);
-		gradleProject.getChildren().stream().forEach(childGradleProject -> project
-				.addProjects(getProjectData(childGradleProject, rootGradleProject, taskSelectors)));
-		gradleProject.getTasks().stream().forEach(task -> {
-			GradleTask.Builder gradleTask = GradleTask.newBuilder().setProject(task.getProject().getName())
-					.setName(task.getName()).setPath(task.getPath())
-					.setBuildFile(task.getProject().getBuildScript().getSourceFile().getAbsolutePath())
-					.setRootProject(rootGradleProject.getName());
-			if (task.getDescription() != null) {
-				gradleTask.setDescription(task.getDescription());
-			}
-			if (task.getGroup() != null) {
-				gradleTask.setGroup(task.getGroup());
+	private void streamProjectStructure(org.gradle.tooling.model.GradleProject gradleProject) {
+		replyWithProjectPart(getProjectPart(gradleProject), null);
+		gradleProject.getChildren().stream().forEach(this::streamProjectStructure);
+	}
+
+	private void streamProjectTasks(org.gradle.tooling.model.GradleProject gradleProject, TaskEncoder taskEncoder) {
+		GradleProjectPart.Builder part = getProjectPart(gradleProject);
+		for (org.gradle.tooling.model.GradleTask task : gradleProject.getTasks()) {
+			taskEncoder.addTask(part, task);
+			if (getTaskCount(part) == TASK_BATCH_SIZE) {
+				replyWithProjectPart(part, taskEncoder);
+				part = getProjectPart(gradleProject);
 			}
-			project.addTasks(gradleTask.build());
-			taskSelectors.add(gradleTask.build());
-		});
-		if (isRoot) {
-			Set<String> taskNames = new HashSet<>();
-			for (GradleTask existingTask : project.getTasksList()) {
-				taskNames.add(existingTask.getName());
+		}
+		if (getTaskCount(part) > 0) {
+			replyWithProjectPart(part, taskEncoder);
+		}
+		gradleProject.getChildren().stream()
+				.forEach(childGradleProject -> streamProjectTasks(childGradleProject, taskEncoder));
+	}
+
+	private static int getTaskCount(GradleProjectPart.Builder part) {
+		return part.getTasksCount() + part.getCompactTasksCount();
+	}
+
+	private GradleProjectPart.Builder getProjectPart(org.gradle.tooling.model.GradleProject gradleProject) {
+		org.gradle.tooling.model.GradleProject parent = gradleProject.getParent();
+		GradleProjectPart.Builder part = GradleProjectPart.newBuilder().setIsRoot(parent == null);
+		if (gradleProject.getPath() != null) {
+			part.setPath(gradleProject.getPath());
+		}
+		if (gradleProject.getName() != null) {
+			part.setName(gradleProject.getName());
+		}
+		if (parent != null && parent.getPath() != null) {
+			part.setParentPath(parent.getPath());
+		}
+		return part;
+	}
+
+	/**
+	 * Replies with the cached project if the build logic didn't change since it was
+	 * cached, else with the cached project marked as stale, if any, and refreshes
+	 * it in the background.
+	 *
+	 * @param allowStale
+	 *            false once a revalidation of the project failed, so the build is
+	 *            configured again and replies with its error
+	 * @return whether the reply is complete
+	 */
+	private boolean replyWithCachedProject(boolean allowStale) {
+		GradleBuildModelCache.Entry entry = modelCache.get(req.getProjectDir(), req.getGradleConfig());
+		if (entry == null || (!allowStale && !entry.getFingerprint().equals(fingerprint))) {
+			return false;
+		}
+		try {
+			// the daemon requests find the project without a connection
+			connectionPool.register(req.getProjectDir(), req.getGradleConfig());
+		} catch (GradleConnectionException e) {
+			// the build replies with the error
+			return false;
+		}
+		GradleBuild build = encodeBuild(entry.getBuild());
+		replyWithBuildEnvironment(entry.getEnvironment());
+		if (entry.getFingerprint().equals(fingerprint)) {
+			replyWithProject(build);
+			return true;
+		}
+		outputBatcher.close();
+		responseObserver.onNext(GetBuildReply.newBuilder()
+				.setGetBuildResult(GetBuildResult.newBuilder().setBuild(build).setStale(true)).build());
+		responseObserver.onCompleted();
+		modelCache.revalidate(req.getProjectDir(), req.getGradleConfig(), backgroundExecutor, this::revalidate);
+		return true;
+	}
+
+	private void replyWithSyncedProject(org.gradle.tooling.model.GradleProject gradleProject) {
+		if (req.getStreamProjects()) {
+			// the cached tree is assembled from the parts as they're sent, with compact
+			// tasks even when they aren't sent, for GetTasks
+			streamedTree = fingerprint != null ? new ProjectTreeAssembler() : null;
+			if (req.getStructureOnly() && streamedTree == null) {
+				streamProjectStructure(gradleProject);
+			} else {
+				streamProjectData(gradleProject,
+						new TaskEncoder(gradleProject, req.getCompactTasks() || streamedTree != null));
 			}
-			for (GradleTask task : taskSelectors) {
-				if (!taskNames.contains(task.getName())) {
-					taskNames.add(task.getName());
-					GradleTask.Builder taskSelector = GradleTask.newBuilder().setProject(gradleProject.getName())
-							.setName(task.getName()).setPath(task.getName())
-							.setBuildFile(gradleProject.getBuildScript().getSourceFile().getAbsolutePath())
-							.setRootProject(task.getRootProject());
-					if (task.getDescription() != null) {
-						taskSelector.setDescription(task.getDescription());
-					}
-					if (task.getGroup() != null) {
-						taskSelector.setGroup(task.getGroup());
-					}
-					project.addTasks(taskSelector.build());
-				}
+			replyWithStreamedProject();
+			if (streamedTree != null) {
+				cacheProject(streamedTree.build());
 			}
+			return;
+		}
+		// the tasks are cached even when they aren't sent, for GetTasks
+		GradleBuild build = ProjectTreeBuilder.build(gradleProject, true);
+		replyWithProject(encodeBuild(build));
+		if (fingerprint != null) {
+			cacheProject(build);
 		}
-		return project.build();
 	}
 
-	private void replyWithProject(GradleProject gradleProject) {
-		responseObserver.onNext(GetBuildReply.newBuilder()
-				.setGetBuildResult(
-						GetBuildResult.newBuilder().setBuild(GradleBuild.newBuilder().setProject(gradleProject)))
-				.build());
+	/**
+	 * @param build
+	 *            the project tree with compact tasks
+	 * @return the project tree as the request asks for it
+	 */
+	private GradleBuild encodeBuild(GradleBuild build) {
+		if (req.getStructureOnly()) {
+			return ProjectTreeBuilder.withoutTasks(build);
+		}
+		return req.getCompactTasks() ? build : ProjectTreeBuilder.withFullTasks(build);
+	}
+
+	/**
+	 * @param build
+	 *            the project tree with compact tasks, the cache serves both
+	 *            encodings
+	 */
+	private void cacheProject(GradleBuild build) {
+		if (environment != null) {
+			modelCache.put(req.getProjectDir(), req.getGradleConfig(),
+					new GradleBuildModelCache.Entry(fingerprint, environment, build));
+		}
+	}
+
+	private void replyWithProject(GradleBuild build) {
+		outputBatcher.close();
+		responseObserver.onNext(
+				GetBuildReply.newBuilder().setGetBuildResult(GetBuildResult.newBuilder().setBuild(build)).build());
+		responseObserver.onCompleted();
+	}
+
+	private void replyWithStreamedProject() {
+		outputBatcher.close();
+		responseObserver.onNext(GetBuildReply.newBuilder().setGetBuildResult(GetBuildResult.newBuilder()).build());
 		responseObserver.onCompleted();
 	}
 
+	/**
+	 * Replies with the part as the request asks for it, once it's added to the
+	 * cached tree, if any.
+	 *
+	 * @param taskEncoder
+	 *            the encoder of the tasks of the part, if any, compact when the
+	 *            tree is cached
+	 */
+	private void replyWithProjectPart(GradleProjectPart.Builder part, TaskEncoder taskEncoder) {
+		if (taskEncoder != null && taskEncoder.isCompact()) {
+			taskEncoder.addStrings(part);
+		}
+		GradleProjectPart projectPart = part.build();
+		if (streamedTree != null) {
+			streamedTree.add(projectPart);
+		}
+		if (taskEncoder != null && req.getStructureOnly()) {
+			// the tasks are only cached
+			return;
+		}
+		if (taskEncoder != null && taskEncoder.isCompact() && !req.getCompactTasks()) {
+			projectPart = streamedTree.withFullTasks(projectPart);
+		}
+		outputBatcher.flush();
+		responseObserver.onNext(GetBuildReply.newBuilder().setProjectPart(projectPart).build());
+	}
+
 	private void replyWithCancelled(BuildCancelledException e) {
+		outputBatcher.close();
 		responseObserver.onNext(GetBuildReply.newBuilder()
 				.setCancelled(Cancelled.newBuilder().setMessage(e.getMessage()).setProjectDir(req.getProjectDir()))
 				.build());
@@ -249,10 +492,12 @@ public class GetBuildHandler {
 	}
 
 	private void replyWithError(Exception e) {
+		outputBatcher.close();
 		responseObserver.onError(ErrorMessageBuilder.build(e));
 	}
 
 	private void replyWithBuildEnvironment(Environment environment) {
+		outputBatcher.flush();
 		responseObserver.onNext(GetBuildReply.newBuilder().setEnvironment(environment).build());
 	}
 
@@ -261,27 +506,20 @@ public class GetBuildHandler {
 				.setProgress(Progress.newBuilder().setMessage(progressEvent.getDisplayName())).build());
 	}
 
-	private void replyWithStandardOutput(byte[] bytes) {
-		ByteString byteString = ByteString.copyFrom(bytes);
-		responseObserver.onNext(GetBuildReply.newBuilder()
-				.setOutput(Output.newBuilder().setOutputType(Output.OutputType.STDOUT).setOutputBytes(byteString))
-				.build());
-	}
-
-	private void replyWithStandardError(byte[] bytes) {
-		ByteString byteString = ByteString.copyFrom(bytes);
-		responseObserver.onNext(GetBuildReply.newBuilder()
-				.setOutput(Output.newBuilder().setOutputType(Output.OutputType.STDERR).setOutputBytes(byteString))
-				.build());
+	private void replyWithOutput(Output.OutputType outputType, ByteString bytes) {
+		responseObserver.offer(GetBuildReply.newBuilder()
+				.setOutput(Output.newBuilder().setOutputType(outputType).setOutputBytes(bytes)).build());
 	}
 
 	private void replyWithCompatibilityCheckError(String gradleVersion, String javaVersion) {
+		outputBatcher.flush();
 		String errorMessage = "Could not use Gradle version " + gradleVersion + " and Java version " + javaVersion
 				+ " to configure the build. Please consider either to change your Java Runtime or your Gradle settings.";
 		responseObserver.onNext(GetBuildReply.newBuilder().setCompatibilityCheckError(errorMessage).build());
 	}
 
 	private void replyWithCompatibilityCheckError() {
+		outputBatcher.flush();
 		String errorMessage = "The current Gradle version requires Java 8 or lower. Please consider to change your Gradle settings.";
 		responseObserver.onNext(GetBuildReply.newBuilder().setCompatibilityCheckError(errorMessage).build());
 	}
@@ -6,8 +6,9 @@ import com.github.badsyntax.gradle.ErrorMessageBuilder;
 import com.github.badsyntax.gradle.GetDaemonsStatusReply;
 import com.github.badsyntax.gradle.GetDaemonsStatusRequest;
 import com.github.badsyntax.gradle.GradleLocalInstallation;
+import com.github.badsyntax.gradle.GradleProjectConnectionContext;
+import com.github.badsyntax.gradle.GradleProjectConnectionRegistry;
 import com.github.badsyntax.gradle.GradleProjectConnectionType;
-import com.github.badsyntax.gradle.GradleProjectConnector;
 import com.github.badsyntax.gradle.GradleWrapper;
 import com.github.badsyntax.gradle.exceptions.GradleExecutionException;
 import io.grpc.stub.StreamObserver;
@@ -22,16 +23,19 @@ public class GetDaemonsStatusHandler {
 
 	private GetDaemonsStatusRequest req;
 	private StreamObserver<GetDaemonsStatusReply> responseObserver;
+	private GradleProjectConnectionRegistry connectionRegistry;
 
-	public GetDaemonsStatusHandler(GetDaemonsStatusRequest req,
-			StreamObserver<GetDaemonsStatusReply> responseObserver) {
+	public GetDaemonsStatusHandler(GetDaemonsStatusRequest req, StreamObserver<GetDaemonsStatusReply> responseObserver,
+			GradleProjectConnectionRegistry connectionRegistry) {
 		this.req = req;
 		this.responseObserver = responseObserver;
+		this.connectionRegistry = connectionRegistry;
 	}
 
-	public synchronized void run() {
+	public void run() {
 		DaemonStatus daemonStatus = null;
-		GradleProjectConnectionType connectionType = GradleProjectConnector.getConnectionType();
+		GradleProjectConnectionContext context = connectionRegistry.get(req.getProjectDir());
+		GradleProjectConnectionType connectionType = context.getConnectionType();
 		if (connectionType == GradleProjectConnectionType.WRAPPER) {
 			File projectRoot = new File(req.getProjectDir());
 			// get daemon status needs to use wrapper execution
@@ -43,7 +47,7 @@ public class GetDaemonsStatusHandler {
 			GradleWrapper gradleWrapper = new GradleWrapper(projectRoot);
 			daemonStatus = new DaemonStatus(gradleWrapper);
 		} else if (connectionType == GradleProjectConnectionType.LOCALINSTALLATION) {
-			String localInstallation = GradleProjectConnector.getLocalInstallation();
+			String localInstallation = context.getLocalInstallation();
 			GradleLocalInstallation gradleLocalInstallation = new GradleLocalInstallation(new File(localInstallation));
 			daemonStatus = new DaemonStatus(gradleLocalInstallation);
 		} else if (connectionType == GradleProjectConnectionType.SPECIFICVERSION) {
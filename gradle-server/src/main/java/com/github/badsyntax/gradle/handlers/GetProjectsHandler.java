@@ -8,7 +8,8 @@ import com.github.badsyntax.gradle.ErrorMessageBuilder;
 import com.github.badsyntax.gradle.GetProjectsReply;
 import com.github.badsyntax.gradle.GetProjectsRequest;
 import com.github.badsyntax.gradle.GradleBuildCancellation;
-import com.github.badsyntax.gradle.GradleProjectConnector;
+import com.github.badsyntax.gradle.GradleProjectConnectionPool;
+import com.github.badsyntax.gradle.GradleProjectModelStore;
 import com.github.badsyntax.gradle.GrpcGradleClosure;
 import com.github.badsyntax.gradle.GrpcGradleField;
 import com.github.badsyntax.gradle.GrpcGradleMethod;
@@ -25,57 +26,121 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.gradle.tooling.BuildActionExecuter;
 import org.gradle.tooling.BuildCancelledException;
 import org.gradle.tooling.CancellationToken;
-import org.gradle.tooling.GradleConnector;
 import org.gradle.tooling.ProjectConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class GetProjectsHandler {
 	private static final Logger logger = LoggerFactory.getLogger(GetProjectsHandler.class.getName());
+	// how long (in milliseconds) to wait for the model of a running sync before
+	// fetching it
+	private static final long SYNCED_MODEL_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+	// how often (in milliseconds) the request checks its cancellation while
+	// waiting
+	private static final long CANCELLATION_CHECK_INTERVAL = 100;
 
 	private GetProjectsRequest req;
 	private StreamObserver<GetProjectsReply> responseObserver;
+	private GradleProjectConnectionPool connectionPool;
+	private GradleProjectModelStore modelStore;
 
-	public GetProjectsHandler(GetProjectsRequest req, StreamObserver<GetProjectsReply> responseObserver) {
+	public GetProjectsHandler(GetProjectsRequest req, StreamObserver<GetProjectsReply> responseObserver,
+			GradleProjectConnectionPool connectionPool, GradleProjectModelStore modelStore) {
 		this.req = req;
 		this.responseObserver = responseObserver;
+		this.connectionPool = connectionPool;
+		this.modelStore = modelStore;
 	}
 
 	public void run() {
-		GradleConnector gradleConnector;
+		GradleProjectConnectionPool.Lease lease = null;
 		try {
-			gradleConnector = GradleProjectConnector.build(req.getProjectDir(), req.getGradleConfig());
-		} catch (GradleConnectionException e) {
-			logger.error(e.getMessage());
-			responseObserver.onError(ErrorMessageBuilder.build(e));
-			return;
-		}
-
-		try (ProjectConnection connection = gradleConnector.connect()) {
-			BuildActionExecuter<GradleProjectModel> action = connection.action(new GradleModelAction());
-			File initScript = PluginUtils.createInitScript();
-			action.withArguments("--init-script", initScript.getAbsolutePath());
-			CancellationToken cancellationToken = GradleBuildCancellation.buildToken(req.getCancellationKey());
-			action.withCancellationToken(cancellationToken);
-			GradleProjectModel gradleModel = action.run();
-			GradleDependencyNode root = gradleModel.getDependencyNode();
-			responseObserver.onNext(GetProjectsReply.newBuilder().setItem(getDependencyItem(root))
-					.addAllPlugins(gradleModel.getPlugins()).addAllPluginClosures(getPluginClosures(gradleModel))
-					.addAllScriptClasspaths(gradleModel.getScriptClasspaths()).build());
-			responseObserver.onCompleted();
-		} catch (IOException e) {
+			GradleProjectModel syncedModel = takeSyncedModel();
+			if (syncedModel != null) {
+				replyWithModel(syncedModel);
+				return;
+			}
+			lease = connectionPool.acquire(req.getProjectDir(), req.getGradleConfig());
+			try (GradleProjectConnectionPool.Lease connectionLease = lease) {
+				ProjectConnection connection = connectionLease.getConnection();
+				BuildActionExecuter<GradleProjectModel> action = connection.action(new GradleModelAction());
+				File initScript = PluginUtils.createInitScript();
+				action.withArguments("--init-script", initScript.getAbsolutePath());
+				CancellationToken cancellationToken = GradleBuildCancellation.buildToken(req.getCancellationKey());
+				action.withCancellationToken(cancellationToken);
+				replyWithModel(action.run());
+			}
+		} catch (GradleConnectionException | IOException e) {
 			logger.error(e.getMessage());
 			responseObserver.onError(ErrorMessageBuilder.build(e));
 		} catch (BuildCancelledException e) {
 			replyWithCancelled();
+		} catch (IllegalStateException | org.gradle.tooling.GradleConnectionException e) {
+			if (lease != null) {
+				lease.discard();
+			}
+			logger.error(e.getMessage());
+			responseObserver.onError(ErrorMessageBuilder.build(e));
+		} finally {
+			GradleBuildCancellation.clearToken(req.getCancellationKey());
+		}
+	}
+
+	/**
+	 * @return the model fetched by the sync of the project, waiting for it if
+	 *         needed, or null if there's none or it takes too long
+	 * @throws BuildCancelledException
+	 *             if the request is cancelled while waiting
+	 */
+	private GradleProjectModel takeSyncedModel() {
+		CompletableFuture<GradleProjectModel> model = modelStore.take(req.getProjectDir(), req.getGradleConfig());
+		if (model == null) {
+			return null;
+		}
+		// lets the request be cancelled while it waits for the sync
+		CancellationToken cancellationToken = GradleBuildCancellation.buildToken(req.getCancellationKey());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SYNCED_MODEL_TIMEOUT);
+		try {
+			while (true) {
+				if (cancellationToken.isCancellationRequested()) {
+					throw new BuildCancelledException("The project content request was cancelled");
+				}
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					logger.warn("The sync didn't fetch the project model in time, fetching it again");
+					return null;
+				}
+				try {
+					return model.get(Math.min(remaining, CANCELLATION_CHECK_INTERVAL), TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// checks the cancellation and the deadline again
+				}
+			}
+		} catch (ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
 		} finally {
 			GradleBuildCancellation.clearToken(req.getCancellationKey());
 		}
 	}
 
+	private void replyWithModel(GradleProjectModel gradleModel) {
+		GradleDependencyNode root = gradleModel.getDependencyNode();
+		responseObserver.onNext(GetProjectsReply.newBuilder().setItem(getDependencyItem(root))
+				.addAllPlugins(gradleModel.getPlugins()).addAllPluginClosures(getPluginClosures(gradleModel))
+				.addAllScriptClasspaths(gradleModel.getScriptClasspaths()).build());
+		responseObserver.onCompleted();
+	}
+
 	private DependencyItem getDependencyItem(GradleDependencyNode node) {
 		DependencyItem.Builder item = DependencyItem.newBuilder();
 		item.setName(node.getName());
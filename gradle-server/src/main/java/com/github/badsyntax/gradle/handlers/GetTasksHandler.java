@@ -0,0 +1,178 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.CompactGradleTask;
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.GetTasksReply;
+import com.github.badsyntax.gradle.GetTasksRequest;
+import com.github.badsyntax.gradle.GradleBuild;
+import com.github.badsyntax.gradle.GradleBuildCancellation;
+import com.github.badsyntax.gradle.GradleBuildModelCache;
+import com.github.badsyntax.gradle.GradleProject;
+import com.github.badsyntax.gradle.GradleProjectConnectionPool;
+import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import com.google.common.base.Strings;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.CancellationToken;
+import org.gradle.tooling.ModelBuilder;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.model.build.BuildEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replies with the tasks of a single project, for a client that synced the
+ * project structure only. The tasks come from the cached project tree while the
+ * build logic is unchanged, otherwise the build is configured again and the
+ * cache refreshed, so the requests for the other projects don't configure it
+ * too.
+ */
+public class GetTasksHandler {
+	private static final Logger logger = LoggerFactory.getLogger(GetTasksHandler.class.getName());
+
+	private GetTasksRequest req;
+	private StreamObserver<GetTasksReply> responseObserver;
+	private GradleProjectConnectionPool connectionPool;
+	private GradleBuildModelCache modelCache;
+
+	public GetTasksHandler(GetTasksRequest req, StreamObserver<GetTasksReply> responseObserver,
+			GradleProjectConnectionPool connectionPool, GradleBuildModelCache modelCache) {
+		this.req = req;
+		this.responseObserver = responseObserver;
+		this.connectionPool = connectionPool;
+		this.modelCache = modelCache;
+	}
+
+	public void run() {
+		// read before the build configures, a change made meanwhile invalidates the
+		// cached project, and shared by the requests for the other projects of the
+		// build
+		String fingerprint = modelCache.getRecentFingerprint(req.getProjectDir(), req.getGradleConfig());
+		GradleBuild build = getCachedBuild(fingerprint);
+		if (build == null) {
+			build = fetchBuild(fingerprint);
+			if (build == null) {
+				return;
+			}
+		}
+		GradleProject project = ProjectTreeBuilder.findProject(build.getProject(), req.getProjectPath());
+		if (project == null) {
+			responseObserver.onError(ErrorMessageBuilder
+					.build(new Exception("Could not find the project " + req.getProjectPath()), Status.NOT_FOUND));
+			return;
+		}
+		replyWithTasks(build, project);
+	}
+
+	/**
+	 * @return the cached project tree if the build logic didn't change since it was
+	 *         cached, or null
+	 */
+	private GradleBuild getCachedBuild(String fingerprint) {
+		GradleBuildModelCache.Entry entry = modelCache.get(req.getProjectDir(), req.getGradleConfig());
+		if (fingerprint == null || entry == null || !entry.getFingerprint().equals(fingerprint)) {
+			return null;
+		}
+		return entry.getBuild();
+	}
+
+	/**
+	 * @return the project tree with compact tasks, or null if the reply is complete
+	 */
+	private GradleBuild fetchBuild(String fingerprint) {
+		GradleProjectConnectionPool.Lease lease = null;
+		try {
+			lease = connectionPool.acquire(req.getProjectDir(), req.getGradleConfig());
+			try (GradleProjectConnectionPool.Lease connectionLease = lease) {
+				ProjectConnection connection = connectionLease.getConnection();
+				// the environment doesn't configure the build, it's fetched for the cache
+				BuildEnvironment environment = getModel(connection, BuildEnvironment.class);
+				GradleBuild build = ProjectTreeBuilder
+						.build(getModel(connection, org.gradle.tooling.model.GradleProject.class), true);
+				if (fingerprint != null) {
+					modelCache.put(req.getProjectDir(), req.getGradleConfig(), new GradleBuildModelCache.Entry(
+							fingerprint, GetBuildHandler.getEnvironment(environment), build));
+				}
+				return build;
+			}
+		} catch (GradleConnectionException e) {
+			logger.error(e.getMessage());
+			responseObserver.onError(ErrorMessageBuilder.build(e));
+			return null;
+		} catch (BuildCancelledException e) {
+			responseObserver.onNext(GetTasksReply.newBuilder().build());
+			responseObserver.onCompleted();
+			return null;
+		} catch (IllegalStateException | org.gradle.tooling.GradleConnectionException e) {
+			if (lease != null) {
+				lease.discard();
+			}
+			logger.error(e.getMessage());
+			responseObserver.onError(ErrorMessageBuilder.build(e));
+			return null;
+		} finally {
+			GradleBuildCancellation.clearToken(req.getCancellationKey());
+		}
+	}
+
+	private <T> T getModel(ProjectConnection connection, Class<T> modelType) {
+		ModelBuilder<T> modelBuilder = connection.model(modelType);
+		CancellationToken cancellationToken = GradleBuildCancellation.buildToken(req.getCancellationKey());
+		modelBuilder.withCancellationToken(cancellationToken);
+		String jvmArguments = req.getGradleConfig().getJvmArguments();
+		if (!Strings.isNullOrEmpty(jvmArguments)) {
+			modelBuilder.setJvmArguments(Arrays.stream(jvmArguments.split(" ")).filter(e -> e != null && !e.isEmpty())
+					.toArray(String[]::new));
+		}
+		return modelBuilder.get();
+	}
+
+	/**
+	 * @param build
+	 *            the project tree with compact tasks
+	 */
+	private void replyWithTasks(GradleBuild build, GradleProject project) {
+		GetTasksReply.Builder reply = GetTasksReply.newBuilder();
+		if (req.getCompactTasks()) {
+			addCompactTasks(reply, project.getCompactTasksList(), build.getStringsList());
+		} else {
+			project.getCompactTasksList()
+					.forEach(task -> reply.addTasks(ProjectTreeBuilder.getTask(task, build.getStringsList())));
+		}
+		responseObserver.onNext(reply.build());
+		responseObserver.onCompleted();
+	}
+
+	/**
+	 * Adds the compact tasks with a string table of their own strings only, rather
+	 * than the one of the whole build.
+	 */
+	private static void addCompactTasks(GetTasksReply.Builder reply, List<CompactGradleTask> tasks,
+			List<String> buildStrings) {
+		Map<Integer, Integer> indexes = new HashMap<>();
+		indexes.put(0, 0);
+		reply.addStrings("");
+		for (CompactGradleTask task : tasks) {
+			reply.addCompactTasks(
+					CompactGradleTask.newBuilder(task).setName(reindex(reply, indexes, buildStrings, task.getName()))
+							.setGroup(reindex(reply, indexes, buildStrings, task.getGroup()))
+							.setProject(reindex(reply, indexes, buildStrings, task.getProject()))
+							.setBuildFile(reindex(reply, indexes, buildStrings, task.getBuildFile()))
+							.setRootProject(reindex(reply, indexes, buildStrings, task.getRootProject()))
+							.setDescription(reindex(reply, indexes, buildStrings, task.getDescription())));
+		}
+	}
+
+	private static int reindex(GetTasksReply.Builder reply, Map<Integer, Integer> indexes, List<String> buildStrings,
+			int index) {
+		return indexes.computeIfAbsent(index, i -> {
+			reply.addStrings(buildStrings.get(i));
+			return reply.getStringsCount() - 1;
+		});
+	}
+}
@@ -0,0 +1,71 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.GradleBuild;
+import com.github.badsyntax.gradle.GradleProject;
+import com.github.badsyntax.gradle.GradleProjectPart;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles the project tree of a build from its streamed parts, with compact
+ * tasks, so the streamed build is cached without building its tree again.
+ */
+class ProjectTreeAssembler {
+	private final Map<String, GradleProject.Builder> projects = new LinkedHashMap<>();
+	// <path, child paths> in the order the children were streamed
+	private final Map<String, List<String>> children = new LinkedHashMap<>();
+	// the string table of the compact tasks of the parts
+	private final List<String> strings = new ArrayList<>();
+	private String rootPath;
+
+	/**
+	 * @param part
+	 *            a part with compact tasks, parents are added before their children
+	 */
+	void add(GradleProjectPart part) {
+		strings.addAll(part.getStringsList());
+		GradleProject.Builder project = projects.get(part.getPath());
+		if (project == null) {
+			project = GradleProject.newBuilder().setPath(part.getPath()).setName(part.getName())
+					.setIsRoot(part.getIsRoot());
+			projects.put(part.getPath(), project);
+			if (part.getIsRoot()) {
+				rootPath = part.getPath();
+			} else {
+				children.computeIfAbsent(part.getParentPath(), path -> new ArrayList<>()).add(part.getPath());
+			}
+		}
+		project.addAllCompactTasks(part.getCompactTasksList());
+	}
+
+	/**
+	 * @return the part with its compact tasks replaced by full ones, given the
+	 *         strings of the parts added so far
+	 */
+	GradleProjectPart withFullTasks(GradleProjectPart part) {
+		GradleProjectPart.Builder fullPart = part.toBuilder().clearStrings().clearCompactTasks();
+		part.getCompactTasksList().forEach(task -> fullPart.addTasks(ProjectTreeBuilder.getTask(task, strings)));
+		return fullPart.build();
+	}
+
+	/**
+	 * @return the tree of the parts added so far, or null if the root project
+	 *         wasn't added
+	 */
+	GradleBuild build() {
+		if (rootPath == null) {
+			return null;
+		}
+		return GradleBuild.newBuilder().setProject(build(rootPath)).addAllStrings(strings).build();
+	}
+
+	private GradleProject build(String path) {
+		GradleProject.Builder project = projects.get(path);
+		for (String childPath : children.getOrDefault(path, new ArrayList<>())) {
+			project.addProjects(build(childPath));
+		}
+		return project.build();
+	}
+}
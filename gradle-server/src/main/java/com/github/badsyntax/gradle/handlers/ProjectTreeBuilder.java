@@ -0,0 +1,128 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.CompactGradleTask;
+import com.github.badsyntax.gradle.GradleBuild;
+import com.github.badsyntax.gradle.GradleProject;
+import com.github.badsyntax.gradle.GradleTask;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the project tree of a build, with the tasks of each project and the
+ * root task selectors.
+ */
+class ProjectTreeBuilder {
+	private ProjectTreeBuilder() {
+	}
+
+	static GradleBuild build(org.gradle.tooling.model.GradleProject rootGradleProject, boolean compactTasks) {
+		TaskEncoder taskEncoder = new TaskEncoder(rootGradleProject, compactTasks);
+		GradleBuild.Builder build = GradleBuild.newBuilder().setProject(getProjectData(rootGradleProject, taskEncoder));
+		if (compactTasks) {
+			taskEncoder.addStrings(build);
+		}
+		return build.build();
+	}
+
+	private static GradleProject getProjectData(org.gradle.tooling.model.GradleProject gradleProject,
+			TaskEncoder taskEncoder) {
+		boolean isRoot = gradleProject.getParent() == null;
+		GradleProject.Builder project = GradleProject.newBuilder().setIsRoot(isRoot);
+		if (gradleProject.getPath() != null) {
+			project.setPath(gradleProject.getPath());
+		}
+		if (gradleProject.getName() != null) {
+			project.setName(gradleProject.getName());
+		}
+		gradleProject.getChildren().stream()
+				.forEach(childGradleProject -> project.addProjects(getProjectData(childGradleProject, taskEncoder)));
+		gradleProject.getTasks().stream().forEach(task -> taskEncoder.addTask(project, task));
+		if (isRoot) {
+			getTaskSelectors(gradleProject).forEach(task -> taskEncoder.addTaskSelector(project, task));
+		}
+		return project.build();
+	}
+
+	/**
+	 * Both the built and the streamed trees take their root task selectors from
+	 * here, so they list them in the same order.
+	 *
+	 * @return the first task of each name, the projects visited before their
+	 *         children, without the names of the tasks of the root project
+	 */
+	static Collection<org.gradle.tooling.model.GradleTask> getTaskSelectors(
+			org.gradle.tooling.model.GradleProject rootGradleProject) {
+		Map<String, org.gradle.tooling.model.GradleTask> taskSelectors = new LinkedHashMap<>();
+		collectTaskSelectors(rootGradleProject, taskSelectors);
+		rootGradleProject.getTasks().stream().forEach(task -> taskSelectors.remove(task.getName()));
+		return taskSelectors.values();
+	}
+
+	private static void collectTaskSelectors(org.gradle.tooling.model.GradleProject gradleProject,
+			Map<String, org.gradle.tooling.model.GradleTask> taskSelectors) {
+		gradleProject.getTasks().stream().forEach(task -> taskSelectors.putIfAbsent(task.getName(), task));
+		gradleProject.getChildren().stream()
+				.forEach(childGradleProject -> collectTaskSelectors(childGradleProject, taskSelectors));
+	}
+
+	/**
+	 * @return the project of the given path in the tree, or null if there's none
+	 */
+	static GradleProject findProject(GradleProject project, String path) {
+		if (project.getPath().equals(path)) {
+			return project;
+		}
+		for (GradleProject childProject : project.getProjectsList()) {
+			GradleProject found = findProject(childProject, path);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the tree with its compact tasks replaced by full ones
+	 */
+	static GradleBuild withFullTasks(GradleBuild build) {
+		if (build.getStringsCount() == 0) {
+			return build;
+		}
+		return build.toBuilder().clearStrings().setProject(withFullTasks(build.getProject(), build.getStringsList()))
+				.build();
+	}
+
+	private static GradleProject withFullTasks(GradleProject project, List<String> strings) {
+		GradleProject.Builder fullProject = project.toBuilder().clearCompactTasks().clearProjects();
+		project.getCompactTasksList().forEach(task -> fullProject.addTasks(getTask(task, strings)));
+		project.getProjectsList()
+				.forEach(childProject -> fullProject.addProjects(withFullTasks(childProject, strings)));
+		return fullProject.build();
+	}
+
+	/**
+	 * @param strings
+	 *            the string table the compact task refers to
+	 */
+	static GradleTask getTask(CompactGradleTask task, List<String> strings) {
+		return GradleTask.newBuilder().setName(strings.get(task.getName())).setGroup(strings.get(task.getGroup()))
+				.setPath(task.getPath()).setProject(strings.get(task.getProject()))
+				.setBuildFile(strings.get(task.getBuildFile())).setRootProject(strings.get(task.getRootProject()))
+				.setDescription(strings.get(task.getDescription())).build();
+	}
+
+	/**
+	 * @return the tree without the tasks, nor their string table
+	 */
+	static GradleBuild withoutTasks(GradleBuild build) {
+		return build.toBuilder().clearStrings().setProject(withoutTasks(build.getProject())).build();
+	}
+
+	private static GradleProject withoutTasks(GradleProject project) {
+		GradleProject.Builder structure = project.toBuilder().clearTasks().clearCompactTasks().clearProjects();
+		project.getProjectsList().forEach(childProject -> structure.addProjects(withoutTasks(childProject)));
+		return structure.build();
+	}
+}
@@ -1,11 +1,13 @@
 package com.github.badsyntax.gradle.handlers;
 
-import com.github.badsyntax.gradle.ByteBufferOutputStream;
 import com.github.badsyntax.gradle.Cancelled;
 import com.github.badsyntax.gradle.ErrorMessageBuilder;
 import com.github.badsyntax.gradle.GradleBuildRunner;
+import com.github.badsyntax.gradle.GradleProjectConnectionPool;
 import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.OutputBatcher;
 import com.github.badsyntax.gradle.Progress;
+import com.github.badsyntax.gradle.QueuedStreamObserver;
 import com.github.badsyntax.gradle.RunBuildReply;
 import com.github.badsyntax.gradle.RunBuildRequest;
 import com.github.badsyntax.gradle.RunBuildResult;
@@ -13,7 +15,6 @@ import com.github.badsyntax.gradle.exceptions.GradleBuildRunnerException;
 import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
 import com.google.common.base.Strings;
 import com.google.protobuf.ByteString;
-import io.grpc.stub.StreamObserver;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import org.gradle.tooling.BuildCancelledException;
@@ -29,34 +30,21 @@ public class RunBuildHandler {
 	private static final Logger logger = LoggerFactory.getLogger(RunBuildHandler.class.getName());
 
 	private RunBuildRequest req;
-	private StreamObserver<RunBuildReply> responseObserver;
+	private QueuedStreamObserver<RunBuildReply> responseObserver;
+	private GradleProjectConnectionPool connectionPool;
 	private ProgressListener progressListener;
-	private ByteBufferOutputStream standardOutputListener;
-	private ByteBufferOutputStream standardErrorListener;
+	private OutputBatcher outputBatcher;
 
-	public RunBuildHandler(RunBuildRequest req, StreamObserver<RunBuildReply> responseObserver) {
+	public RunBuildHandler(RunBuildRequest req, QueuedStreamObserver<RunBuildReply> responseObserver,
+			GradleProjectConnectionPool connectionPool) {
 		this.req = req;
 		this.responseObserver = responseObserver;
+		this.connectionPool = connectionPool;
+		this.outputBatcher = new OutputBatcher(this::replyWithOutput, responseObserver::awaitCapacity);
 		this.progressListener = (ProgressEvent event) -> {
-			synchronized (RunBuildHandler.class) {
-				replyWithProgress(event);
-			}
-		};
-		this.standardOutputListener = new ByteBufferOutputStream() {
-			@Override
-			public void onFlush(byte[] bytes) {
-				synchronized (RunBuildHandler.class) {
-					replyWithStandardOutput(bytes);
-				}
-			}
-		};
-		this.standardErrorListener = new ByteBufferOutputStream() {
-			@Override
-			public void onFlush(byte[] bytes) {
-				synchronized (RunBuildHandler.class) {
-					replyWithStandardError(bytes);
-				}
-			}
+			// the output written before the event is sent first
+			outputBatcher.flush();
+			replyWithProgress(event);
 		};
 	}
 
@@ -64,15 +52,20 @@ public class RunBuildHandler {
 		GradleBuildRunner gradleRunner = new GradleBuildRunner(req.getProjectDir(), req.getArgsList(),
 				req.getGradleConfig(), req.getCancellationKey(), req.getShowOutputColors(), req.getJavaDebugPort(),
 				req.getJavaDebugCleanOutputCache());
-		gradleRunner.setProgressListener(progressListener).setStandardOutputStream(standardOutputListener)
-				.setStandardErrorStream(standardErrorListener);
+		gradleRunner.setConnectionPool(connectionPool).setProgressListener(progressListener)
+				.setStandardOutputStream(outputBatcher.getStandardOutput())
+				.setStandardErrorStream(outputBatcher.getStandardError());
 
 		if (!Strings.isNullOrEmpty(req.getInput())) {
 			gradleRunner.setStandardInputStream(new ByteArrayInputStream(req.getInput().getBytes()));
 		}
 
 		try {
-			gradleRunner.run();
+			try {
+				gradleRunner.run();
+			} finally {
+				outputBatcher.close();
+			}
 			replyWithSuccess();
 			responseObserver.onCompleted();
 		} catch (BuildCancelledException e) {
@@ -106,17 +99,8 @@ public class RunBuildHandler {
 				.setProgress(Progress.newBuilder().setMessage(progressEvent.getDisplayName())).build());
 	}
 
-	private void replyWithStandardOutput(byte[] bytes) {
-		ByteString byteString = ByteString.copyFrom(bytes);
-		responseObserver.onNext(RunBuildReply.newBuilder()
-				.setOutput(Output.newBuilder().setOutputType(Output.OutputType.STDOUT).setOutputBytes(byteString))
-				.build());
-	}
-
-	private void replyWithStandardError(byte[] bytes) {
-		ByteString byteString = ByteString.copyFrom(bytes);
-		responseObserver.onNext(RunBuildReply.newBuilder()
-				.setOutput(Output.newBuilder().setOutputType(Output.OutputType.STDERR).setOutputBytes(byteString))
-				.build());
+	private void replyWithOutput(Output.OutputType outputType, ByteString bytes) {
+		responseObserver.offer(RunBuildReply.newBuilder()
+				.setOutput(Output.newBuilder().setOutputType(outputType).setOutputBytes(bytes)).build());
 	}
 }
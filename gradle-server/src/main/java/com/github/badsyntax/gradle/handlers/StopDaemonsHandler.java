@@ -3,8 +3,9 @@ package com.github.badsyntax.gradle.handlers;
 import com.github.badsyntax.gradle.ErrorMessageBuilder;
 import com.github.badsyntax.gradle.GradleExecution;
 import com.github.badsyntax.gradle.GradleLocalInstallation;
+import com.github.badsyntax.gradle.GradleProjectConnectionContext;
+import com.github.badsyntax.gradle.GradleProjectConnectionRegistry;
 import com.github.badsyntax.gradle.GradleProjectConnectionType;
-import com.github.badsyntax.gradle.GradleProjectConnector;
 import com.github.badsyntax.gradle.GradleWrapper;
 import com.github.badsyntax.gradle.StopDaemonsReply;
 import com.github.badsyntax.gradle.StopDaemonsRequest;
@@ -19,17 +20,21 @@ public class StopDaemonsHandler {
 
 	private StopDaemonsRequest req;
 	private StreamObserver<StopDaemonsReply> responseObserver;
+	private GradleProjectConnectionRegistry connectionRegistry;
 
-	public StopDaemonsHandler(StopDaemonsRequest req, StreamObserver<StopDaemonsReply> responseObserver) {
+	public StopDaemonsHandler(StopDaemonsRequest req, StreamObserver<StopDaemonsReply> responseObserver,
+			GradleProjectConnectionRegistry connectionRegistry) {
 		this.req = req;
 		this.responseObserver = responseObserver;
+		this.connectionRegistry = connectionRegistry;
 	}
 
 	public void run() {
 		File projectRoot = new File(req.getProjectDir());
 		try {
 			GradleExecution gradleExecution = null;
-			GradleProjectConnectionType connectionType = GradleProjectConnector.getConnectionType();
+			GradleProjectConnectionContext context = connectionRegistry.get(req.getProjectDir());
+			GradleProjectConnectionType connectionType = context.getConnectionType();
 			if (connectionType == GradleProjectConnectionType.WRAPPER) {
 				if (!GradleWrapper.hasValidWrapper(projectRoot)) {
 					// When java.import.gradle.wrapper.enabled is set to true but no wrapper
@@ -42,7 +47,7 @@ public class StopDaemonsHandler {
 				}
 				gradleExecution = new GradleWrapper(projectRoot);
 			} else if (connectionType == GradleProjectConnectionType.LOCALINSTALLATION) {
-				String localInstallation = GradleProjectConnector.getLocalInstallation();
+				String localInstallation = context.getLocalInstallation();
 				gradleExecution = new GradleLocalInstallation(new File(localInstallation));
 			} else if (connectionType == GradleProjectConnectionType.SPECIFICVERSION) {
 				// We disabled stop all daemons in the client when specifies a gradle version
@@ -0,0 +1,138 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.CompactGradleTask;
+import com.github.badsyntax.gradle.GradleBuild;
+import com.github.badsyntax.gradle.GradleProject;
+import com.github.badsyntax.gradle.GradleProjectPart;
+import com.github.badsyntax.gradle.GradleTask;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the tasks of a reply, either in full or compact. A compact task refers
+ * to its repeated strings, e.g. the build file, the project and the group, by
+ * their index in a string table sent along with the tasks.
+ */
+class TaskEncoder {
+	private final org.gradle.tooling.model.GradleProject rootGradleProject;
+	private final boolean compact;
+	private final Map<String, Integer> indexes = new HashMap<>();
+	// the strings added to the table since they were last sent
+	private final List<String> newStrings = new ArrayList<>();
+
+	TaskEncoder(org.gradle.tooling.model.GradleProject rootGradleProject, boolean compact) {
+		this.rootGradleProject = rootGradleProject;
+		this.compact = compact;
+		indexOf("");
+	}
+
+	boolean isCompact() {
+		return compact;
+	}
+
+	void addTask(GradleProject.Builder project, org.gradle.tooling.model.GradleTask task) {
+		if (compact) {
+			project.addCompactTasks(getCompactTask(task));
+		} else {
+			project.addTasks(getTask(task));
+		}
+	}
+
+	void addTask(GradleProjectPart.Builder part, org.gradle.tooling.model.GradleTask task) {
+		if (compact) {
+			part.addCompactTasks(getCompactTask(task));
+		} else {
+			part.addTasks(getTask(task));
+		}
+	}
+
+	/**
+	 * Adds the root task selector running the tasks of the same name as the given
+	 * one.
+	 */
+	void addTaskSelector(GradleProject.Builder project, org.gradle.tooling.model.GradleTask task) {
+		if (compact) {
+			project.addCompactTasks(getCompactTaskSelector(task));
+		} else {
+			project.addTasks(getTaskSelector(task));
+		}
+	}
+
+	void addTaskSelector(GradleProjectPart.Builder part, org.gradle.tooling.model.GradleTask task) {
+		if (compact) {
+			part.addCompactTasks(getCompactTaskSelector(task));
+		} else {
+			part.addTasks(getTaskSelector(task));
+		}
+	}
+
+	/**
+	 * Adds the strings added to the table since they were last added.
+	 */
+	void addStrings(GradleBuild.Builder build) {
+		build.addAllStrings(newStrings);
+		newStrings.clear();
+	}
+
+	void addStrings(GradleProjectPart.Builder part) {
+		part.addAllStrings(newStrings);
+		newStrings.clear();
+	}
+
+	private GradleTask getTask(org.gradle.tooling.model.GradleTask task) {
+		GradleTask.Builder gradleTask = GradleTask.newBuilder().setProject(task.getProject().getName())
+				.setName(task.getName()).setPath(task.getPath())
+				.setBuildFile(task.getProject().getBuildScript().getSourceFile().getAbsolutePath())
+				.setRootProject(rootGradleProject.getName());
+		if (task.getDescription() != null) {
+			gradleTask.setDescription(task.getDescription());
+		}
+		if (task.getGroup() != null) {
+			gradleTask.setGroup(task.getGroup());
+		}
+		return gradleTask.build();
+	}
+
+	private GradleTask getTaskSelector(org.gradle.tooling.model.GradleTask task) {
+		GradleTask.Builder taskSelector = GradleTask.newBuilder().setProject(rootGradleProject.getName())
+				.setName(task.getName()).setPath(task.getName())
+				.setBuildFile(rootGradleProject.getBuildScript().getSourceFile().getAbsolutePath())
+				.setRootProject(rootGradleProject.getName());
+		if (task.getDescription() != null) {
+			taskSelector.setDescription(task.getDescription());
+		}
+		if (task.getGroup() != null) {
+			taskSelector.setGroup(task.getGroup());
+		}
+		return taskSelector.build();
+	}
+
+	private CompactGradleTask getCompactTask(org.gradle.tooling.model.GradleTask task) {
+		return CompactGradleTask.newBuilder().setName(indexOf(task.getName())).setGroup(indexOf(task.getGroup()))
+				.setPath(task.getPath()).setProject(indexOf(task.getProject().getName()))
+				.setBuildFile(indexOf(task.getProject().getBuildScript().getSourceFile().getAbsolutePath()))
+				.setRootProject(indexOf(rootGradleProject.getName())).setDescription(indexOf(task.getDescription()))
+				.build();
+	}
+
+	private CompactGradleTask getCompactTaskSelector(org.gradle.tooling.model.GradleTask task) {
+		return CompactGradleTask.newBuilder().setName(indexOf(task.getName())).setGroup(indexOf(task.getGroup()))
+				.setPath(task.getName()).setProject(indexOf(rootGradleProject.getName()))
+				.setBuildFile(indexOf(rootGradleProject.getBuildScript().getSourceFile().getAbsolutePath()))
+				.setRootProject(indexOf(rootGradleProject.getName())).setDescription(indexOf(task.getDescription()))
+				.build();
+	}
+
+	private int indexOf(String value) {
+		String string = value == null ? "" : value;
+		Integer index = indexes.get(string);
+		if (index == null) {
+			index = indexes.size();
+			indexes.put(string, index);
+			newStrings.add(string);
+		}
+		return index;
+	}
+}
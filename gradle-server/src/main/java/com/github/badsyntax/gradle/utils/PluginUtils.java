@@ -21,9 +21,12 @@ public class PluginUtils {
 	}
 
 	private static void createPluginJar(String resource, File outputFile) throws IOException {
-		InputStream input = PluginUtils.class.getResourceAsStream(resource);
-		Files.copy(input, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-		input.close();
+		try (InputStream input = PluginUtils.class.getResourceAsStream(resource)) {
+			if (input == null) {
+				throw new IOException("Could not find the plugin " + resource);
+			}
+			Files.copy(input, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
 	}
 
 	private static void createTemplateScript(File pluginFile, File outputFile) throws IOException {
@@ -1,13 +1,25 @@
 package com.github.badsyntax.gradle;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.*;
 
+import com.github.badsyntax.gradle.exceptions.GradleCancellationException;
+import com.github.badsyntax.gradle.handlers.GetProjectsHandler;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.microsoft.gradle.api.GradleDependencyNode;
+import com.microsoft.gradle.api.GradleDependencyType;
+import com.microsoft.gradle.api.GradleProjectModel;
 import io.grpc.ManagedChannel;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
@@ -21,10 +33,19 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.model.internal.ImmutableDomainObjectSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -33,6 +54,7 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -48,14 +70,16 @@ public class GradleServerTest {
 	private ManagedChannel inProcessChannel;
 	private File mockProjectDir;
 	private File mockGradleUserHome;
+	private File mockModelCacheDir;
 	private File mockJavaHome;
 	private List<String> mockJvmArgs;
 	private List<String> mockBuildArgs;
 
 	@Before
 	public void setUp() throws Exception {
+		mockModelCacheDir = Files.createTempDirectory("mockModelCacheDir").toFile();
 		String serverName = InProcessServerBuilder.generateName();
-		server = new GradleServer(InProcessServerBuilder.forName(serverName).directExecutor(), 0);
+		server = createServer(serverName);
 		server.start();
 		inProcessChannel = grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build());
 		mockProjectDir = new File(Files.createTempDirectory("mockProjectDir").toAbsolutePath().toString());
@@ -80,6 +104,19 @@ public class GradleServerTest {
 	@Mock
 	org.gradle.tooling.model.DomainObjectSet<? extends org.gradle.tooling.model.GradleTask> mockTasks;
 
+	private GradleServer createServer(String serverName) {
+		return new GradleServer(InProcessServerBuilder.forName(serverName).directExecutor(), 0,
+				createService(new GradleProjectConnectionPool()));
+	}
+
+	private GradleService createService(GradleProjectConnectionPool connectionPool) {
+		// the handlers run, the replies are sent, and the stale projects refreshed,
+		// before the calls return
+		return new GradleService(connectionPool, new GradleBuildModelCache(mockModelCacheDir.toPath()),
+				MoreExecutors.directExecutor(), QueuedStreamObserver.DEFAULT_BUFFER_SIZE,
+				QueuedStreamObserver.OverflowPolicy.DROP_PROGRESS, MoreExecutors.directExecutor());
+	}
+
 	@Mock
 	org.gradle.tooling.model.GradleProject mockGradleProject;
 	@Mock
@@ -100,6 +137,17 @@ public class GradleServerTest {
 	org.gradle.tooling.model.build.JavaEnvironment mockJavaEnvironment;
 	@Mock
 	org.gradle.tooling.BuildLauncher mockBuildLauncher;
+	@Mock
+	org.gradle.tooling.BuildActionExecuter.Builder mockSyncActionBuilder;
+	@Mock
+	org.gradle.tooling.BuildActionExecuter<Void> mockSyncAction;
+	@Mock
+	GradleProjectModel mockGradleProjectModel;
+	@Mock
+	GradleDependencyNode mockDependencyNode;
+
+	private org.gradle.tooling.IntermediateResultHandler<org.gradle.tooling.model.GradleProject> projectTreeHandler;
+	private org.gradle.tooling.IntermediateResultHandler<GradleProjectModel> projectModelHandler;
 
 	private void setupMocks() {
 		mockStatic(org.gradle.tooling.GradleConnector.class);
@@ -137,6 +185,37 @@ public class GradleServerTest {
 		when(mockConnection.model(org.gradle.tooling.model.build.BuildEnvironment.class))
 				.thenReturn(mockBuildEnvironmentBuilder);
 
+		// Sync action (getBuild) mocks
+		when(mockSyncActionBuilder.projectsLoaded(any(), any())).thenAnswer(invocation -> {
+			projectTreeHandler = invocation.getArgument(1);
+			return mockSyncActionBuilder;
+		});
+		when(mockSyncActionBuilder.buildFinished(any(), any())).thenAnswer(invocation -> {
+			projectModelHandler = invocation.getArgument(1);
+			return mockSyncActionBuilder;
+		});
+		when(mockSyncActionBuilder.build()).thenReturn(mockSyncAction);
+		when(mockSyncAction.withCancellationToken(any())).thenReturn(mockSyncAction);
+		when(mockSyncAction.addProgressListener(any(org.gradle.tooling.events.ProgressListener.class),
+				ArgumentMatchers.<Set<OperationType>>any())).thenReturn(mockSyncAction);
+		when(mockSyncAction.setStandardOutput(any(OutputStream.class))).thenReturn(mockSyncAction);
+		when(mockSyncAction.setStandardError(any(OutputStream.class))).thenReturn(mockSyncAction);
+		when(mockSyncAction.setColorOutput(any(Boolean.class))).thenReturn(mockSyncAction);
+		doAnswer(invocation -> {
+			projectTreeHandler.onComplete(mockGradleProject);
+			if (projectModelHandler != null) {
+				projectModelHandler.onComplete(mockGradleProjectModel);
+			}
+			return null;
+		}).when(mockSyncAction).run();
+		when(mockConnection.action()).thenReturn(mockSyncActionBuilder);
+		when(mockDependencyNode.getName()).thenReturn("mockProject");
+		when(mockDependencyNode.getType()).thenReturn(GradleDependencyType.PROJECT);
+		when(mockGradleProjectModel.getDependencyNode()).thenReturn(mockDependencyNode);
+		when(mockGradleProjectModel.getPlugins()).thenReturn(Collections.singletonList("java"));
+		when(mockGradleProjectModel.getClosures()).thenReturn(Collections.emptyList());
+		when(mockGradleProjectModel.getScriptClasspaths()).thenReturn(Collections.emptyList());
+
 		// Build launcher (run build) mocks
 		when(mockBuildLauncher.withCancellationToken(any())).thenReturn(mockBuildLauncher);
 		when(mockBuildLauncher.addProgressListener(any(org.gradle.tooling.events.ProgressListener.class),
@@ -220,7 +299,7 @@ public class GradleServerTest {
 
 		stub.getBuild(req, mockResponseObserver);
 		verify(mockResponseObserver, never()).onError(any());
-		verify(mockGradleProjectBuilder).setJvmArguments(jvmArgs.split(" "));
+		verify(mockSyncAction).setJvmArguments(jvmArgs.split(" "));
 	}
 
 	@Test
@@ -232,13 +311,13 @@ public class GradleServerTest {
 
 		stub.getBuild(req1, mockResponseObserver);
 		verify(mockResponseObserver, never()).onError(any());
-		verify(mockGradleProjectBuilder).setColorOutput(false);
+		verify(mockSyncAction).setColorOutput(false);
 
 		GetBuildRequest req2 = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
 				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setShowOutputColors(true).build();
 		stub.getBuild(req2, mockResponseObserver);
 		verify(mockResponseObserver, never()).onError(any());
-		verify(mockGradleProjectBuilder).setColorOutput(true);
+		verify(mockSyncAction).setColorOutput(true);
 	}
 
 	@Test
@@ -253,13 +332,686 @@ public class GradleServerTest {
 		stub.getBuild(req, mockResponseObserver);
 		verify(mockResponseObserver, never()).onError(any());
 
-		verify(mockGradleProjectBuilder).addProgressListener(any(org.gradle.tooling.events.ProgressListener.class),
+		verify(mockSyncAction).addProgressListener(any(org.gradle.tooling.events.ProgressListener.class),
 				onAddProgressListener.capture());
 
 		assertEquals(1, onAddProgressListener.getValue().size());
 		assertTrue(onAddProgressListener.getValue().contains(OperationType.PROJECT_CONFIGURATION));
 	}
 
+	@Test
+	public void getBuild_shouldReuseConnection() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockConnector, times(1)).connect();
+		verify(mockSyncAction, times(2)).run();
+		verify(mockConnection, never()).close();
+
+		server.stop();
+		verify(mockConnection).close();
+	}
+
+	@Test
+	public void getBuild_shouldReplyWithErrorIfConnectionFails() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+		when(mockConnector.connect())
+				.thenThrow(new org.gradle.tooling.GradleConnectionException("Could not connect to the daemon"));
+
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver).onError(any());
+		verify(mockResponseObserver, never()).onCompleted();
+	}
+
+	@Test
+	public void getProjects_shouldReplyWithErrorIfConnectionPoolIsClosed() throws Exception {
+		StreamObserver<GetProjectsReply> mockResponseObserver = (StreamObserver<GetProjectsReply>) mock(
+				StreamObserver.class);
+		GradleProjectConnectionPool connectionPool = new GradleProjectConnectionPool();
+		connectionPool.close();
+
+		GetProjectsRequest req = GetProjectsRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+
+		createService(connectionPool).getProjects(req, mockResponseObserver);
+		verify(mockResponseObserver).onError(any());
+		verify(mockResponseObserver, never()).onCompleted();
+	}
+
+	@Test
+	public void getBuild_shouldFallBackToProjectModelWithoutPhasedActions() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+		doThrow(new org.gradle.tooling.UnsupportedVersionException("Phased build actions are not supported"))
+				.when(mockSyncAction).run();
+
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockGradleProjectBuilder).get();
+		verify(mockResponseObserver).onCompleted();
+	}
+
+	@Test
+	public void getBuild_shouldNotFetchProjectModelUnlessRequested() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockResponseObserver).onCompleted();
+		verify(mockSyncActionBuilder).projectsLoaded(any(), any());
+		verify(mockSyncActionBuilder, never()).buildFinished(any(), any());
+		verify(mockSyncAction, never()).withArguments(any(String[].class));
+	}
+
+	@Test
+	public void getProjects_shouldUseProjectModelOfSync() throws Exception {
+		StreamObserver<GetBuildReply> mockBuildResponseObserver = (StreamObserver<GetBuildReply>) mock(
+				StreamObserver.class);
+		StreamObserver<GetProjectsReply> mockProjectsResponseObserver = (StreamObserver<GetProjectsReply>) mock(
+				StreamObserver.class);
+
+		GradleConfig gradleConfig = GradleConfig.newBuilder().setWrapperEnabled(true).build();
+		GetBuildRequest buildReq = GetBuildRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString()).setGradleConfig(gradleConfig)
+				.setFetchProjectModel(true).build();
+		GetProjectsRequest projectsReq = GetProjectsRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString()).setGradleConfig(gradleConfig).build();
+
+		stub.getBuild(buildReq, mockBuildResponseObserver);
+		stub.getProjects(projectsReq, mockProjectsResponseObserver);
+		verify(mockProjectsResponseObserver, never()).onError(any());
+		verify(mockConnection, never()).action(any(org.gradle.tooling.BuildAction.class));
+		ArgumentCaptor<GetProjectsReply> onNext = ArgumentCaptor.forClass(GetProjectsReply.class);
+		verify(mockProjectsResponseObserver).onNext(onNext.capture());
+		assertEquals("mockProject", onNext.getValue().getItem().getName());
+		assertEquals(Collections.singletonList("java"), onNext.getValue().getPluginsList());
+	}
+
+	@Test
+	public void getProjects_shouldStopWaitingForSyncWhenCancelled() throws Exception {
+		StreamObserver<GetProjectsReply> mockResponseObserver = (StreamObserver<GetProjectsReply>) mock(
+				StreamObserver.class);
+		GradleConfig gradleConfig = GradleConfig.newBuilder().setWrapperEnabled(true).build();
+		GradleProjectModelStore modelStore = new GradleProjectModelStore();
+		// a sync which never fetches its model
+		modelStore.expect(mockProjectDir.getAbsolutePath(), gradleConfig);
+		GetProjectsRequest req = GetProjectsRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath())
+				.setGradleConfig(gradleConfig).setCancellationKey("getProjects").build();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		doAnswer(invocation -> {
+			cancelled.set(true);
+			return null;
+		}).when(mockCancellationTokenSource).cancel();
+		when(mockCancellationToken.isCancellationRequested()).thenAnswer(invocation -> cancelled.get());
+		Thread handler = new Thread(
+				new GetProjectsHandler(req, mockResponseObserver, new GradleProjectConnectionPool(), modelStore)::run);
+		handler.start();
+		// the request may not wait yet
+		for (int i = 0; i < 50 && handler.isAlive(); i++) {
+			try {
+				GradleBuildCancellation.cancelBuild("getProjects");
+				break;
+			} catch (GradleCancellationException e) {
+				Thread.sleep(100);
+			}
+		}
+		handler.join(5000);
+		assertFalse(handler.isAlive());
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockResponseObserver).onNext(GetProjectsReply.newBuilder().build());
+		verify(mockResponseObserver).onCompleted();
+		verify(mockConnection, never()).action(any(org.gradle.tooling.BuildAction.class));
+	}
+
+	@Test
+	public void getBuild_shouldReplyWithCachedProject() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		Files.write(new File(mockProjectDir, "build.gradle").toPath(), "apply plugin: 'java'".getBytes());
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setUseCache(true).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockSyncAction, times(1)).run();
+		verify(mockResponseObserver, times(2)).onCompleted();
+
+		// persisted
+		String serverName = InProcessServerBuilder.generateName();
+		GradleServer otherServer = createServer(serverName);
+		otherServer.start();
+		GradleGrpc.GradleStub otherStub = GradleGrpc
+				.newStub(grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+		otherStub.getBuild(req, mockResponseObserver);
+		otherServer.stop();
+		verify(mockSyncAction, times(1)).run();
+		verify(mockResponseObserver, times(3)).onCompleted();
+	}
+
+	@Test
+	public void getBuild_shouldRegisterConnectionContextOfCachedProject() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		String projectDir = mockProjectDir.getAbsolutePath().toString();
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(projectDir)
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setUseCache(true).build();
+		stub.getBuild(req, mockResponseObserver);
+
+		GradleProjectConnectionPool connectionPool = new GradleProjectConnectionPool();
+		createService(connectionPool).getBuild(req, mockResponseObserver);
+		connectionPool.close();
+		verify(mockSyncAction, times(1)).run();
+		verify(mockResponseObserver, times(2)).onCompleted();
+		assertEquals(GradleProjectConnectionContext.WRAPPER, connectionPool.getRegistry().get(projectDir));
+	}
+
+	@Test
+	public void getBuild_shouldReplyWithStaleProjectAfterBuildLogicChange() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		File buildFile = new File(mockProjectDir, "build.gradle");
+		Files.write(buildFile.toPath(), "apply plugin: 'java'".getBytes());
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setUseCache(true).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		Files.write(buildFile.toPath(), "apply plugin: 'application'".getBytes());
+		// refreshed once the stale project is sent
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockSyncAction, times(2)).run();
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockSyncAction, times(2)).run();
+		verify(mockResponseObserver, times(3)).onCompleted();
+
+		ArgumentCaptor<GetBuildReply> onNext = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockResponseObserver, times(6)).onNext(onNext.capture());
+		List<Boolean> stale = new ArrayList<>();
+		for (GetBuildReply reply : onNext.getAllValues()) {
+			if (reply.hasGetBuildResult()) {
+				stale.add(reply.getGetBuildResult().getStale());
+			}
+		}
+		assertEquals(Arrays.asList(false, true, false), stale);
+	}
+
+	@Test
+	public void modelCache_shouldFingerprintBuildLogicOnly() throws Exception {
+		GradleConfig gradleConfig = GradleConfig.newBuilder().setWrapperEnabled(true).build();
+		String projectDir = mockProjectDir.getAbsolutePath();
+		Files.write(new File(mockProjectDir, "settings.gradle").toPath(),
+				"includeBuild('plugins')\ninclude 'app'".getBytes());
+		File appSource = new File(mockProjectDir, "app/src/main/java/App.java");
+		File pluginSource = new File(mockProjectDir, "plugins/src/main/java/Plugin.java");
+		File buildSrcSource = new File(mockProjectDir, "buildSrc/src/main/kotlin/Convention.kt");
+		for (File source : Arrays.asList(appSource, pluginSource, buildSrcSource)) {
+			source.getParentFile().mkdirs();
+			Files.write(source.toPath(), "class A {}".getBytes());
+		}
+		String fingerprint = GradleBuildModelCache.getFingerprint(projectDir, gradleConfig);
+		Files.write(appSource.toPath(), "class B {}".getBytes());
+		assertEquals(fingerprint, GradleBuildModelCache.getFingerprint(projectDir, gradleConfig));
+		Files.write(pluginSource.toPath(), "class B {}".getBytes());
+		String pluginFingerprint = GradleBuildModelCache.getFingerprint(projectDir, gradleConfig);
+		assertNotEquals(fingerprint, pluginFingerprint);
+		Files.write(buildSrcSource.toPath(), "class B {}".getBytes());
+		assertNotEquals(pluginFingerprint, GradleBuildModelCache.getFingerprint(projectDir, gradleConfig));
+	}
+
+	@Test
+	public void modelCache_shouldWaitForRevalidation() throws Exception {
+		GradleBuildModelCache modelCache = new GradleBuildModelCache(null);
+		GradleConfig gradleConfig = GradleConfig.newBuilder().setWrapperEnabled(true).build();
+		String projectDir = mockProjectDir.getAbsolutePath();
+		CountDownLatch revalidated = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			modelCache.revalidate(projectDir, gradleConfig, executor, () -> {
+				try {
+					revalidated.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			CompletableFuture<Boolean> waited = CompletableFuture
+					.supplyAsync(() -> modelCache.awaitRevalidation(projectDir, gradleConfig));
+			Thread.sleep(200);
+			assertFalse(waited.isDone());
+			revalidated.countDown();
+			assertTrue(waited.get(5, TimeUnit.SECONDS));
+			assertFalse(modelCache.awaitRevalidation(projectDir, gradleConfig));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void mockProjectTree() {
+		org.gradle.tooling.model.GradleProject mockAppProject = mock(org.gradle.tooling.model.GradleProject.class);
+		when(mockGradleProject.getPath()).thenReturn(":");
+		when(mockGradleProject.getName()).thenReturn("root");
+		when(mockAppProject.getPath()).thenReturn(":app");
+		when(mockAppProject.getName()).thenReturn("app");
+		doReturn(mockGradleProject).when(mockAppProject).getParent();
+		doReturn(ImmutableDomainObjectSet.of(Collections.singletonList(mockAppProject))).when(mockGradleProject)
+				.getChildren();
+		doReturn(ImmutableDomainObjectSet.of(Collections.emptyList())).when(mockAppProject).getChildren();
+		doReturn(ImmutableDomainObjectSet.of(Collections.singletonList(mockTask(mockGradleProject, "build"))))
+				.when(mockGradleProject).getTasks();
+		doReturn(ImmutableDomainObjectSet
+				.of(Arrays.asList(mockTask(mockAppProject, "build"), mockTask(mockAppProject, "test"))))
+						.when(mockAppProject).getTasks();
+	}
+
+	@Test
+	public void getBuild_shouldStreamProjectParts() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		mockProjectTree();
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setStreamProjects(true).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockResponseObserver).onCompleted();
+
+		ArgumentCaptor<GetBuildReply> onNext = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockResponseObserver, Mockito.atLeastOnce()).onNext(onNext.capture());
+		List<String> parts = new ArrayList<>();
+		for (GetBuildReply reply : onNext.getAllValues()) {
+			if (reply.hasProjectPart()) {
+				GradleProjectPart part = reply.getProjectPart();
+				List<String> tasks = new ArrayList<>();
+				part.getTasksList().forEach(task -> tasks.add(task.getPath()));
+				parts.add(part.getPath() + "<" + part.getParentPath() + tasks);
+			}
+		}
+		assertEquals(Arrays.asList(":<[]", ":app<:[]", ":<[:build]", ":app<:[:app:build, :app:test]", ":<[test]"),
+				parts);
+		GetBuildReply lastReply = onNext.getAllValues().get(onNext.getAllValues().size() - 1);
+		assertTrue(lastReply.hasGetBuildResult());
+		assertFalse(lastReply.getGetBuildResult().hasBuild());
+	}
+
+	@Test
+	public void getBuild_shouldCacheStreamedProject() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		mockProjectTree();
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setStreamProjects(true)
+				.setUseCache(true).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockResponseObserver, times(2)).onCompleted();
+		verify(mockSyncAction, times(1)).run();
+
+		ArgumentCaptor<GetBuildReply> onNext = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockResponseObserver, Mockito.atLeastOnce()).onNext(onNext.capture());
+		GradleBuild build = onNext.getValue().getGetBuildResult().getBuild();
+		assertEquals(":app", build.getProject().getProjects(0).getPath());
+		// the cache is assembled from the streamed parts
+		List<String> streamedTasks = new ArrayList<>();
+		for (GetBuildReply reply : onNext.getAllValues()) {
+			if (reply.hasProjectPart()) {
+				reply.getProjectPart().getTasksList().forEach(task -> streamedTasks.add(task.getPath()));
+			}
+		}
+		List<String> cachedTasks = new ArrayList<>();
+		build.getProject().getTasksList().forEach(task -> cachedTasks.add(task.getPath()));
+		build.getProject().getProjects(0).getTasksList().forEach(task -> cachedTasks.add(task.getPath()));
+		Collections.sort(streamedTasks);
+		Collections.sort(cachedTasks);
+		assertEquals(Arrays.asList(":app:build", ":app:test", ":build", "test"), streamedTasks);
+		assertEquals(streamedTasks, cachedTasks);
+	}
+
+	@Test
+	public void getTasks_shouldUseStreamedStructure() throws Exception {
+		StreamObserver<GetBuildReply> mockBuildResponseObserver = (StreamObserver<GetBuildReply>) mock(
+				StreamObserver.class);
+		StreamObserver<GetTasksReply> mockTasksResponseObserver = (StreamObserver<GetTasksReply>) mock(
+				StreamObserver.class);
+		mockProjectTree();
+
+		GradleConfig gradleConfig = GradleConfig.newBuilder().setWrapperEnabled(true).build();
+		GetBuildRequest buildReq = GetBuildRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString()).setGradleConfig(gradleConfig)
+				.setStructureOnly(true).setStreamProjects(true).build();
+		GetTasksRequest tasksReq = GetTasksRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString()).setGradleConfig(gradleConfig)
+				.setProjectPath(":app").build();
+
+		stub.getBuild(buildReq, mockBuildResponseObserver);
+		ArgumentCaptor<GetBuildReply> buildReplies = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockBuildResponseObserver, Mockito.atLeastOnce()).onNext(buildReplies.capture());
+		for (GetBuildReply reply : buildReplies.getAllValues()) {
+			if (reply.hasProjectPart()) {
+				assertEquals(0, reply.getProjectPart().getTasksCount() + reply.getProjectPart().getCompactTasksCount());
+			}
+		}
+		stub.getTasks(tasksReq, mockTasksResponseObserver);
+		verify(mockTasksResponseObserver, never()).onError(any());
+		verify(mockGradleProjectBuilder, never()).get();
+
+		ArgumentCaptor<GetTasksReply> onNext = ArgumentCaptor.forClass(GetTasksReply.class);
+		verify(mockTasksResponseObserver).onNext(onNext.capture());
+		List<String> tasks = new ArrayList<>();
+		onNext.getValue().getTasksList().forEach(task -> tasks.add(task.getPath()));
+		assertEquals(Arrays.asList(":app:build", ":app:test"), tasks);
+	}
+
+	@Test
+	public void getBuild_shouldOrderTaskSelectorsAlikeWhenStreamed() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		StreamObserver<GetBuildReply> mockStreamResponseObserver = (StreamObserver<GetBuildReply>) mock(
+				StreamObserver.class);
+		org.gradle.tooling.model.GradleProject mockAppProject = mock(org.gradle.tooling.model.GradleProject.class);
+		org.gradle.tooling.model.GradleProject mockLibProject = mock(org.gradle.tooling.model.GradleProject.class);
+		when(mockGradleProject.getPath()).thenReturn(":");
+		when(mockGradleProject.getName()).thenReturn("root");
+		when(mockAppProject.getPath()).thenReturn(":app");
+		when(mockAppProject.getName()).thenReturn("app");
+		when(mockLibProject.getPath()).thenReturn(":app:lib");
+		when(mockLibProject.getName()).thenReturn("lib");
+		doReturn(mockGradleProject).when(mockAppProject).getParent();
+		doReturn(mockAppProject).when(mockLibProject).getParent();
+		doReturn(ImmutableDomainObjectSet.of(Collections.singletonList(mockAppProject))).when(mockGradleProject)
+				.getChildren();
+		doReturn(ImmutableDomainObjectSet.of(Collections.singletonList(mockLibProject))).when(mockAppProject)
+				.getChildren();
+		doReturn(ImmutableDomainObjectSet.of(Collections.emptyList())).when(mockLibProject).getChildren();
+		doReturn(ImmutableDomainObjectSet.of(Collections.singletonList(mockTask(mockGradleProject, "build"))))
+				.when(mockGradleProject).getTasks();
+		doReturn(ImmutableDomainObjectSet
+				.of(Arrays.asList(mockTask(mockAppProject, "test"), mockTask(mockAppProject, "lint"))))
+						.when(mockAppProject).getTasks();
+		doReturn(ImmutableDomainObjectSet
+				.of(Arrays.asList(mockTask(mockLibProject, "check"), mockTask(mockLibProject, "test"))))
+						.when(mockLibProject).getTasks();
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+		stub.getBuild(req, mockResponseObserver);
+		stub.getBuild(req.toBuilder().setStreamProjects(true).build(), mockStreamResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockStreamResponseObserver, never()).onError(any());
+
+		ArgumentCaptor<GetBuildReply> onNext = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockResponseObserver, Mockito.atLeastOnce()).onNext(onNext.capture());
+		List<String> taskSelectors = new ArrayList<>();
+		onNext.getValue().getGetBuildResult().getBuild().getProject().getTasksList().stream()
+				.filter(task -> !task.getPath().startsWith(":")).forEach(task -> taskSelectors.add(task.getPath()));
+		assertEquals(Arrays.asList("test", "lint", "check"), taskSelectors);
+
+		ArgumentCaptor<GetBuildReply> onStreamNext = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockStreamResponseObserver, Mockito.atLeastOnce()).onNext(onStreamNext.capture());
+		List<String> streamedTaskSelectors = new ArrayList<>();
+		for (GetBuildReply reply : onStreamNext.getAllValues()) {
+			if (reply.hasProjectPart()) {
+				reply.getProjectPart().getTasksList().stream().filter(task -> !task.getPath().startsWith(":"))
+						.forEach(task -> streamedTaskSelectors.add(task.getPath()));
+			}
+		}
+		assertEquals(taskSelectors, streamedTaskSelectors);
+	}
+
+	@Test
+	public void getBuild_shouldReplyWithCompactTasks() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		mockProjectTree();
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setCompactTasks(true).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+
+		ArgumentCaptor<GetBuildReply> onNext = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockResponseObserver, Mockito.atLeastOnce()).onNext(onNext.capture());
+		GradleBuild build = onNext.getValue().getGetBuildResult().getBuild();
+		List<String> strings = build.getStringsList();
+		assertEquals("", strings.get(0));
+		assertEquals(1, strings.stream().filter(string -> string.endsWith("build.gradle")).count());
+		List<String> rootTasks = new ArrayList<>();
+		for (CompactGradleTask task : build.getProject().getCompactTasksList()) {
+			rootTasks.add(task.getPath() + "@" + strings.get(task.getProject()));
+		}
+		assertEquals(Arrays.asList(":build@root", "test@root"), rootTasks);
+		List<String> appTasks = new ArrayList<>();
+		for (CompactGradleTask task : build.getProject().getProjects(0).getCompactTasksList()) {
+			appTasks.add(strings.get(task.getName()) + "@" + strings.get(task.getProject()));
+		}
+		assertEquals(Arrays.asList("build@app", "test@app"), appTasks);
+		assertEquals(0, build.getProject().getTasksCount());
+	}
+
+	@Test
+	public void getBuild_shouldReplyWithStructureOnly() throws Exception {
+		StreamObserver<GetBuildReply> mockResponseObserver = (StreamObserver<GetBuildReply>) mock(StreamObserver.class);
+		mockProjectTree();
+
+		GetBuildRequest req = GetBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setStructureOnly(true).build();
+
+		stub.getBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+
+		ArgumentCaptor<GetBuildReply> onNext = ArgumentCaptor.forClass(GetBuildReply.class);
+		verify(mockResponseObserver, Mockito.atLeastOnce()).onNext(onNext.capture());
+		GradleProject root = onNext.getValue().getGetBuildResult().getBuild().getProject();
+		assertEquals(":", root.getPath());
+		assertEquals(0, root.getTasksCount());
+		assertEquals(":app", root.getProjects(0).getPath());
+		assertEquals("app", root.getProjects(0).getName());
+		assertEquals(0, root.getProjects(0).getTasksCount());
+	}
+
+	@Test
+	public void getTasks_shouldUseCachedProject() throws Exception {
+		StreamObserver<GetBuildReply> mockBuildResponseObserver = (StreamObserver<GetBuildReply>) mock(
+				StreamObserver.class);
+		StreamObserver<GetTasksReply> mockTasksResponseObserver = (StreamObserver<GetTasksReply>) mock(
+				StreamObserver.class);
+		mockProjectTree();
+
+		GradleConfig gradleConfig = GradleConfig.newBuilder().setWrapperEnabled(true).build();
+		GetBuildRequest buildReq = GetBuildRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString()).setGradleConfig(gradleConfig)
+				.setStructureOnly(true).build();
+		// the cache serves either encoding of the tasks
+		GetTasksRequest tasksReq = GetTasksRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString()).setGradleConfig(gradleConfig)
+				.setProjectPath(":app").setCompactTasks(true).build();
+
+		stub.getBuild(buildReq, mockBuildResponseObserver);
+		stub.getTasks(tasksReq, mockTasksResponseObserver);
+		verify(mockTasksResponseObserver, never()).onError(any());
+		verify(mockTasksResponseObserver).onCompleted();
+		verify(mockSyncAction, times(1)).run();
+		verify(mockGradleProjectBuilder, never()).get();
+
+		ArgumentCaptor<GetTasksReply> onNext = ArgumentCaptor.forClass(GetTasksReply.class);
+		verify(mockTasksResponseObserver).onNext(onNext.capture());
+		GetTasksReply reply = onNext.getValue();
+		List<String> tasks = new ArrayList<>();
+		for (CompactGradleTask task : reply.getCompactTasksList()) {
+			tasks.add(task.getPath() + "@" + reply.getStrings(task.getProject()));
+		}
+		assertEquals(Arrays.asList(":app:build@app", ":app:test@app"), tasks);
+		assertEquals("", reply.getStrings(0));
+	}
+
+	@Test
+	public void getTasks_shouldFetchProjectWithoutCache() throws Exception {
+		StreamObserver<GetTasksReply> mockResponseObserver = (StreamObserver<GetTasksReply>) mock(StreamObserver.class);
+		mockProjectTree();
+
+		GetTasksRequest req = GetTasksRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setProjectPath(":app").build();
+
+		stub.getTasks(req, mockResponseObserver);
+		// the fetched project is cached for the other projects
+		stub.getTasks(req.toBuilder().setProjectPath(":").build(), mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockGradleProjectBuilder).get();
+
+		ArgumentCaptor<GetTasksReply> onNext = ArgumentCaptor.forClass(GetTasksReply.class);
+		verify(mockResponseObserver, times(2)).onNext(onNext.capture());
+		List<String> tasks = new ArrayList<>();
+		onNext.getAllValues().get(0).getTasksList().forEach(task -> tasks.add(task.getPath()));
+		assertEquals(Arrays.asList(":app:build", ":app:test"), tasks);
+		List<String> rootTasks = new ArrayList<>();
+		onNext.getAllValues().get(1).getTasksList().forEach(task -> rootTasks.add(task.getPath()));
+		assertEquals(Arrays.asList(":build", "test"), rootTasks);
+	}
+
+	@Test
+	public void getTasks_shouldReplyWithErrorForUnknownProject() throws Exception {
+		StreamObserver<GetTasksReply> mockResponseObserver = (StreamObserver<GetTasksReply>) mock(StreamObserver.class);
+		mockProjectTree();
+
+		GetTasksRequest req = GetTasksRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).setProjectPath(":lib").build();
+
+		stub.getTasks(req, mockResponseObserver);
+		verify(mockResponseObserver).onError(any());
+		verify(mockResponseObserver, never()).onCompleted();
+	}
+
+	private org.gradle.tooling.model.GradleTask mockTask(org.gradle.tooling.model.GradleProject project, String name) {
+		org.gradle.tooling.model.GradleTask task = mock(org.gradle.tooling.model.GradleTask.class);
+		org.gradle.tooling.model.gradle.GradleScript buildScript = mock(
+				org.gradle.tooling.model.gradle.GradleScript.class);
+		when(buildScript.getSourceFile()).thenReturn(new File(mockProjectDir, "build.gradle"));
+		when(project.getBuildScript()).thenReturn(buildScript);
+		doReturn(project).when(task).getProject();
+		when(task.getName()).thenReturn(name);
+		String projectPath = project.getPath();
+		when(task.getPath()).thenReturn((":".equals(projectPath) ? "" : projectPath) + ":" + name);
+		return task;
+	}
+
+	@Test
+	public void getDaemonsStatus_shouldUseConnectionContextOfProject() throws Exception {
+		StreamObserver<GetBuildReply> mockBuildResponseObserver = (StreamObserver<GetBuildReply>) mock(
+				StreamObserver.class);
+		StreamObserver<GetDaemonsStatusReply> mockDaemonsResponseObserver = (StreamObserver<GetDaemonsStatusReply>) mock(
+				StreamObserver.class);
+		File otherProjectDir = Files.createTempDirectory("otherProjectDir").toFile();
+
+		GetBuildRequest buildReq = GetBuildRequest.newBuilder()
+				.setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(false).setGradleHome("/path/to/gradle"))
+				.build();
+		GetDaemonsStatusRequest daemonsReq = GetDaemonsStatusRequest.newBuilder()
+				.setProjectDir(otherProjectDir.getAbsolutePath()).build();
+
+		stub.getBuild(buildReq, mockBuildResponseObserver);
+		stub.getDaemonsStatus(daemonsReq, mockDaemonsResponseObserver);
+		// the other project doesn't use the local installation, nor has a wrapper
+		verify(mockDaemonsResponseObserver, never()).onError(any());
+		verify(mockDaemonsResponseObserver).onNext(GetDaemonsStatusReply.newBuilder().build());
+	}
+
+	@Test
+	public void runBuild_shouldNotReuseConnectionWithOtherJvmArgs() throws Exception {
+		StreamObserver<RunBuildReply> mockResponseObserver = (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+		RunBuildRequest req1 = RunBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.addAllArgs(mockBuildArgs).setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+		RunBuildRequest req2 = RunBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.addAllArgs(mockBuildArgs)
+				.setGradleConfig(GradleConfig.newBuilder().setJvmArguments("-Xmx64m").setWrapperEnabled(true)).build();
+
+		stub.runBuild(req1, mockResponseObserver);
+		stub.runBuild(req1, mockResponseObserver);
+		stub.runBuild(req2, mockResponseObserver);
+		verify(mockResponseObserver, never()).onError(any());
+		verify(mockConnector, times(2)).connect();
+		verify(mockBuildLauncher, times(3)).run();
+	}
+
+	@Test
+	public void runBuild_shouldBatchOutput() throws Exception {
+		StreamObserver<RunBuildReply> mockResponseObserver = (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+		OutputStream[] streams = new OutputStream[2];
+		when(mockBuildLauncher.setStandardOutput(any(OutputStream.class))).thenAnswer(invocation -> {
+			streams[0] = invocation.getArgument(0);
+			return mockBuildLauncher;
+		});
+		when(mockBuildLauncher.setStandardError(any(OutputStream.class))).thenAnswer(invocation -> {
+			streams[1] = invocation.getArgument(0);
+			return mockBuildLauncher;
+		});
+		doAnswer(invocation -> {
+			for (int i = 0; i < 100; i++) {
+				streams[0].write(("line " + i + "\n").getBytes());
+				streams[0].flush();
+			}
+			streams[1].write("error\n".getBytes());
+			streams[1].flush();
+			streams[0].write("done\n".getBytes());
+			streams[0].flush();
+			return null;
+		}).when(mockBuildLauncher).run();
+
+		RunBuildRequest req = RunBuildRequest.newBuilder().setProjectDir(mockProjectDir.getAbsolutePath().toString())
+				.addAllArgs(mockBuildArgs).setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)).build();
+
+		// the batched output is sent from another thread, which the direct executor
+		// of the client would block
+		String serverName = InProcessServerBuilder.generateName();
+		GradleServer otherServer = new GradleServer(InProcessServerBuilder.forName(serverName), 0,
+				new GradleService(new GradleProjectConnectionPool(), new GradleBuildModelCache(null)));
+		otherServer.start();
+		GradleGrpc.GradleStub otherStub = GradleGrpc
+				.newStub(grpcCleanup.register(InProcessChannelBuilder.forName(serverName).build()));
+		otherStub.runBuild(req, mockResponseObserver);
+		verify(mockResponseObserver, timeout(5000)).onCompleted();
+		otherServer.stop();
+		verify(mockResponseObserver, never()).onError(any());
+
+		ArgumentCaptor<RunBuildReply> onNext = ArgumentCaptor.forClass(RunBuildReply.class);
+		verify(mockResponseObserver, Mockito.atLeastOnce()).onNext(onNext.capture());
+		List<String> outputs = new ArrayList<>();
+		int outputReplies = 0;
+		for (RunBuildReply reply : onNext.getAllValues()) {
+			if (reply.hasOutput()) {
+				outputReplies++;
+				String output = reply.getOutput().getOutputType() + ":";
+				String lastOutput = outputs.isEmpty() ? "" : outputs.get(outputs.size() - 1);
+				if (lastOutput.startsWith(output)) {
+					// a batch split by the batch window
+					outputs.set(outputs.size() - 1, lastOutput + reply.getOutput().getOutputBytes().toStringUtf8());
+				} else {
+					outputs.add(output + reply.getOutput().getOutputBytes().toStringUtf8());
+				}
+			} else if (reply.hasRunBuildResult()) {
+				outputs.add("result");
+			}
+		}
+		assertEquals(4, outputs.size());
+		assertEquals(100, outputs.get(0).split("\n").length);
+		assertEquals(Arrays.asList("STDERR:error\n", "STDOUT:done\n", "result"), outputs.subList(1, 4));
+		assertTrue(outputReplies < 10);
+	}
+
 	@Test
 	public void runBuild_shouldSetProjectDirectory() throws IOException {
 		StreamObserver<RunBuildReply> mockResponseObserver = (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
@@ -0,0 +1,179 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.ServerCallStreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueuedStreamObserverTest {
+	private ServerCallStreamObserver<RunBuildReply> mockResponseObserver;
+	private AtomicBoolean ready;
+	private Runnable onReadyHandler;
+	private List<String> sentReplies;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		mockResponseObserver = mock(ServerCallStreamObserver.class);
+		ready = new AtomicBoolean();
+		sentReplies = new CopyOnWriteArrayList<>();
+		when(mockResponseObserver.isReady()).thenAnswer(invocation -> ready.get());
+		doAnswer(invocation -> {
+			onReadyHandler = invocation.getArgument(0);
+			return null;
+		}).when(mockResponseObserver).setOnReadyHandler(any());
+		doAnswer(invocation -> {
+			RunBuildReply reply = invocation.getArgument(0);
+			sentReplies.add(reply.hasProgress()
+					? "progress:" + reply.getProgress().getMessage()
+					: reply.getOutput().getOutputBytes().toStringUtf8());
+			return null;
+		}).when(mockResponseObserver).onNext(any());
+	}
+
+	private QueuedStreamObserver<RunBuildReply> createObserver(QueuedStreamObserver.OverflowPolicy overflowPolicy) {
+		return new QueuedStreamObserver<>(mockResponseObserver, MoreExecutors.directExecutor(), 64, overflowPolicy,
+				RunBuildReply::hasProgress);
+	}
+
+	private static RunBuildReply output(String output) {
+		return RunBuildReply.newBuilder().setOutput(Output.newBuilder().setOutputType(Output.OutputType.STDOUT)
+				.setOutputBytes(ByteString.copyFromUtf8(output))).build();
+	}
+
+	private static RunBuildReply progress(String message) {
+		return RunBuildReply.newBuilder().setProgress(Progress.newBuilder().setMessage(message)).build();
+	}
+
+	private void setReady() {
+		ready.set(true);
+		onReadyHandler.run();
+	}
+
+	@Test
+	public void shouldWaitForTheCallToBeReady() {
+		QueuedStreamObserver<RunBuildReply> observer = createObserver(QueuedStreamObserver.OverflowPolicy.BLOCK);
+		observer.onNext(output("a"));
+		observer.onNext(output("b"));
+		observer.onCompleted();
+		verify(mockResponseObserver, never()).onNext(any());
+		verify(mockResponseObserver, never()).onCompleted();
+
+		setReady();
+		verify(mockResponseObserver, timeout(5000)).onCompleted();
+		assertEquals(2, sentReplies.size());
+		assertEquals("a", sentReplies.get(0));
+		assertEquals("b", sentReplies.get(1));
+	}
+
+	@Test
+	public void shouldDropProgressPastBufferSize() {
+		QueuedStreamObserver<RunBuildReply> observer = createObserver(
+				QueuedStreamObserver.OverflowPolicy.DROP_PROGRESS);
+		for (int i = 0; i < 100; i++) {
+			observer.onNext(progress(String.valueOf(i)));
+		}
+		setReady();
+		observer.onNext(output("done"));
+		observer.onCompleted();
+		verify(mockResponseObserver, timeout(5000)).onCompleted();
+
+		assertTrue(sentReplies.size() < 20);
+		assertEquals("progress:0", sentReplies.get(0));
+		assertEquals("done", sentReplies.get(sentReplies.size() - 1));
+	}
+
+	@Test
+	public void shouldSpillPastBufferSize() {
+		QueuedStreamObserver<RunBuildReply> observer = createObserver(QueuedStreamObserver.OverflowPolicy.SPILL);
+		List<String> outputs = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			outputs.add("line " + i);
+			observer.onNext(output("line " + i));
+		}
+		observer.onCompleted();
+		verify(mockResponseObserver, never()).onNext(any());
+
+		setReady();
+		verify(mockResponseObserver, timeout(5000)).onCompleted();
+		assertEquals(outputs, sentReplies);
+	}
+
+	@Test
+	public void shouldBlockPastBufferSize() throws Exception {
+		QueuedStreamObserver<RunBuildReply> observer = createObserver(QueuedStreamObserver.OverflowPolicy.BLOCK);
+		observer.onNext(output("the first line of the output, long enough to fill the buffer"));
+		Thread producer = new Thread(
+				() -> observer.onNext(output("the second line of the output, which waits for the first one")));
+		producer.start();
+		producer.join(100);
+		assertTrue(producer.isAlive());
+
+		setReady();
+		producer.join(TimeUnit.SECONDS.toMillis(5));
+		assertFalse(producer.isAlive());
+		observer.onCompleted();
+		verify(mockResponseObserver, timeout(5000)).onCompleted();
+		assertEquals(2, sentReplies.size());
+	}
+
+	@Test
+	public void shouldOfferPastBufferSizeWithoutBlocking() throws Exception {
+		QueuedStreamObserver<RunBuildReply> observer = createObserver(
+				QueuedStreamObserver.OverflowPolicy.DROP_PROGRESS);
+		observer.onNext(output("the first line of the output, long enough to fill the buffer"));
+		// e.g. from the timer shared between the builds
+		observer.offer(output("the second line of the output, queued past the buffer size"));
+		Thread producer = new Thread(observer::awaitCapacity);
+		producer.start();
+		producer.join(100);
+		assertTrue(producer.isAlive());
+
+		setReady();
+		producer.join(TimeUnit.SECONDS.toMillis(5));
+		assertFalse(producer.isAlive());
+		observer.onCompleted();
+		verify(mockResponseObserver, timeout(5000)).onCompleted();
+		assertEquals(2, sentReplies.size());
+	}
+
+	@Test
+	public void shouldDropRepliesOfCancelledCall() {
+		QueuedStreamObserver<RunBuildReply> observer = createObserver(QueuedStreamObserver.OverflowPolicy.BLOCK);
+		when(mockResponseObserver.isCancelled()).thenReturn(true);
+		ready.set(true);
+		observer.onNext(output("a"));
+		observer.onCompleted();
+		verify(mockResponseObserver, never()).onNext(any());
+		verify(mockResponseObserver, never()).onCompleted();
+	}
+
+	@Test
+	public void shouldCompleteOnce() {
+		QueuedStreamObserver<RunBuildReply> observer = createObserver(QueuedStreamObserver.OverflowPolicy.BLOCK);
+		ready.set(true);
+		observer.onCompleted();
+		observer.onNext(output("a"));
+		observer.onError(new IllegalStateException());
+		verify(mockResponseObserver).onCompleted();
+		verify(mockResponseObserver, never()).onNext(any());
+		verify(mockResponseObserver, never()).onError(any());
+	}
+}